@@ -0,0 +1,253 @@
+
+package com.elusivehawk.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * 
+ * Checksum algorithms that {@link HashGen} and the checksumming readers and writers know about.
+ * <p>
+ * CRC-32C uses the JDK's (hardware-accelerated) implementation on Java 9 and up, and a table-driven one everywhere else; Both
+ * give the same results.
+ * <br>{@link Checksum}s aren't thread-safe, so every thread should {@link #create()} its own.
+ * 
+ * @author Elusivehawk
+ */
+public enum EnumChecksum
+{
+	CRC32, CRC32C, ADLER32;
+	
+	private static final MethodHandle JDK_CRC32C = findJdkCRC32C();
+	private static final MethodHandle UPDATE_BUFFER = findBufferUpdate();
+	
+	public Checksum create()
+	{
+		switch (this)
+		{
+			case CRC32: return new CRC32();
+			case ADLER32: return new Adler32();
+			default: break;
+		}
+		
+		if (JDK_CRC32C != null)
+		{
+			try
+			{
+				return (Checksum)JDK_CRC32C.invokeExact();
+			}
+			catch (Throwable e)
+			{
+				Logger.err(e);
+				
+			}
+			
+		}
+		
+		return new SlicingCRC32C();
+	}
+	
+	//Java 8's Checksum can't take buffers, so anything besides the JDK's own classes may need to go through a scratch array.
+	public static void update(Checksum ck, ByteBuffer buf)
+	{
+		if (ck instanceof CRC32)
+		{
+			((CRC32)ck).update(buf);
+			
+			return;
+		}
+		
+		if (ck instanceof Adler32)
+		{
+			((Adler32)ck).update(buf);
+			
+			return;
+		}
+		
+		if (ck instanceof SlicingCRC32C)
+		{
+			((SlicingCRC32C)ck).update(buf);
+			
+			return;
+		}
+		
+		if (UPDATE_BUFFER != null)
+		{
+			try
+			{
+				UPDATE_BUFFER.invokeExact(ck, buf);
+				
+				return;
+			}
+			catch (Throwable e)
+			{
+				Logger.err(e);
+				
+			}
+			
+		}
+		
+		if (buf.hasArray())
+		{
+			ck.update(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+			buf.position(buf.limit());
+			
+			return;
+		}
+		
+		byte[] scratch = new byte[Math.min(buf.remaining(), 8192)];
+		
+		while (buf.hasRemaining())
+		{
+			int count = Math.min(scratch.length, buf.remaining());
+			
+			buf.get(scratch, 0, count);
+			ck.update(scratch, 0, count);
+			
+		}
+		
+	}
+	
+	private static MethodHandle findJdkCRC32C()
+	{
+		try
+		{
+			return MethodHandles.publicLookup().findConstructor(Class.forName("java.util.zip.CRC32C"), MethodType.methodType(void.class)).asType(MethodType.methodType(Checksum.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return null;
+		}
+		
+	}
+	
+	private static MethodHandle findBufferUpdate()
+	{
+		try
+		{
+			return MethodHandles.publicLookup().findVirtual(Checksum.class, "update", MethodType.methodType(void.class, ByteBuffer.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return null;
+		}
+		
+	}
+	
+	//CRC-32C (Castagnoli), eight bytes at a time.
+	static final class SlicingCRC32C implements Checksum
+	{
+		private static final int[][] TABLES = makeTables();
+		
+		private int crc = 0xFFFFFFFF;
+		
+		@Override
+		public void update(int b)
+		{
+			this.crc = (this.crc >>> 8) ^ TABLES[0][(this.crc ^ b) & 0xFF];
+			
+		}
+		
+		@Override
+		public void update(byte[] b, int off, int len)
+		{
+			int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3], t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+			int c = this.crc, i = off, end = off + len;
+			
+			for (; i + 8 <= end; i += 8)
+			{
+				int lo = c ^ ((b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24));
+				int hi = (b[i + 4] & 0xFF) | ((b[i + 5] & 0xFF) << 8) | ((b[i + 6] & 0xFF) << 16) | (b[i + 7] << 24);
+				
+				c = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF] ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24]
+						^ t3[hi & 0xFF] ^ t2[(hi >>> 8) & 0xFF] ^ t1[(hi >>> 16) & 0xFF] ^ t0[hi >>> 24];
+						
+			}
+			
+			for (; i < end; i++)
+			{
+				c = (c >>> 8) ^ t0[(c ^ b[i]) & 0xFF];
+				
+			}
+			
+			this.crc = c;
+			
+		}
+		
+		public void update(ByteBuffer buf)
+		{
+			if (buf.hasArray())
+			{
+				this.update(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+				buf.position(buf.limit());
+				
+				return;
+			}
+			
+			byte[] scratch = new byte[Math.min(buf.remaining(), 4096)];
+			
+			while (buf.hasRemaining())
+			{
+				int count = Math.min(scratch.length, buf.remaining());
+				
+				buf.get(scratch, 0, count);
+				this.update(scratch, 0, count);
+				
+			}
+			
+		}
+		
+		@Override
+		public long getValue()
+		{
+			return ~this.crc & 0xFFFFFFFFL;
+		}
+		
+		@Override
+		public void reset()
+		{
+			this.crc = 0xFFFFFFFF;
+			
+		}
+		
+		private static int[][] makeTables()
+		{
+			int[][] ret = new int[8][256];
+			
+			for (int c = 0; c < 256; c++)
+			{
+				int v = c;
+				
+				for (int bit = 0; bit < 8; bit++)
+				{
+					v = (v & 1) != 0 ? (v >>> 1) ^ 0x82F63B78 : v >>> 1;
+					
+				}
+				
+				ret[0][c] = v;
+				
+			}
+			
+			for (int t = 1; t < 8; t++)
+			{
+				for (int c = 0; c < 256; c++)
+				{
+					int prev = ret[t - 1][c];
+					
+					ret[t][c] = (prev >>> 8) ^ ret[0][prev & 0xFF];
+					
+				}
+				
+			}
+			
+			return ret;
+		}
+		
+	}
+	
+}
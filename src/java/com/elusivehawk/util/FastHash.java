@@ -0,0 +1,375 @@
+
+package com.elusivehawk.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 
+ * Implementation of {@link HashGen}'s non-cryptographic hashes: xxHash32, xxHash64, and MurmurHash3 (x64, 128-bit).
+ * <p>
+ * Every input is hashed as if it were its little-endian bytes, read through an {@link Access} strategy, so nothing gets
+ * copied or allocated along the way, and the same data hashes the same no matter how it's held (or which JVM's running).
+ * 
+ * @author Elusivehawk
+ */
+final class FastHash
+{
+	private static final int P32_1 = 0x9E3779B1, P32_2 = 0x85EBCA77, P32_3 = 0xC2B2AE3D, P32_4 = 0x27D4EB2F, P32_5 = 0x165667B1;
+	private static final long
+			P64_1 = 0x9E3779B185EBCA87L,
+			P64_2 = 0xC2B2AE3D27D4EB4FL,
+			P64_3 = 0x165667B19E3779F9L,
+			P64_4 = 0x85EBCA77C2B2AE63L,
+			P64_5 = 0x27D4EB2F165667C5L;
+	private static final long M3_C1 = 0x87C37B91114253D5L, M3_C2 = 0x4CF5AD432745937FL;
+	
+	static final Access<byte[]> BYTES = new Access<byte[]>()
+	{
+		@Override
+		long getLong(byte[] in, long i)
+		{
+			int p = (int)i;
+			
+			return (in[p] & 0xFFL) | ((in[p + 1] & 0xFFL) << 8) | ((in[p + 2] & 0xFFL) << 16) | ((in[p + 3] & 0xFFL) << 24)
+					| ((in[p + 4] & 0xFFL) << 32) | ((in[p + 5] & 0xFFL) << 40) | ((in[p + 6] & 0xFFL) << 48) | ((long)in[p + 7] << 56);
+		}
+		
+		@Override
+		int getInt(byte[] in, long i)
+		{
+			int p = (int)i;
+			
+			return (in[p] & 0xFF) | ((in[p + 1] & 0xFF) << 8) | ((in[p + 2] & 0xFF) << 16) | (in[p + 3] << 24);
+		}
+		
+		@Override
+		int getByte(byte[] in, long i)
+		{
+			return in[(int)i] & 0xFF;
+		}
+		
+	};
+	
+	static final Access<ByteBuffer> BUFFER = new Access<ByteBuffer>()
+	{
+		@Override
+		long getLong(ByteBuffer in, long i)
+		{
+			long ret = in.getLong((int)i);
+			
+			return in.order() == ByteOrder.LITTLE_ENDIAN ? ret : Long.reverseBytes(ret);
+		}
+		
+		@Override
+		int getInt(ByteBuffer in, long i)
+		{
+			int ret = in.getInt((int)i);
+			
+			return in.order() == ByteOrder.LITTLE_ENDIAN ? ret : Integer.reverseBytes(ret);
+		}
+		
+		@Override
+		int getByte(ByteBuffer in, long i)
+		{
+			return in.get((int)i) & 0xFF;
+		}
+		
+	};
+	
+	//UTF-16LE; Reads always start at even offsets, since strings are hashed a whole character at a time.
+	static final Access<CharSequence> CHARS = new Access<CharSequence>()
+	{
+		@Override
+		long getLong(CharSequence in, long i)
+		{
+			int c = (int)(i >>> 1);
+			
+			return in.charAt(c) | ((long)in.charAt(c + 1) << 16) | ((long)in.charAt(c + 2) << 32) | ((long)in.charAt(c + 3) << 48);
+		}
+		
+		@Override
+		int getInt(CharSequence in, long i)
+		{
+			int c = (int)(i >>> 1);
+			
+			return in.charAt(c) | (in.charAt(c + 1) << 16);
+		}
+		
+		@Override
+		int getByte(CharSequence in, long i)
+		{
+			return (in.charAt((int)(i >>> 1)) >>> (((int)i & 1) << 3)) & 0xFF;
+		}
+		
+	};
+	
+	static final Access<int[]> INTS = new Access<int[]>()
+	{
+		@Override
+		long getLong(int[] in, long i)
+		{
+			int c = (int)(i >>> 2);
+			
+			return (in[c] & 0xFFFFFFFFL) | ((long)in[c + 1] << 32);
+		}
+		
+		@Override
+		int getInt(int[] in, long i)
+		{
+			return in[(int)(i >>> 2)];
+		}
+		
+		@Override
+		int getByte(int[] in, long i)
+		{
+			return (in[(int)(i >>> 2)] >>> (((int)i & 3) << 3)) & 0xFF;
+		}
+		
+	};
+	
+	static final Access<long[]> LONGS = new Access<long[]>()
+	{
+		@Override
+		long getLong(long[] in, long i)
+		{
+			return in[(int)(i >>> 3)];
+		}
+		
+		@Override
+		int getInt(long[] in, long i)
+		{
+			return (int)(in[(int)(i >>> 3)] >>> (((int)i & 4) << 3));
+		}
+		
+		@Override
+		int getByte(long[] in, long i)
+		{
+			return (int)(in[(int)(i >>> 3)] >>> (((int)i & 7) << 3)) & 0xFF;
+		}
+		
+	};
+	
+	private FastHash(){}
+	
+	static <T> int xxHash32(Access<T> a, T in, long off, long len, int seed)
+	{
+		long p = off, end = off + len;
+		int h;
+		
+		if (len >= 16)
+		{
+			int v1 = seed + P32_1 + P32_2, v2 = seed + P32_2, v3 = seed, v4 = seed - P32_1;
+			
+			for (long limit = end - 16; p <= limit; p += 16)
+			{
+				v1 = round32(v1, a.getInt(in, p));
+				v2 = round32(v2, a.getInt(in, p + 4));
+				v3 = round32(v3, a.getInt(in, p + 8));
+				v4 = round32(v4, a.getInt(in, p + 12));
+				
+			}
+			
+			h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+			
+		}
+		else
+		{
+			h = seed + P32_5;
+			
+		}
+		
+		h += (int)len;
+		
+		for (; p + 4 <= end; p += 4)
+		{
+			h += a.getInt(in, p) * P32_3;
+			h = Integer.rotateLeft(h, 17) * P32_4;
+			
+		}
+		
+		for (; p < end; p++)
+		{
+			h += a.getByte(in, p) * P32_5;
+			h = Integer.rotateLeft(h, 11) * P32_1;
+			
+		}
+		
+		h ^= h >>> 15;
+		h *= P32_2;
+		h ^= h >>> 13;
+		h *= P32_3;
+		h ^= h >>> 16;
+		
+		return h;
+	}
+	
+	static <T> long xxHash64(Access<T> a, T in, long off, long len, long seed)
+	{
+		long p = off, end = off + len;
+		long h;
+		
+		if (len >= 32)
+		{
+			long v1 = seed + P64_1 + P64_2, v2 = seed + P64_2, v3 = seed, v4 = seed - P64_1;
+			
+			for (long limit = end - 32; p <= limit; p += 32)
+			{
+				v1 = round64(v1, a.getLong(in, p));
+				v2 = round64(v2, a.getLong(in, p + 8));
+				v3 = round64(v3, a.getLong(in, p + 16));
+				v4 = round64(v4, a.getLong(in, p + 24));
+				
+			}
+			
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = merge64(h, v1);
+			h = merge64(h, v2);
+			h = merge64(h, v3);
+			h = merge64(h, v4);
+			
+		}
+		else
+		{
+			h = seed + P64_5;
+			
+		}
+		
+		h += len;
+		
+		for (; p + 8 <= end; p += 8)
+		{
+			h ^= round64(0L, a.getLong(in, p));
+			h = Long.rotateLeft(h, 27) * P64_1 + P64_4;
+			
+		}
+		
+		if (p + 4 <= end)
+		{
+			h ^= (a.getInt(in, p) & 0xFFFFFFFFL) * P64_1;
+			h = Long.rotateLeft(h, 23) * P64_2 + P64_3;
+			p += 4;
+			
+		}
+		
+		for (; p < end; p++)
+		{
+			h ^= a.getByte(in, p) * P64_5;
+			h = Long.rotateLeft(h, 11) * P64_1;
+			
+		}
+		
+		h ^= h >>> 33;
+		h *= P64_2;
+		h ^= h >>> 29;
+		h *= P64_3;
+		h ^= h >>> 32;
+		
+		return h;
+	}
+	
+	//Puts the two halves in dest[0] and dest[1].
+	static <T> void murmur3(Access<T> a, T in, long off, long len, int seed, long[] dest)
+	{
+		long p = off, end = off + len;
+		long h1 = seed & 0xFFFFFFFFL, h2 = h1;
+		
+		for (long limit = end - 16; p <= limit; p += 16)
+		{
+			h1 ^= mixK1(a.getLong(in, p));
+			h1 = Long.rotateLeft(h1, 27) + h2;
+			h1 = h1 * 5 + 0x52DCE729;
+			
+			h2 ^= mixK2(a.getLong(in, p + 8));
+			h2 = Long.rotateLeft(h2, 31) + h1;
+			h2 = h2 * 5 + 0x38495AB5;
+			
+		}
+		
+		int rem = (int)(end - p);
+		
+		if (rem > 0)
+		{
+			long k1 = 0L, k2 = 0L;
+			
+			for (int c = rem - 1; c >= 8; c--)
+			{
+				k2 = (k2 << 8) | a.getByte(in, p + c);
+				
+			}
+			
+			for (int c = Math.min(rem, 8) - 1; c >= 0; c--)
+			{
+				k1 = (k1 << 8) | a.getByte(in, p + c);
+				
+			}
+			
+			h2 ^= mixK2(k2);
+			h1 ^= mixK1(k1);
+			
+		}
+		
+		h1 ^= len;
+		h2 ^= len;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix64(h1);
+		h2 = fmix64(h2);
+		h1 += h2;
+		h2 += h1;
+		
+		dest[0] = h1;
+		dest[1] = h2;
+		
+	}
+	
+	private static int round32(int acc, int input)
+	{
+		return Integer.rotateLeft(acc + input * P32_2, 13) * P32_1;
+	}
+	
+	private static long round64(long acc, long input)
+	{
+		return Long.rotateLeft(acc + input * P64_2, 31) * P64_1;
+	}
+	
+	private static long merge64(long acc, long v)
+	{
+		return (acc ^ round64(0L, v)) * P64_1 + P64_4;
+	}
+	
+	private static long mixK1(long k)
+	{
+		return Long.rotateLeft(k * M3_C1, 31) * M3_C2;
+	}
+	
+	private static long mixK2(long k)
+	{
+		return Long.rotateLeft(k * M3_C2, 33) * M3_C1;
+	}
+	
+	private static long fmix64(long k)
+	{
+		long ret = k;
+		
+		ret ^= ret >>> 33;
+		ret *= 0xFF51AFD7ED558CCDL;
+		ret ^= ret >>> 33;
+		ret *= 0xC4CEB9FE1A85EC53L;
+		ret ^= ret >>> 33;
+		
+		return ret;
+	}
+	
+	//Reads little-endian values out of some kind of input, by byte offset.
+	static abstract class Access<T>
+	{
+		abstract long getLong(T in, long i);
+		
+		abstract int getInt(T in, long i);
+		
+		abstract int getByte(T in, long i);
+		
+	}
+	
+}
@@ -1,25 +1,37 @@
 
 package com.elusivehawk.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
-import java.util.zip.CRC32;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Checksum;
+import com.elusivehawk.util.io.IByteReader;
+import com.elusivehawk.util.io.IOHelper;
 
 /**
  * 
  * Enables for easy hashing.
+ * <p>
+ * Digests and checksums are kept per thread, so hashing on one thread never holds up another.
+ * <br>xxHash and MurmurHash3 are there for hash tables, bloom filters and the like; They don't allocate, and give the same results on every JVM.
  * 
  * @author Elusivehawk
  */
 public final class HashGen
 {
-	private static final HashGen INSTANCE = new HashGen();
+	public static final String MD5 = "MD5", SHA1 = "SHA-1", SHA256 = "SHA-256";
 	
-	private final MessageDigest
-				md5 = newDigest("MD5"),
-				sha1 = newDigest("SHA-1"),
-				sha256 = newDigest("SHA-256");
-	private final CRC32 crc32 = new CRC32();
+	private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial((() -> new HashMap<String, MessageDigest>()));
+	private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial((() -> new byte[1 << 16]));
+	private static final ThreadLocal<Checksum[]> CHECKSUMS = ThreadLocal.withInitial((() -> new Checksum[EnumChecksum.values().length]));
 	
 	private HashGen(){}
 	
@@ -41,56 +53,395 @@ public final class HashGen
 		return ret;
 	}
 	
-	public static synchronized long crc32(byte[]... in)
+	public static long crc32(byte[]... in)
 	{
-		CRC32 crc = INSTANCE.crc32;
+		return checksum(EnumChecksum.CRC32, in);
+	}
+	
+	public static long crc32(ByteBuffer... in)
+	{
+		return checksum(EnumChecksum.CRC32, in);
+	}
+	
+	public static long crc32c(byte[]... in)
+	{
+		return checksum(EnumChecksum.CRC32C, in);
+	}
+	
+	public static long crc32c(ByteBuffer... in)
+	{
+		return checksum(EnumChecksum.CRC32C, in);
+	}
+	
+	public static long adler32(byte[]... in)
+	{
+		return checksum(EnumChecksum.ADLER32, in);
+	}
+	
+	public static long adler32(ByteBuffer... in)
+	{
+		return checksum(EnumChecksum.ADLER32, in);
+	}
+	
+	public static long checksum(EnumChecksum type, byte[]... in)
+	{
+		Checksum ck = threadChecksum(type);
 		
 		for (byte[] bs : in)
 		{
-			crc.update(bs);
+			ck.update(bs, 0, bs.length);
 			
 		}
 		
-		long ret = crc.getValue();
+		long ret = ck.getValue();
 		
-		crc.reset();
+		ck.reset();
 		
 		return ret;
 	}
 	
-	public static synchronized long crc32(ByteBuffer... in)
+	public static long checksum(EnumChecksum type, ByteBuffer... in)
 	{
-		CRC32 crc = INSTANCE.crc32;
+		Checksum ck = threadChecksum(type);
 		
 		for (ByteBuffer bb : in)
 		{
-			crc.update(bb);
+			EnumChecksum.update(ck, bb);
 			
 		}
 		
-		long ret = crc.getValue();
+		long ret = ck.getValue();
+		
+		ck.reset();
 		
-		crc.reset();
+		return ret;
+	}
+	
+	//Every thread gets its own, so nobody has to wait on a lock.
+	private static Checksum threadChecksum(EnumChecksum type)
+	{
+		Checksum[] cks = CHECKSUMS.get();
+		Checksum ret = cks[type.ordinal()];
+		
+		if (ret == null)
+		{
+			ret = type.create();
+			cks[type.ordinal()] = ret;
+			
+		}
 		
 		return ret;
 	}
 	
+	public static int xxHash32(byte[] in, int seed)
+	{
+		return FastHash.xxHash32(FastHash.BYTES, in, 0, in.length, seed);
+	}
+	
+	public static int xxHash32(byte[] in, int off, int len, int seed)
+	{
+		return FastHash.xxHash32(FastHash.BYTES, in, off, len, seed);
+	}
+	
+	//Covers the buffer's position to its limit, without moving either one.
+	public static int xxHash32(ByteBuffer in, int seed)
+	{
+		return FastHash.xxHash32(FastHash.BUFFER, in, in.position(), in.remaining(), seed);
+	}
+	
+	//Hashed as raw UTF-16LE code units, so lone surrogates are hashed as-is instead of being replaced like an encoder would.
+	public static int xxHash32(CharSequence in, int seed)
+	{
+		return FastHash.xxHash32(FastHash.CHARS, in, 0, in.length() * 2L, seed);
+	}
+	
+	public static int xxHash32(int[] in, int seed)
+	{
+		return FastHash.xxHash32(FastHash.INTS, in, 0, in.length * 4L, seed);
+	}
+	
+	public static int xxHash32(long[] in, int seed)
+	{
+		return FastHash.xxHash32(FastHash.LONGS, in, 0, in.length * 8L, seed);
+	}
+	
+	public static long xxHash64(byte[] in, long seed)
+	{
+		return FastHash.xxHash64(FastHash.BYTES, in, 0, in.length, seed);
+	}
+	
+	public static long xxHash64(byte[] in, int off, int len, long seed)
+	{
+		return FastHash.xxHash64(FastHash.BYTES, in, off, len, seed);
+	}
+	
+	public static long xxHash64(ByteBuffer in, long seed)
+	{
+		return FastHash.xxHash64(FastHash.BUFFER, in, in.position(), in.remaining(), seed);
+	}
+	
+	public static long xxHash64(CharSequence in, long seed)
+	{
+		return FastHash.xxHash64(FastHash.CHARS, in, 0, in.length() * 2L, seed);
+	}
+	
+	public static long xxHash64(int[] in, long seed)
+	{
+		return FastHash.xxHash64(FastHash.INTS, in, 0, in.length * 4L, seed);
+	}
+	
+	public static long xxHash64(long[] in, long seed)
+	{
+		return FastHash.xxHash64(FastHash.LONGS, in, 0, in.length * 8L, seed);
+	}
+	
+	//MurmurHash3's 128-bit x64 variant; The two halves go into dest, which is returned for convenience.
+	public static long[] murmur3(byte[] in, int seed, long[] dest)
+	{
+		assert dest.length >= 2;
+		
+		FastHash.murmur3(FastHash.BYTES, in, 0, in.length, seed, dest);
+		
+		return dest;
+	}
+	
+	public static long[] murmur3(byte[] in, int off, int len, int seed, long[] dest)
+	{
+		assert dest.length >= 2;
+		
+		FastHash.murmur3(FastHash.BYTES, in, off, len, seed, dest);
+		
+		return dest;
+	}
+	
+	public static long[] murmur3(ByteBuffer in, int seed, long[] dest)
+	{
+		assert dest.length >= 2;
+		
+		FastHash.murmur3(FastHash.BUFFER, in, in.position(), in.remaining(), seed, dest);
+		
+		return dest;
+	}
+	
+	public static long[] murmur3(CharSequence in, int seed, long[] dest)
+	{
+		assert dest.length >= 2;
+		
+		FastHash.murmur3(FastHash.CHARS, in, 0, in.length() * 2L, seed, dest);
+		
+		return dest;
+	}
+	
+	public static long[] murmur3(int[] in, int seed, long[] dest)
+	{
+		assert dest.length >= 2;
+		
+		FastHash.murmur3(FastHash.INTS, in, 0, in.length * 4L, seed, dest);
+		
+		return dest;
+	}
+	
+	public static long[] murmur3(long[] in, int seed, long[] dest)
+	{
+		assert dest.length >= 2;
+		
+		FastHash.murmur3(FastHash.LONGS, in, 0, in.length * 8L, seed, dest);
+		
+		return dest;
+	}
+	
 	public static byte[] md5(byte[]... in)
 	{
-		return hash(INSTANCE.md5, in);
+		return hash(MD5, in);
 	}
 	
 	public static byte[] sha1(byte[]... in)
 	{
-		return hash(INSTANCE.sha1, in);
+		return hash(SHA1, in);
 	}
 	
 	public static byte[] sha256(byte[]... in)
 	{
-		return hash(INSTANCE.sha256, in);
+		return hash(SHA256, in);
+	}
+	
+	//Returns a new digest, which belongs to the caller; The ones HashGen keeps for itself are never handed out.
+	public static MessageDigest digest(String algorithm)
+	{
+		return newDigest(algorithm);
+	}
+	
+	//Takes this thread's digest out of the cache while it's in use, so a nested call on the same thread gets its own.
+	private static MessageDigest borrowDigest(String algorithm)
+	{
+		MessageDigest ret = DIGESTS.get().remove(algorithm);
+		
+		return ret == null ? newDigest(algorithm) : ret;
+	}
+	
+	//Finishes the digest (which resets it) and puts it back for reuse.
+	private static byte[] finish(String algorithm, MessageDigest md)
+	{
+		byte[] ret = md.digest();
+		
+		DIGESTS.get().putIfAbsent(algorithm, md);
+		
+		return ret;
+	}
+	
+	//Same idea as borrowDigest(); Hand it back with SCRATCH.set() once done.
+	private static byte[] borrowScratch()
+	{
+		byte[] ret = SCRATCH.get();
+		
+		if (ret == null)
+		{
+			return new byte[1 << 16];
+		}
+		
+		SCRATCH.set(null);
+		
+		return ret;
+	}
+	
+	public static byte[] hash(String algorithm, byte[]... in)
+	{
+		MessageDigest md = borrowDigest(algorithm);
+		
+		if (md == null)
+		{
+			return new byte[0];
+		}
+		
+		for (byte[] bs : in)
+		{
+			md.update(bs);
+			
+		}
+		
+		return finish(algorithm, md);
+	}
+	
+	public static byte[] hash(String algorithm, ByteBuffer... in)
+	{
+		MessageDigest md = borrowDigest(algorithm);
+		
+		if (md == null)
+		{
+			return new byte[0];
+		}
+		
+		for (ByteBuffer bb : in)
+		{
+			md.update(bb);
+			
+		}
+		
+		return finish(algorithm, md);
+	}
+	
+	//Hashes everything left in the reader, a buffer's worth at a time.
+	public static byte[] hash(String algorithm, IByteReader in)
+	{
+		MessageDigest md = borrowDigest(algorithm);
+		
+		if (md == null)
+		{
+			return new byte[0];
+		}
+		
+		update(md, in);
+		
+		return finish(algorithm, md);
+	}
+	
+	public static byte[] hash(String algorithm, File file) throws IOException
+	{
+		MessageDigest md = borrowDigest(algorithm);
+		
+		if (md == null)
+		{
+			return new byte[0];
+		}
+		
+		byte[] scratch = borrowScratch();
+		ByteBuffer buf = ByteBuffer.wrap(scratch);
+		
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			while (ch.read(buf) != -1)
+			{
+				buf.flip();
+				md.update(buf);
+				buf.clear();
+				
+			}
+			
+		}
+		finally
+		{
+			SCRATCH.set(scratch);
+			
+		}
+		
+		return finish(algorithm, md);
+	}
+	
+	//Hashes every file at once, spread over the common fork-join pool; Fails if any one of them can't be read.
+	public static Map<File, byte[]> hashFiles(String algorithm, Collection<File> files)
+	{
+		Map<File, byte[]> ret = new ConcurrentHashMap<File, byte[]>();
+		
+		files.parallelStream().forEach(((file) ->
+		{
+			try
+			{
+				ret.put(file, hash(algorithm, file));
+				
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			
+		}));
+		
+		return ret;
+	}
+	
+	public static void update(MessageDigest md, IByteReader in)
+	{
+		byte[] scratch = borrowScratch();
+		
+		try
+		{
+			int count;
+			
+			while ((count = in.read(scratch, 0, scratch.length)) > 0)
+			{
+				md.update(scratch, 0, count);
+				
+			}
+			
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			SCRATCH.set(scratch);
+			
+		}
+		
 	}
 	
-	public static synchronized byte[] hash(MessageDigest md, byte[]... in)
+	//Meant for digests the caller owns, so it's up to the caller to keep them to one thread at a time.
+	public static byte[] hash(MessageDigest md, byte[]... in)
 	{
 		if (md == null)
 		{
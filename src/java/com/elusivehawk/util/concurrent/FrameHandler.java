@@ -0,0 +1,92 @@
+
+package com.elusivehawk.util.concurrent;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import com.elusivehawk.util.io.FrameDecoder;
+import com.elusivehawk.util.io.FrameEncoder;
+
+/**
+ * 
+ * {@link IChannelHandler} for socket channels speaking in length-prefixed frames.
+ * <p>
+ * Incoming bytes go through a {@link FrameDecoder}, and every complete frame is passed to {@link #onFrame(ThreadSelector, SelectionKey, ByteBuffer)}.
+ * <br>{@link #send(SelectionKey, ByteBuffer...)} writes right away when it can. When the socket can't keep up, reading stops until
+ * everything queued has gone out, so a slow peer can't make the queue grow forever; This also means frames can be sent back out
+ * as-is, without copying them first.
+ * <br>Only call {@link #send(SelectionKey, ByteBuffer...)} from the selector's thread; Use {@link ThreadSelector#execute(Runnable)}
+ * from anywhere else.
+ * 
+ * @author Elusivehawk
+ */
+public abstract class FrameHandler implements IChannelHandler
+{
+	protected final FrameDecoder decoder;
+	protected final FrameEncoder encoder = new FrameEncoder();
+	
+	public FrameHandler()
+	{
+		this(new FrameDecoder());
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public FrameHandler(FrameDecoder dec)
+	{
+		assert dec != null;
+		
+		decoder = dec;
+		
+	}
+	
+	protected abstract void onFrame(ThreadSelector sel, SelectionKey key, ByteBuffer frame) throws Throwable;
+	
+	@Override
+	public void onRead(ThreadSelector sel, SelectionKey key) throws Throwable
+	{
+		if (this.decoder.read((ReadableByteChannel)key.channel()) == -1)
+		{
+			sel.close(key);
+			
+			return;
+		}
+		
+		ByteBuffer frame;
+		
+		while (key.isValid() && (frame = this.decoder.next()) != null)
+		{
+			this.onFrame(sel, key, frame);
+			
+		}
+		
+	}
+	
+	@Override
+	public void onWrite(ThreadSelector sel, SelectionKey key) throws Throwable
+	{
+		if (this.encoder.flush((GatheringByteChannel)key.channel()))
+		{
+			key.interestOps((key.interestOps() & ~SelectionKey.OP_WRITE) | SelectionKey.OP_READ);
+			
+		}
+		
+	}
+	
+	public void send(SelectionKey key, ByteBuffer... payload) throws Throwable
+	{
+		boolean idle = !this.encoder.hasPending();
+		
+		this.encoder.add(payload);
+		
+		//Anything already queued is waiting on OP_WRITE.
+		if (idle && !this.encoder.flush((GatheringByteChannel)key.channel()))
+		{
+			key.interestOps((key.interestOps() & ~SelectionKey.OP_READ) | SelectionKey.OP_WRITE);
+			
+		}
+		
+	}
+	
+}
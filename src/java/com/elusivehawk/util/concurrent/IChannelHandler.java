@@ -0,0 +1,39 @@
+
+package com.elusivehawk.util.concurrent;
+
+import java.nio.channels.SelectionKey;
+import com.elusivehawk.util.Logger;
+
+/**
+ * 
+ * Reacts to events on a channel registered with a {@link ThreadSelector}.
+ * <p>
+ * Every method is called on the selector's own thread, so handlers don't need to be thread-safe, as long as each one only
+ * belongs to one channel. They do need to stay quick, though, since everything else on that selector waits on them.
+ * <br>By default, any exception gets logged, and the channel closed.
+ * 
+ * @author Elusivehawk
+ */
+public interface IChannelHandler
+{
+	default void onRegistered(ThreadSelector sel, SelectionKey key) throws Throwable{}
+	
+	default void onAccept(ThreadSelector sel, SelectionKey key) throws Throwable{}
+	
+	default void onConnect(ThreadSelector sel, SelectionKey key) throws Throwable{}
+	
+	default void onRead(ThreadSelector sel, SelectionKey key) throws Throwable{}
+	
+	default void onWrite(ThreadSelector sel, SelectionKey key) throws Throwable{}
+	
+	default void onClosed(ThreadSelector sel, SelectionKey key){}
+	
+	default void handleException(ThreadSelector sel, SelectionKey key, Throwable e)
+	{
+		Logger.err(e);
+		
+		sel.close(key);
+		
+	}
+	
+}
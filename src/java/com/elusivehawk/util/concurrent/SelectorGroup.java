@@ -0,0 +1,182 @@
+
+package com.elusivehawk.util.concurrent;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.elusivehawk.util.CompInfo;
+import com.elusivehawk.util.IFactory;
+import com.elusivehawk.util.IPausable;
+
+/**
+ * 
+ * Spreads channels over several {@link ThreadSelector}s; By default, one per core.
+ * <p>
+ * New channels go to the less busy of two neighbouring loops, which keeps things even without having to look at every loop.
+ * <br>{@link #bind(SocketAddress, IFactory)} opens a server socket, and hands every connection it accepts to one of the loops,
+ * with a fresh handler from the given factory.
+ * <br>Groups are one-shot, same as the threads behind them: Once stopped, they can't be started again.
+ * 
+ * @author Elusivehawk
+ */
+public class SelectorGroup implements IPausable
+{
+	private final ThreadSelector[] loops;
+	private final AtomicInteger next = new AtomicInteger();
+	private boolean started = false, stopped = false, paused = false;
+	
+	public SelectorGroup() throws IOException
+	{
+		this(CompInfo.CORES);
+		
+	}
+	
+	@SuppressWarnings({"unqualified-field-access", "boxing"})
+	public SelectorGroup(int count) throws IOException
+	{
+		assert count > 0;
+		
+		loops = new ThreadSelector[count];
+		
+		for (int c = 0; c < count; c++)
+		{
+			loops[c] = new ThreadSelector(String.format("Selector-%s", c + 1));
+			
+		}
+		
+	}
+	
+	@Override
+	public boolean isPaused()
+	{
+		return this.paused;
+	}
+	
+	@Override
+	public void setPaused(boolean p)
+	{
+		this.paused = p;
+		
+		for (ThreadSelector loop : this.loops)
+		{
+			loop.setPaused(p);
+			
+		}
+		
+	}
+	
+	public synchronized void start()
+	{
+		if (this.stopped)
+		{
+			throw new IllegalStateException("Selector groups can't be restarted once they've stopped");
+		}
+		
+		if (this.started)
+		{
+			return;
+		}
+		
+		for (ThreadSelector loop : this.loops)
+		{
+			loop.start();
+			
+		}
+		
+		this.started = true;
+		
+	}
+	
+	public synchronized void stop()
+	{
+		if (!this.started || this.stopped)
+		{
+			return;
+		}
+		
+		for (ThreadSelector loop : this.loops)
+		{
+			loop.shutdown();
+			
+		}
+		
+		this.stopped = true;
+		
+	}
+	
+	public int size()
+	{
+		return this.loops.length;
+	}
+	
+	public ThreadSelector get(int i)
+	{
+		return this.loops[i];
+	}
+	
+	public ThreadSelector next()
+	{
+		int i = (this.next.getAndIncrement() & Integer.MAX_VALUE) % this.loops.length;
+		ThreadSelector a = this.loops[i], b = this.loops[(i + 1) % this.loops.length];
+		
+		return a.getChannelCount() <= b.getChannelCount() ? a : b;
+	}
+	
+	public CompletableFuture<SelectionKey> register(SelectableChannel ch, int ops, IChannelHandler handler)
+	{
+		return this.next().register(ch, ops, handler);
+	}
+	
+	public ServerSocketChannel bind(SocketAddress addr, IFactory<IChannelHandler> handlers) throws IOException
+	{
+		ServerSocketChannel ret = ServerSocketChannel.open();
+		
+		try
+		{
+			ret.bind(addr);
+			
+		}
+		catch (IOException e)
+		{
+			ret.close();
+			
+			throw e;
+		}
+		
+		this.register(ret, SelectionKey.OP_ACCEPT, new Acceptor(handlers));
+		
+		return ret;
+	}
+	
+	private class Acceptor implements IChannelHandler
+	{
+		private final IFactory<IChannelHandler> handlers;
+		
+		@SuppressWarnings("unqualified-field-access")
+		Acceptor(IFactory<IChannelHandler> factory)
+		{
+			handlers = factory;
+			
+		}
+		
+		@Override
+		public void onAccept(ThreadSelector sel, SelectionKey key) throws Throwable
+		{
+			SocketChannel ch;
+			
+			while ((ch = ((ServerSocketChannel)key.channel()).accept()) != null)
+			{
+				SelectorGroup.this.register(ch, SelectionKey.OP_READ, this.handlers.create());
+				
+			}
+			
+		}
+		
+	}
+	
+}
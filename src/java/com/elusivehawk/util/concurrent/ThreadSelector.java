@@ -0,0 +1,347 @@
+
+package com.elusivehawk.util.concurrent;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import com.elusivehawk.util.Logger;
+
+/**
+ * 
+ * Event loop thread, serving any number of non-blocking channels through one {@link Selector}.
+ * <p>
+ * Channels are registered along with an {@link IChannelHandler}, which gets called whenever its channel is ready.
+ * <br>Registering, and anything else passed to {@link #execute(Runnable)}, can be done from any thread; It's queued up and run
+ * on the loop itself, which is woken up to do so.
+ * <br>Use {@link #shutdown()} rather than {@link #stopThread()}, so a selector that's waiting gets woken up. Every channel still
+ * registered is closed once the loop stops; After that, tasks are rejected, and channels registered late are closed right away.
+ * <br>A paused loop sleeps until it's unpaused, stopped, or handed a task.
+ * <br>To spread channels over several loops, see {@link SelectorGroup}.
+ * 
+ * @author Elusivehawk
+ */
+public class ThreadSelector extends ThreadStoppable
+{
+	public static final long SELECT_TIMEOUT = 1000L;
+	
+	protected final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private final Object pauseLock = new Object();
+	private volatile int channels = 0;
+	private volatile boolean stopped = false;
+	
+	public ThreadSelector() throws IOException
+	{
+		this("Selector");
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public ThreadSelector(String name) throws IOException
+	{
+		super(name);
+		
+		selector = Selector.open();
+		
+		setDaemon(true);
+		
+	}
+	
+	@Override
+	protected void rawUpdate() throws Throwable
+	{
+		this.runTasks();
+		
+		if (this.isPaused())
+		{
+			synchronized (this.pauseLock)
+			{
+				if (this.isPaused() && this.isRunning() && this.tasks.isEmpty())
+				{
+					this.pauseLock.wait(SELECT_TIMEOUT);
+					
+				}
+				
+			}
+			
+			return;
+		}
+		
+		if (this.selector.select(SELECT_TIMEOUT) > 0)
+		{
+			Iterator<SelectionKey> itr = this.selector.selectedKeys().iterator();
+			
+			while (itr.hasNext())
+			{
+				SelectionKey key = itr.next();
+				
+				itr.remove();
+				
+				this.dispatch(key);
+				
+			}
+			
+		}
+		
+		this.channels = this.selector.keys().size();
+		
+	}
+	
+	@Override
+	public void onThreadStopped(boolean failed)
+	{
+		this.stopped = true;
+		
+		this.runTasks();
+		
+		for (SelectionKey key : this.selector.keys())
+		{
+			this.close(key);
+			
+		}
+		
+		try
+		{
+			this.selector.close();
+			
+		}
+		catch (IOException e)
+		{
+			Logger.err(e);
+			
+		}
+		
+		this.channels = 0;
+		
+	}
+	
+	public CompletableFuture<SelectionKey> register(SelectableChannel ch, int ops, IChannelHandler handler)
+	{
+		assert ch != null && handler != null;
+		
+		CompletableFuture<SelectionKey> ret = new CompletableFuture<SelectionKey>();
+		
+		if (!this.tryExecute((() ->
+		{
+			try
+			{
+				ch.configureBlocking(false);
+				
+				SelectionKey key = ch.register(this.selector, ops, handler);
+				
+				this.channels = this.selector.keys().size();
+				
+				handler.onRegistered(this, key);
+				ret.complete(key);
+				
+			}
+			catch (Throwable e)
+			{
+				ret.completeExceptionally(e);
+				
+			}
+			
+		})))
+		{
+			try
+			{
+				ch.close();
+				
+			}
+			catch (IOException e)
+			{
+				Logger.err(e);
+				
+			}
+			
+			ret.completeExceptionally(new RejectedExecutionException("Selector loop has stopped"));
+			
+		}
+		
+		return ret;
+	}
+	
+	//Runs right away when called from the loop itself; Otherwise it's queued up for the loop's next pass.
+	public void execute(Runnable r)
+	{
+		if (!this.tryExecute(r))
+		{
+			throw new RejectedExecutionException("Selector loop has stopped");
+		}
+		
+	}
+	
+	//Returns false, without running anything, once the loop has stopped.
+	public boolean tryExecute(Runnable r)
+	{
+		if (Thread.currentThread() == this)
+		{
+			r.run();
+			
+			return true;
+		}
+		
+		this.tasks.add(r);
+		
+		//If the loop stopped in the meantime, either its last pass picked this up, or it never will.
+		if (this.stopped && this.tasks.remove(r))
+		{
+			return false;
+		}
+		
+		this.wake();
+		
+		return true;
+	}
+	
+	public void close(SelectionKey key)
+	{
+		key.cancel();
+		
+		try
+		{
+			key.channel().close();
+			
+		}
+		catch (IOException e)
+		{
+			Logger.err(e);
+			
+		}
+		
+		IChannelHandler h = (IChannelHandler)key.attach(null);
+		
+		if (h != null)
+		{
+			h.onClosed(this, key);
+			
+		}
+		
+	}
+	
+	public void shutdown()
+	{
+		this.stopThread();
+		this.wake();
+		
+	}
+	
+	@Override
+	public void setPaused(boolean pause)
+	{
+		super.setPaused(pause);
+		
+		this.wake();
+		
+	}
+	
+	public boolean isStopped()
+	{
+		return this.stopped;
+	}
+	
+	public Selector getSelector()
+	{
+		return this.selector;
+	}
+	
+	//How many channels were registered as of the last pass; Used for balancing.
+	public int getChannelCount()
+	{
+		return this.channels;
+	}
+	
+	protected void dispatch(SelectionKey key)
+	{
+		IChannelHandler h = (IChannelHandler)key.attachment();
+		
+		if (h == null)
+		{
+			return;
+		}
+		
+		try
+		{
+			int ready = key.readyOps();
+			
+			if ((ready & SelectionKey.OP_ACCEPT) != 0)
+			{
+				h.onAccept(this, key);
+				
+			}
+			
+			if (key.isValid() && (ready & SelectionKey.OP_CONNECT) != 0 && ((SocketChannel)key.channel()).finishConnect())
+			{
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_CONNECT);
+				h.onConnect(this, key);
+				
+			}
+			
+			if (key.isValid() && (ready & SelectionKey.OP_READ) != 0)
+			{
+				h.onRead(this, key);
+				
+			}
+			
+			if (key.isValid() && (ready & SelectionKey.OP_WRITE) != 0)
+			{
+				h.onWrite(this, key);
+				
+			}
+			
+		}
+		catch (CancelledKeyException e)
+		{
+			this.close(key);
+			
+		}
+		catch (Throwable e)
+		{
+			h.handleException(this, key, e);
+			
+		}
+		
+	}
+	
+	private void wake()
+	{
+		this.selector.wakeup();
+		
+		synchronized (this.pauseLock)
+		{
+			this.pauseLock.notifyAll();
+			
+		}
+		
+	}
+	
+	private void runTasks()
+	{
+		Runnable r;
+		
+		while ((r = this.tasks.poll()) != null)
+		{
+			try
+			{
+				r.run();
+				
+			}
+			catch (Throwable e)
+			{
+				this.handleException(e);
+				
+			}
+			
+		}
+		
+	}
+	
+}
@@ -36,6 +36,22 @@ public class ByteArray implements IByteReader, IByteWriter
 		return this.info[this.pos++];
 	}
 	
+	@Override
+	public int read(byte[] dest, int off, int len)
+	{
+		int count = Math.min(len, this.remaining());
+		
+		if (count <= 0)
+		{
+			return len == 0 ? 0 : -1;
+		}
+		
+		System.arraycopy(this.info, this.pos, dest, off, count);
+		this.pos += count;
+		
+		return count;
+	}
+	
 	@Override
 	public int write(byte... bytes)
 	{
@@ -56,4 +72,14 @@ public class ByteArray implements IByteReader, IByteWriter
 		return written;
 	}
 	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		int written = Math.min(len, this.info.length - this.pos);
+		
+		System.arraycopy(bytes, off, this.info, this.pos, written);
+		
+		return written;
+	}
+	
 }
@@ -39,6 +39,21 @@ public class ByteBuffers implements IByteReader, IByteWriter
 		return this.in.get();
 	}
 	
+	@Override
+	public int read(byte[] dest, int off, int len)
+	{
+		int count = Math.min(len, this.remaining());
+		
+		if (count <= 0)
+		{
+			return len == 0 ? 0 : -1;
+		}
+		
+		this.in.get(dest, off, count);
+		
+		return count;
+	}
+	
 	@Override
 	public int write(byte... bytes)
 	{
@@ -49,4 +64,12 @@ public class ByteBuffers implements IByteReader, IByteWriter
 		return this.out.position() - pos;
 	}
 	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		this.out.put(bytes, off, len);
+		
+		return len;
+	}
+	
 }
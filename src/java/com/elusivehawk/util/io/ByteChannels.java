@@ -0,0 +1,610 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 
+ * Buffered, channel-backed replacement for {@link ByteStreams}.
+ * <p>
+ * Reads and writes go through internal direct buffers, so the channel is only touched once per buffer's worth of data.
+ * <br>Reading past the end of the channel throws an {@link EOFException}, rather than handing back -1 as if it were data.
+ * <br>For seekable channels (such as {@link FileChannel}s), {@link #remaining()} is the true number of bytes left; Otherwise
+ * it's only what's currently buffered.
+ * <br>Errors from methods that can't throw checked exceptions come out as {@link UncheckedIOException}s instead of being swallowed.
+ * <br>Non-blocking channels are never spun on: Bulk reads return short, and anything that needs bytes that aren't there yet
+ * throws an {@link IOException} without consuming anything.
+ * <br>The same goes for writes: Bulk writes return short once the channel stops taking bytes, and anything that needs more
+ * room than that throws. What couldn't be sent yet stays buffered until the next {@link #flush()}.
+ * 
+ * @author Elusivehawk
+ */
+public class ByteChannels implements IByteReader, IByteWriter, Closeable
+{
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+	
+	protected final ReadableByteChannel in;
+	protected final WritableByteChannel out;
+	protected final ByteBuffer inBuf, outBuf;
+	private boolean eof = false;
+	
+	public ByteChannels(ReadableByteChannel ch)
+	{
+		this(ch, null);
+		
+	}
+	
+	public ByteChannels(WritableByteChannel ch)
+	{
+		this(null, ch);
+		
+	}
+	
+	public ByteChannels(ReadableByteChannel i, WritableByteChannel o)
+	{
+		this(i, o, DEFAULT_BUFFER_SIZE);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public ByteChannels(ReadableByteChannel i, WritableByteChannel o, int bufSize)
+	{
+		assert i != null || o != null;
+		assert bufSize >= 8;
+		
+		in = i;
+		out = o;
+		inBuf = i == null ? null : (ByteBuffer)ByteBuffer.allocateDirect(bufSize).flip();
+		outBuf = o == null ? null : ByteBuffer.allocateDirect(bufSize);
+		
+	}
+	
+	public static ByteChannels openRead(File file) throws IOException
+	{
+		return new ByteChannels(FileChannel.open(file.toPath(), StandardOpenOption.READ), null);
+	}
+	
+	public static ByteChannels openWrite(File file, boolean append) throws IOException
+	{
+		return new ByteChannels(null, FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING));
+	}
+	
+	@Override
+	public int remaining()
+	{
+		if (this.in == null)
+		{
+			return 0;
+		}
+		
+		int buffered = this.inBuf.remaining();
+		
+		if (this.in instanceof SeekableByteChannel)
+		{
+			try
+			{
+				SeekableByteChannel sbc = (SeekableByteChannel)this.in;
+				
+				return (int)Math.min(Integer.MAX_VALUE, buffered + Math.max(0L, sbc.size() - sbc.position()));
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			
+		}
+		
+		return buffered;
+	}
+	
+	public boolean isEOF() throws IOException
+	{
+		if (this.in == null)
+		{
+			return true;
+		}
+		
+		return !this.inBuf.hasRemaining() && this.fill() == -1;
+	}
+	
+	@Override
+	public byte read() throws IOException
+	{
+		this.require(1);
+		
+		return this.inBuf.get();
+	}
+	
+	@Override
+	public byte[] read(int count) throws IOException
+	{
+		byte[] ret = new byte[count];
+		
+		if (this.read(ret, 0, count) < count)
+		{
+			throw new EOFException();
+		}
+		
+		return ret;
+	}
+	
+	//Reads as much as it can, up to the requested length; Only stops early at the end of the channel, or when a non-blocking one runs dry.
+	public int read(byte[] dest, int off, int len) throws IOException
+	{
+		int copied = 0;
+		
+		while (copied < len)
+		{
+			if (!this.inBuf.hasRemaining())
+			{
+				int read = this.fill();
+				
+				if (read == -1)
+				{
+					return copied == 0 ? -1 : copied;
+				}
+				
+				if (read == 0)
+				{
+					return copied;
+				}
+				
+			}
+			
+			int count = Math.min(len - copied, this.inBuf.remaining());
+			
+			this.inBuf.get(dest, off + copied, count);
+			copied += count;
+			
+		}
+		
+		return copied;
+	}
+	
+	//Reads straight into the destination, skipping the internal buffer once it's empty.
+	public int read(ByteBuffer dest) throws IOException
+	{
+		int start = dest.position();
+		
+		if (this.inBuf.hasRemaining())
+		{
+			ByteBuffer src = this.inBuf.duplicate();
+			
+			src.limit(src.position() + Math.min(src.remaining(), dest.remaining()));
+			dest.put(src);
+			this.inBuf.position(src.position());
+			
+		}
+		
+		while (dest.hasRemaining() && !this.eof)
+		{
+			int read = this.in.read(dest);
+			
+			if (read == -1)
+			{
+				this.eof = true;
+				
+			}
+			else if (read == 0)
+			{
+				break;
+			}
+			
+		}
+		
+		int ret = dest.position() - start;
+		
+		return ret == 0 && this.eof ? -1 : ret;
+	}
+	
+	@Override
+	public byte[] readAll() throws IOException
+	{
+		PooledByteArray acc = new PooledByteArray();
+		
+		try
+		{
+			while (true)
+			{
+				acc.write(this.inBuf);
+				
+				int read = this.fill();
+				
+				if (read == -1)
+				{
+					break;
+				}
+				
+				if (read == 0)
+				{
+					throw new IOException("Non-blocking channel ran dry before reaching its end");
+				}
+				
+			}
+			
+			return acc.toByteArray();
+		}
+		finally
+		{
+			acc.release();
+			
+		}
+		
+	}
+	
+	@Override
+	public short readShort()
+	{
+		return (short)this.readLE(2);
+	}
+	
+	@Override
+	public int readInt()
+	{
+		return (int)this.readLE(4);
+	}
+	
+	@Override
+	public long readLong()
+	{
+		return this.readLE(8);
+	}
+	
+	@Override
+	public float readFloat()
+	{
+		return Float.intBitsToFloat(this.readInt());
+	}
+	
+	@Override
+	public double readDouble()
+	{
+		return Double.longBitsToDouble(this.readLong());
+	}
+	
+	public long skip(long count) throws IOException
+	{
+		long skipped = Math.min(count, this.inBuf.remaining());
+		
+		this.inBuf.position(this.inBuf.position() + (int)skipped);
+		
+		if (skipped < count && this.in instanceof SeekableByteChannel)
+		{
+			SeekableByteChannel sbc = (SeekableByteChannel)this.in;
+			long step = Math.min(count - skipped, Math.max(0L, sbc.size() - sbc.position()));
+			
+			sbc.position(sbc.position() + step);
+			skipped += step;
+			
+		}
+		
+		while (skipped < count && this.fill() > 0)
+		{
+			int step = (int)Math.min(count - skipped, this.inBuf.remaining());
+			
+			this.inBuf.position(this.inBuf.position() + step);
+			skipped += step;
+			
+		}
+		
+		return skipped;
+	}
+	
+	@Override
+	public int write(byte... bytes)
+	{
+		return this.write(bytes, 0, bytes.length);
+	}
+	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		int copied = 0;
+		
+		try
+		{
+			while (copied < len)
+			{
+				if (!this.outBuf.hasRemaining())
+				{
+					this.drain();
+					
+					if (!this.outBuf.hasRemaining())
+					{
+						break;
+					}
+					
+				}
+				
+				int count = Math.min(len - copied, this.outBuf.remaining());
+				
+				this.outBuf.put(bytes, off + copied, count);
+				copied += count;
+				
+			}
+			
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+		return copied;
+	}
+	
+	@Override
+	public int write(ByteBuffer bb, int count)
+	{
+		ByteBuffer src = bb.duplicate();
+		
+		src.limit(src.position() + Math.min(bb.remaining(), count));
+		
+		try
+		{
+			if (src.remaining() >= this.outBuf.capacity() && this.drain())
+			{
+				//Too big to be worth buffering, so send it straight through.
+				while (src.hasRemaining() && this.out.write(src) > 0);
+				
+			}
+			
+			if (src.hasRemaining())
+			{
+				if (this.outBuf.remaining() < src.remaining())
+				{
+					this.drain();
+					
+				}
+				
+				int fits = Math.min(src.remaining(), this.outBuf.remaining());
+				ByteBuffer part = src.duplicate();
+				
+				part.limit(part.position() + fits);
+				this.outBuf.put(part);
+				src.position(part.position());
+				
+			}
+			
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+		int ret = src.position() - bb.position();
+		
+		bb.position(src.position());
+		
+		return ret;
+	}
+	
+	@Override
+	public void writeShort(short s)
+	{
+		this.writeLE(s, 2);
+		
+	}
+	
+	@Override
+	public void writeInt(int i)
+	{
+		this.writeLE(i, 4);
+		
+	}
+	
+	@Override
+	public void writeLong(long l)
+	{
+		this.writeLE(l, 8);
+		
+	}
+	
+	@Override
+	public void writeFloat(float f)
+	{
+		this.writeInt(Float.floatToRawIntBits(f));
+		
+	}
+	
+	@Override
+	public void writeDouble(double d)
+	{
+		this.writeLong(Double.doubleToRawLongBits(d));
+		
+	}
+	
+	@Override
+	public void flush()
+	{
+		if (this.out == null)
+		{
+			return;
+		}
+		
+		try
+		{
+			if (!this.drain())
+			{
+				throw new IOException("Non-blocking channel isn't taking any more bytes");
+			}
+			
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if (this.out != null && !this.drain())
+			{
+				throw new IOException("Non-blocking channel isn't taking any more bytes");
+			}
+			
+		}
+		finally
+		{
+			if (this.in != null)
+			{
+				this.in.close();
+				
+			}
+			
+			if (this.out != null && this.out != this.in)
+			{
+				this.out.close();
+				
+			}
+			
+		}
+		
+	}
+	
+	//Reads once into the buffer, returning how many bytes came in (0 if a non-blocking channel had none), or -1 at the end of the channel.
+	protected int fill() throws IOException
+	{
+		if (this.eof)
+		{
+			return -1;
+		}
+		
+		this.inBuf.compact();
+		
+		int read;
+		
+		try
+		{
+			read = this.in.read(this.inBuf);
+			
+		}
+		finally
+		{
+			this.inBuf.flip();
+			
+		}
+		
+		if (read == -1)
+		{
+			this.eof = true;
+			
+		}
+		
+		return read;
+	}
+	
+	//Makes sure enough is buffered, without consuming anything if it can't be.
+	private void require(int count) throws IOException
+	{
+		while (this.inBuf.remaining() < count)
+		{
+			int read = this.fill();
+			
+			if (read == -1)
+			{
+				throw new EOFException();
+			}
+			
+			if (read == 0)
+			{
+				throw new IOException("Non-blocking channel has nothing ready to read");
+			}
+			
+		}
+		
+	}
+	
+	//Writes out what's buffered, stopping early if a non-blocking channel won't take any more; False if anything's left over.
+	protected boolean drain() throws IOException
+	{
+		this.outBuf.flip();
+		
+		try
+		{
+			while (this.outBuf.hasRemaining())
+			{
+				if (this.out.write(this.outBuf) == 0)
+				{
+					break;
+				}
+				
+			}
+			
+			return !this.outBuf.hasRemaining();
+		}
+		finally
+		{
+			this.outBuf.compact();
+			
+		}
+		
+	}
+	
+	private long readLE(int count)
+	{
+		try
+		{
+			this.require(count);
+			
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+		long ret = 0;
+		
+		for (int c = 0; c < count; c++)
+		{
+			ret |= (this.inBuf.get() & 0xFFL) << (c << 3);
+			
+		}
+		
+		return ret;
+	}
+	
+	private void writeLE(long value, int count)
+	{
+		try
+		{
+			if (this.outBuf.remaining() < count)
+			{
+				this.drain();
+				
+				if (this.outBuf.remaining() < count)
+				{
+					throw new IOException("Non-blocking channel isn't taking any more bytes");
+				}
+				
+			}
+			
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+		for (int c = 0; c < count; c++)
+		{
+			this.outBuf.put((byte)(value >>> (c << 3)));
+			
+		}
+		
+	}
+	
+}
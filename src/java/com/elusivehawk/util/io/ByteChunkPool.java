@@ -0,0 +1,89 @@
+
+package com.elusivehawk.util.io;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 
+ * Recycles fixed-size byte arrays, so growable buffers don't have to keep allocating fresh ones.
+ * <p>
+ * Chunk sizes are always a power of two.
+ * 
+ * @author Elusivehawk
+ */
+public class ByteChunkPool
+{
+	public static final ByteChunkPool DEFAULT = new ByteChunkPool(4096, 1024);
+	
+	private final Deque<byte[]> chunks = new ArrayDeque<byte[]>();
+	private final int chunkSize, maxPooled;
+	
+	public ByteChunkPool(int size)
+	{
+		this(size, Integer.MAX_VALUE);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public ByteChunkPool(int size, int max)
+	{
+		assert size > 0 && Integer.bitCount(size) == 1 : "Chunk size must be a power of two";
+		assert max >= 0;
+		
+		chunkSize = size;
+		maxPooled = max;
+		
+	}
+	
+	public int getChunkSize()
+	{
+		return this.chunkSize;
+	}
+	
+	public synchronized int getPooledCount()
+	{
+		return this.chunks.size();
+	}
+	
+	public byte[] take()
+	{
+		byte[] ret;
+		
+		synchronized (this)
+		{
+			ret = this.chunks.pollFirst();
+			
+		}
+		
+		return ret == null ? new byte[this.chunkSize] : ret;
+	}
+	
+	public boolean recycle(byte[] chunk)
+	{
+		if (chunk == null || chunk.length != this.chunkSize)
+		{
+			return false;
+		}
+		
+		synchronized (this)
+		{
+			if (this.chunks.size() >= this.maxPooled)
+			{
+				return false;
+			}
+			
+			this.chunks.addFirst(chunk);
+			
+		}
+		
+		return true;
+	}
+	
+	public synchronized void clear()
+	{
+		this.chunks.clear();
+		
+	}
+	
+}
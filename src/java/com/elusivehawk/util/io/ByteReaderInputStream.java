@@ -51,6 +51,35 @@ public class ByteReaderInputStream extends InputStream
 		
 	}
 	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+		{
+			return 0;
+		}
+		
+		try
+		{
+			return this.r.read(b, off, len);
+		}
+		catch (IOException e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new IOException(e);
+		}
+		
+	}
+	
+	@Override
+	public int available()
+	{
+		return Math.max(this.r.remaining(), 0);
+	}
+	
 	@Override
 	public void close() throws IOException
 	{
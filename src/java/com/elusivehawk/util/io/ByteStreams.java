@@ -71,6 +71,13 @@ public class ByteStreams implements IByteReader, IByteWriter, Closeable
 		return ret;
 	}
 	
+	//Blocks until something's available, like InputStream.read() does; available() isn't trusted, since it's allowed to be 0 before the end.
+	@Override
+	public int read(byte[] dest, int off, int len) throws IOException
+	{
+		return this.in.read(dest, off, len);
+	}
+	
 	@Override
 	public int write(byte... bytes)
 	{
@@ -91,6 +98,26 @@ public class ByteStreams implements IByteReader, IByteWriter, Closeable
 		return written;
 	}
 	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		int written = 0;
+		
+		try
+		{
+			this.out.write(bytes, off, len);
+			written = len;
+			
+		}
+		catch (Exception e)
+		{
+			Logger.err(e);
+			
+		}
+		
+		return written;
+	}
+	
 	@Override
 	public void close() throws IOException
 	{
@@ -0,0 +1,115 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.zip.Checksum;
+import com.elusivehawk.util.EnumChecksum;
+
+/**
+ * 
+ * Checksums everything read through it from another {@link IByteReader}.
+ * <p>
+ * The {@link Checksum} belongs to this reader alone, so any number of them can run side by side without getting in each other's way;
+ * By the same token, a single reader shouldn't be shared between threads.
+ * <br>Only bytes that have actually been read count towards the checksum.
+ * 
+ * @author Elusivehawk
+ */
+public class ChecksumReader implements IByteReader, Closeable
+{
+	protected final IByteReader in;
+	protected final Checksum check;
+	
+	public ChecksumReader(IByteReader r)
+	{
+		this(r, EnumChecksum.CRC32C);
+		
+	}
+	
+	public ChecksumReader(IByteReader r, EnumChecksum type)
+	{
+		this(r, type.create());
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public ChecksumReader(IByteReader r, Checksum ck)
+	{
+		assert r != null && ck != null;
+		
+		in = r;
+		check = ck;
+		
+	}
+	
+	@Override
+	public int remaining()
+	{
+		return this.in.remaining();
+	}
+	
+	@Override
+	public byte read() throws Throwable
+	{
+		byte ret = this.in.read();
+		
+		this.check.update(ret);
+		
+		return ret;
+	}
+	
+	@Override
+	public byte[] read(int count) throws Throwable
+	{
+		byte[] ret = new byte[count];
+		
+		IOHelper.readFully(this.in, ret, 0, count);
+		this.check.update(ret, 0, count);
+		
+		return ret;
+	}
+	
+	//Same as the source's bulk read; -1 once it's out of bytes.
+	@Override
+	public int read(byte[] dest, int off, int len) throws Throwable
+	{
+		int ret = this.in.read(dest, off, len);
+		
+		if (ret > 0)
+		{
+			this.check.update(dest, off, ret);
+			
+		}
+		
+		return ret;
+	}
+	
+	public Checksum getChecksum()
+	{
+		return this.check;
+	}
+	
+	public long getValue()
+	{
+		return this.check.getValue();
+	}
+	
+	public void reset()
+	{
+		this.check.reset();
+		
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if (this.in instanceof Closeable)
+		{
+			((Closeable)this.in).close();
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,112 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+import com.elusivehawk.util.EnumChecksum;
+
+/**
+ * 
+ * Checksums everything written through it, on its way to another {@link IByteWriter}.
+ * <p>
+ * Like {@link ChecksumReader}, the {@link Checksum} belongs to this writer alone, so there's no locking involved.
+ * <br>Buffers are checksummed in place, and passed downstream as-is.
+ * 
+ * @author Elusivehawk
+ */
+public class ChecksumWriter implements IByteWriter, Closeable
+{
+	protected final IByteWriter out;
+	protected final Checksum check;
+	
+	public ChecksumWriter(IByteWriter w)
+	{
+		this(w, EnumChecksum.CRC32C);
+		
+	}
+	
+	public ChecksumWriter(IByteWriter w, EnumChecksum type)
+	{
+		this(w, type.create());
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public ChecksumWriter(IByteWriter w, Checksum ck)
+	{
+		assert w != null && ck != null;
+		
+		out = w;
+		check = ck;
+		
+	}
+	
+	@Override
+	public int write(byte... bytes)
+	{
+		this.check.update(bytes, 0, bytes.length);
+		
+		return this.out.write(bytes);
+	}
+	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		this.check.update(bytes, off, len);
+		
+		return this.out.write(bytes, off, len);
+	}
+	
+	@Override
+	public int write(ByteBuffer bb, int count)
+	{
+		ByteBuffer part = bb.duplicate();
+		
+		part.limit(part.position() + Math.min(bb.remaining(), count));
+		
+		EnumChecksum.update(this.check, part.duplicate());
+		
+		int ret = this.out.write(part, part.remaining());
+		
+		bb.position(part.position());
+		
+		return ret;
+	}
+	
+	@Override
+	public void flush()
+	{
+		this.out.flush();
+		
+	}
+	
+	public Checksum getChecksum()
+	{
+		return this.check;
+	}
+	
+	public long getValue()
+	{
+		return this.check.getValue();
+	}
+	
+	public void reset()
+	{
+		this.check.reset();
+		
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if (this.out instanceof Closeable)
+		{
+			((Closeable)this.out).close();
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,368 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import com.elusivehawk.util.HashGen;
+import com.elusivehawk.util.parse.ParseHelper;
+
+/**
+ * 
+ * Content-addressed store for chunks cut by a {@link ContentChunker}, each one kept under its {@link HashGen} digest.
+ * <p>
+ * Writing a file only stores the chunks the store doesn't already have, and gives back the list of chunks that make it up;
+ * That list is all it takes to put the file back together later.
+ * <br>To sync a new version of a file, send its chunk list and whatever {@link #missing(List)} says the other end is lacking.
+ * <br>Chunks are written to a temporary file and moved into place, so readers never see half of one, and any number of threads
+ * (or processes) can write to the same store at once.
+ * 
+ * @author Elusivehawk
+ */
+public class ChunkStore
+{
+	protected final File dir;
+	protected final String algorithm;
+	protected final ContentChunker chunker;
+	
+	public ChunkStore(File folder)
+	{
+		this(folder, HashGen.SHA256, ContentChunker.DEFAULT);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public ChunkStore(File folder, String algo, ContentChunker ch)
+	{
+		assert folder != null && algo != null && ch != null;
+		assert HashGen.digest(algo) != null;
+		
+		dir = folder;
+		algorithm = algo;
+		chunker = ch;
+		
+	}
+	
+	public File getDirectory()
+	{
+		return this.dir;
+	}
+	
+	public String getAlgorithm()
+	{
+		return this.algorithm;
+	}
+	
+	public ContentChunker getChunker()
+	{
+		return this.chunker;
+	}
+	
+	public List<Chunk> write(File file) throws IOException
+	{
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			return this.write(ch);
+		}
+		
+	}
+	
+	public List<Chunk> write(ReadableByteChannel in) throws IOException
+	{
+		List<Chunk> ret = new ArrayList<Chunk>();
+		
+		try
+		{
+			this.chunker.chunk(in, ((chunk) ->
+			{
+				try
+				{
+					ret.add(this.put(chunk));
+					
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+				
+			}));
+			
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		
+		return ret;
+	}
+	
+	//Stores a single chunk, unless it's already here; Reads the buffer without moving its position.
+	public Chunk put(ByteBuffer data) throws IOException
+	{
+		Chunk ret = new Chunk(HashGen.hash(this.algorithm, data.duplicate()), data.remaining());
+		File file = this.getFile(ret);
+		
+		if (file.exists())
+		{
+			return ret;
+		}
+		
+		File parent = file.getParentFile();
+		
+		parent.mkdirs();
+		
+		File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+		
+		try
+		{
+			try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE))
+			{
+				ByteBuffer buf = data.duplicate();
+				
+				while (buf.hasRemaining())
+				{
+					ch.write(buf);
+					
+				}
+				
+			}
+			
+			try
+			{
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				
+			}
+			
+		}
+		finally
+		{
+			tmp.delete();
+			
+		}
+		
+		return ret;
+	}
+	
+	public boolean contains(Chunk chunk)
+	{
+		return this.getFile(chunk).exists();
+	}
+	
+	//Every chunk in the list that isn't stored here, in order and without repeats.
+	public List<Chunk> missing(List<Chunk> chunks)
+	{
+		List<Chunk> ret = new ArrayList<Chunk>();
+		Set<Chunk> seen = new HashSet<Chunk>();
+		
+		for (Chunk chunk : chunks)
+		{
+			if (seen.add(chunk) && !this.contains(chunk))
+			{
+				ret.add(chunk);
+				
+			}
+			
+		}
+		
+		return ret;
+	}
+	
+	//Reads a chunk back, making sure it's still what it's supposed to be.
+	@SuppressWarnings("boxing")
+	public ByteBuffer get(Chunk chunk) throws IOException
+	{
+		File file = this.getFile(chunk);
+		
+		if (!file.exists())
+		{
+			throw new IOException(String.format("Missing chunk %s", chunk));
+		}
+		
+		ByteBuffer ret = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		
+		if (ret.remaining() != chunk.length || !Arrays.equals(chunk.hash, HashGen.hash(this.algorithm, ret.duplicate())))
+		{
+			throw new IOException(String.format("Corrupt chunk %s: %s bytes", chunk, ret.remaining()));
+		}
+		
+		return ret;
+	}
+	
+	public void assemble(List<Chunk> chunks, File dest) throws IOException
+	{
+		try (FileChannel ch = FileChannel.open(dest.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			this.assemble(chunks, ch);
+			
+		}
+		
+	}
+	
+	public void assemble(List<Chunk> chunks, WritableByteChannel out) throws IOException
+	{
+		for (Chunk chunk : chunks)
+		{
+			ByteBuffer buf = this.get(chunk);
+			
+			while (buf.hasRemaining())
+			{
+				out.write(buf);
+				
+			}
+			
+		}
+		
+	}
+	
+	public boolean remove(Chunk chunk)
+	{
+		return this.getFile(chunk).delete();
+	}
+	
+	//Chunks are spread over folders named after the first byte of their hash, so no one folder gets too big.
+	protected File getFile(Chunk chunk)
+	{
+		String name = chunk.toString();
+		
+		return new File(new File(this.dir, name.substring(0, 2)), name);
+	}
+	
+	//Chunk lists are saved as: [int count], then [byte hash length][hash][int length] per chunk.
+	public static void writeList(List<Chunk> chunks, File file) throws IOException
+	{
+		int size = 4;
+		
+		for (Chunk chunk : chunks)
+		{
+			size += 5 + chunk.hash.length;
+			
+		}
+		
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		
+		buf.putInt(chunks.size());
+		
+		for (Chunk chunk : chunks)
+		{
+			buf.put((byte)chunk.hash.length);
+			buf.put(chunk.hash);
+			buf.putInt(chunk.length);
+			
+		}
+		
+		Files.write(file.toPath(), buf.array());
+		
+	}
+	
+	@SuppressWarnings("boxing")
+	public static List<Chunk> readList(File file) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		
+		try
+		{
+			int count = buf.getInt();
+			
+			if (count < 0)
+			{
+				throw new IOException(String.format("Invalid chunk count: %s", count));
+			}
+			
+			List<Chunk> ret = new ArrayList<Chunk>(Math.min(count, buf.remaining() / 5));
+			
+			for (int c = 0; c < count; c++)
+			{
+				byte[] hash = new byte[buf.get() & 0xFF];
+				
+				buf.get(hash);
+				ret.add(new Chunk(hash, buf.getInt()));
+				
+			}
+			
+			return Collections.unmodifiableList(ret);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException(String.format("Malformed chunk list: %s", file), e);
+		}
+		
+	}
+	
+	/**
+	 * 
+	 * A chunk's hash and length; Equal chunks have the same contents.
+	 * 
+	 * @author Elusivehawk
+	 */
+	public static final class Chunk
+	{
+		private final byte[] hash;
+		private final int length;
+		
+		@SuppressWarnings("unqualified-field-access")
+		public Chunk(byte[] digest, int len)
+		{
+			assert digest != null && digest.length > 0 && len >= 0;
+			
+			hash = digest;
+			length = len;
+			
+		}
+		
+		public byte[] getHash()
+		{
+			return this.hash.clone();
+		}
+		
+		public int getLength()
+		{
+			return this.length;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Chunk))
+			{
+				return false;
+			}
+			
+			Chunk c = (Chunk)obj;
+			
+			return c.length == this.length && Arrays.equals(c.hash, this.hash);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return Arrays.hashCode(this.hash);
+		}
+		
+		@Override
+		public String toString()
+		{
+			return ParseHelper.asHexString(this.hash).toLowerCase();
+		}
+		
+	}
+	
+}
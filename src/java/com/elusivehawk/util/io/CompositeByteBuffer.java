@@ -0,0 +1,235 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import com.elusivehawk.util.storage.BufferHelper;
+
+/**
+ * 
+ * Presents several {@link ByteBuffer}s as one logical buffer, without copying any of them.
+ * <p>
+ * Every buffer added is sliced, so the composite gets its own position while still sharing the original contents.
+ * <br>Use {@link #writeTo(GatheringByteChannel)} to push everything out with a single gathering write; Non-blocking channels
+ * may not take it all at once, so keep calling it until {@link #hasRemaining()} returns false.
+ * 
+ * @author Elusivehawk
+ */
+public class CompositeByteBuffer implements IByteReader
+{
+	protected final List<ByteBuffer> bufs = new ArrayList<ByteBuffer>();
+	protected int index = 0, remaining = 0;
+	
+	public CompositeByteBuffer(){}
+	
+	public CompositeByteBuffer(ByteBuffer... parts)
+	{
+		this.add(parts);
+		
+	}
+	
+	public CompositeByteBuffer add(ByteBuffer buf)
+	{
+		if (buf.hasRemaining())
+		{
+			this.bufs.add(buf.slice());
+			this.remaining += buf.remaining();
+			
+		}
+		
+		return this;
+	}
+	
+	public CompositeByteBuffer add(ByteBuffer... parts)
+	{
+		for (ByteBuffer buf : parts)
+		{
+			this.add(buf);
+			
+		}
+		
+		return this;
+	}
+	
+	public int componentCount()
+	{
+		return this.bufs.size();
+	}
+	
+	public ByteBuffer component(int i)
+	{
+		return this.bufs.get(i);
+	}
+	
+	public boolean hasRemaining()
+	{
+		return this.remaining > 0;
+	}
+	
+	@Override
+	public int remaining()
+	{
+		return this.remaining;
+	}
+	
+	@Override
+	public byte read()
+	{
+		if (this.remaining == 0)
+		{
+			throw new BufferUnderflowException();
+		}
+		
+		ByteBuffer buf = this.current();
+		
+		this.remaining--;
+		
+		return buf.get();
+	}
+	
+	@Override
+	public byte[] read(int count)
+	{
+		if (count > this.remaining)
+		{
+			throw new BufferUnderflowException();
+		}
+		
+		byte[] ret = new byte[count];
+		
+		this.read(ret, 0, count);
+		
+		return ret;
+	}
+	
+	@Override
+	public int read(byte[] dest, int off, int len)
+	{
+		int total = Math.min(len, this.remaining);
+		
+		if (total <= 0)
+		{
+			return len == 0 ? 0 : -1;
+		}
+		
+		int copied = 0;
+		
+		while (copied < total)
+		{
+			ByteBuffer buf = this.current();
+			int count = Math.min(total - copied, buf.remaining());
+			
+			buf.get(dest, off + copied, count);
+			
+			copied += count;
+			
+		}
+		
+		this.remaining -= total;
+		
+		return total;
+	}
+	
+	public void skip(int count)
+	{
+		if (count > this.remaining)
+		{
+			throw new BufferUnderflowException();
+		}
+		
+		int skipped = 0;
+		
+		while (skipped < count)
+		{
+			ByteBuffer buf = this.current();
+			int step = Math.min(count - skipped, buf.remaining());
+			
+			buf.position(buf.position() + step);
+			
+			skipped += step;
+			
+		}
+		
+		this.remaining -= count;
+		
+	}
+	
+	public long writeTo(GatheringByteChannel ch) throws IOException
+	{
+		if (this.remaining == 0)
+		{
+			return 0;
+		}
+		
+		long written = ch.write(this.nioBuffers());
+		
+		this.remaining -= written;
+		
+		while (this.index < this.bufs.size() && !this.bufs.get(this.index).hasRemaining())
+		{
+			this.index++;
+			
+		}
+		
+		return written;
+	}
+	
+	public ByteBuffer[] nioBuffers()
+	{
+		return this.bufs.subList(this.index, this.bufs.size()).toArray(new ByteBuffer[this.bufs.size() - this.index]);
+	}
+	
+	public ByteBuffer toByteBuffer()
+	{
+		ByteBuffer[] parts = this.nioBuffers();
+		
+		for (int c = 0; c < parts.length; c++)
+		{
+			parts[c] = parts[c].duplicate();
+			
+		}
+		
+		return BufferHelper.makeByteBuffer(parts);
+	}
+	
+	public void rewind()
+	{
+		this.remaining = 0;
+		
+		for (ByteBuffer buf : this.bufs)
+		{
+			buf.rewind();
+			this.remaining += buf.remaining();
+			
+		}
+		
+		this.index = 0;
+		
+	}
+	
+	public void clear()
+	{
+		this.bufs.clear();
+		this.index = 0;
+		this.remaining = 0;
+		
+	}
+	
+	private ByteBuffer current()
+	{
+		ByteBuffer ret = this.bufs.get(this.index);
+		
+		while (!ret.hasRemaining())
+		{
+			ret = this.bufs.get(++this.index);
+			
+		}
+		
+		return ret;
+	}
+	
+}
@@ -0,0 +1,229 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * 
+ * Content-defined chunker, using FastCDC's gear hash with normalized chunking.
+ * <p>
+ * Cut points depend only on the last 64 bytes of data, so inserting or removing bytes only changes the chunks around the edit;
+ * Everything before and after comes out exactly the same, which is what makes {@link ChunkStore} able to deduplicate.
+ * <br>The gear table is generated from a fixed seed, so chunk boundaries are the same on every JVM, every run.
+ * <br>Chunkers hold no state between calls, and can be shared freely.
+ * 
+ * @author Elusivehawk
+ */
+public class ContentChunker
+{
+	public static final ContentChunker DEFAULT = new ContentChunker(16 << 10, 64 << 10, 256 << 10);
+	
+	private static final long[] GEAR = makeGear();
+	
+	protected final int min, avg, max;
+	protected final long maskSmall, maskLarge;
+	
+	@SuppressWarnings({"unqualified-field-access", "boxing"})
+	public ContentChunker(int minSize, int avgSize, int maxSize)
+	{
+		assert minSize > 0 && minSize <= avgSize && avgSize <= maxSize;
+		assert Integer.bitCount(avgSize) == 1 : String.format("Average chunk size must be a power of two: %s", avgSize);
+		
+		min = minSize;
+		avg = avgSize;
+		max = maxSize;
+		
+		int bits = Integer.numberOfTrailingZeros(avgSize);
+		
+		//Harder to match before the average size, easier after; Keeps chunk sizes bunched up around the average.
+		maskSmall = highBits(Math.min(bits + 2, 63));
+		maskLarge = highBits(Math.max(bits - 2, 1));
+		
+	}
+	
+	public int getMinSize()
+	{
+		return this.min;
+	}
+	
+	public int getAverageSize()
+	{
+		return this.avg;
+	}
+	
+	public int getMaxSize()
+	{
+		return this.max;
+	}
+	
+	//Length of the next chunk starting at off; Only gives a final answer if len >= max, or if there's nothing left after these bytes.
+	public int cut(byte[] in, int off, int len)
+	{
+		if (len <= this.min)
+		{
+			return len;
+		}
+		
+		int end = Math.min(len, this.max), normal = Math.min(end, this.avg);
+		long fp = 0L;
+		int i = this.min;
+		
+		for (; i < normal; i++)
+		{
+			fp = (fp << 1) + GEAR[in[off + i] & 0xFF];
+			
+			if ((fp & this.maskSmall) == 0L)
+			{
+				return i + 1;
+			}
+			
+		}
+		
+		for (; i < end; i++)
+		{
+			fp = (fp << 1) + GEAR[in[off + i] & 0xFF];
+			
+			if ((fp & this.maskLarge) == 0L)
+			{
+				return i + 1;
+			}
+			
+		}
+		
+		return end;
+	}
+	
+	//Same as above, using the buffer's position and limit.
+	public int cut(ByteBuffer in)
+	{
+		if (in.hasArray())
+		{
+			return this.cut(in.array(), in.arrayOffset() + in.position(), in.remaining());
+		}
+		
+		int len = in.remaining(), off = in.position();
+		
+		if (len <= this.min)
+		{
+			return len;
+		}
+		
+		int end = Math.min(len, this.max), normal = Math.min(end, this.avg);
+		long fp = 0L;
+		int i = this.min;
+		
+		for (; i < normal; i++)
+		{
+			fp = (fp << 1) + GEAR[in.get(off + i) & 0xFF];
+			
+			if ((fp & this.maskSmall) == 0L)
+			{
+				return i + 1;
+			}
+			
+		}
+		
+		for (; i < end; i++)
+		{
+			fp = (fp << 1) + GEAR[in.get(off + i) & 0xFF];
+			
+			if ((fp & this.maskLarge) == 0L)
+			{
+				return i + 1;
+			}
+			
+		}
+		
+		return end;
+	}
+	
+	//Splits everything in the buffer, handing each chunk over as a slice of it; Doesn't move the buffer's position.
+	public int chunk(ByteBuffer in, Consumer<ByteBuffer> out)
+	{
+		ByteBuffer view = in.duplicate();
+		int ret = 0;
+		
+		while (view.hasRemaining())
+		{
+			int len = this.cut(view);
+			ByteBuffer chunk = view.slice();
+			
+			chunk.limit(len);
+			out.accept(chunk);
+			view.position(view.position() + len);
+			ret++;
+			
+		}
+		
+		return ret;
+	}
+	
+	//Reads the channel to its end; Chunks are slices of a reused buffer, so copy anything that needs to outlive the consumer call.
+	public int chunk(ReadableByteChannel ch, Consumer<ByteBuffer> out) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(this.max * 2);
+		boolean eof = false;
+		int ret = 0;
+		
+		while (true)
+		{
+			while (!eof && buf.hasRemaining())
+			{
+				eof = ch.read(buf) == -1;
+				
+			}
+			
+			buf.flip();
+			
+			if (!buf.hasRemaining())
+			{
+				break;
+			}
+			
+			while (buf.remaining() >= this.max || (eof && buf.hasRemaining()))
+			{
+				int len = this.cut(buf);
+				ByteBuffer chunk = buf.slice();
+				
+				chunk.limit(len);
+				out.accept(chunk);
+				buf.position(buf.position() + len);
+				ret++;
+				
+			}
+			
+			buf.compact();
+			
+		}
+		
+		return ret;
+	}
+	
+	private static long highBits(int count)
+	{
+		return -1L << (64 - count);
+	}
+	
+	//SplitMix64 off a fixed seed; Never change this, or every existing chunk boundary moves.
+	private static long[] makeGear()
+	{
+		long[] ret = new long[256];
+		long seed = 0x2545F4914F6CDD1DL;
+		
+		for (int c = 0; c < ret.length; c++)
+		{
+			long z = (seed += 0x9E3779B97F4A7C15L);
+			
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			ret[c] = z ^ (z >>> 31);
+			
+		}
+		
+		return ret;
+	}
+	
+}
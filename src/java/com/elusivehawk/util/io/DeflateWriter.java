@@ -0,0 +1,298 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+/**
+ * 
+ * Compresses everything written to it, and passes the result on to another {@link IByteWriter}.
+ * <p>
+ * Small writes are gathered into a staging buffer before they're deflated; Large ones go straight to the {@link Deflater}.
+ * <br>Compressed output is handed downstream as {@link ByteBuffer}s, so writers that take buffers directly (such as
+ * {@link PooledByteArray} and {@link ByteChannels}) never see an extra copy.
+ * <br>{@link #flush()} does a sync flush, so the receiving end can decompress everything written so far.
+ * <br>{@link #close()} finishes the stream and hands the {@link Deflater} back to its {@link ZipPool}; It also closes the
+ * downstream writer, if it can be.
+ * 
+ * @author Elusivehawk
+ */
+public class DeflateWriter implements IByteWriter, Closeable
+{
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 15;
+	
+	protected final IByteWriter out;
+	protected final EnumZipFormat format;
+	protected final ZipPool pool;
+	protected final Checksum check;
+	private final byte[] inBuf, outBuf;
+	private Deflater def;
+	private int inLen = 0;
+	private long total = 0L;
+	
+	public DeflateWriter(IByteWriter w)
+	{
+		this(w, EnumZipFormat.ZLIB);
+		
+	}
+	
+	public DeflateWriter(IByteWriter w, EnumZipFormat f)
+	{
+		this(w, f, Deflater.DEFAULT_COMPRESSION);
+		
+	}
+	
+	public DeflateWriter(IByteWriter w, EnumZipFormat f, int level)
+	{
+		this(w, f, level, DEFAULT_BUFFER_SIZE, ZipPool.DEFAULT);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public DeflateWriter(IByteWriter w, EnumZipFormat f, int level, int bufSize, ZipPool p)
+	{
+		assert w != null && f != null && p != null;
+		assert bufSize > 0;
+		
+		out = w;
+		format = f;
+		pool = p;
+		inBuf = new byte[bufSize];
+		outBuf = new byte[bufSize];
+		def = p.takeDeflater(level);
+		
+		switch (f)
+		{
+			case ZLIB: check = new Adler32(); writeZlibHeader(w, level); break;
+			case GZIP: check = new CRC32(); w.write((byte)0x1F, (byte)0x8B, (byte)8, (byte)0, (byte)0, (byte)0, (byte)0, (byte)0, (byte)0, (byte)0xFF); break;
+			default: check = null;
+		}
+		
+	}
+	
+	public static DeflateWriter gzip(IByteWriter w)
+	{
+		return new DeflateWriter(w, EnumZipFormat.GZIP);
+	}
+	
+	public boolean isFinished()
+	{
+		return this.def == null;
+	}
+	
+	//Uncompressed bytes written so far.
+	public long getTotalIn()
+	{
+		return this.total + this.inLen;
+	}
+	
+	@Override
+	public int write(byte... bytes)
+	{
+		return this.write(bytes, 0, bytes.length);
+	}
+	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		if (this.def == null)
+		{
+			throw new IllegalStateException("Stream is already finished");
+		}
+		
+		if (len >= this.inBuf.length)
+		{
+			this.flushInput();
+			this.deflate(bytes, off, len);
+			
+		}
+		else
+		{
+			if (this.inLen + len > this.inBuf.length)
+			{
+				this.flushInput();
+				
+			}
+			
+			System.arraycopy(bytes, off, this.inBuf, this.inLen, len);
+			this.inLen += len;
+			
+		}
+		
+		return len;
+	}
+	
+	@Override
+	public int write(ByteBuffer bb, int count)
+	{
+		if (this.def == null)
+		{
+			throw new IllegalStateException("Stream is already finished");
+		}
+		
+		int len = Math.min(bb.remaining(), count);
+		
+		if (bb.hasArray())
+		{
+			this.write(bb.array(), bb.arrayOffset() + bb.position(), len);
+			bb.position(bb.position() + len);
+			
+			return len;
+		}
+		
+		int left = len;
+		
+		while (left > 0)
+		{
+			if (this.inLen == this.inBuf.length)
+			{
+				this.flushInput();
+				
+			}
+			
+			int step = Math.min(left, this.inBuf.length - this.inLen);
+			
+			bb.get(this.inBuf, this.inLen, step);
+			this.inLen += step;
+			left -= step;
+			
+		}
+		
+		return len;
+	}
+	
+	@Override
+	public void flush()
+	{
+		if (this.def == null)
+		{
+			return;
+		}
+		
+		this.flushInput();
+		
+		while (this.drain(Deflater.SYNC_FLUSH) == this.outBuf.length);
+		
+		this.out.flush();
+		
+	}
+	
+	//Writes out everything that's left, along with the format's trailer; Nothing more can be written after this.
+	public void finish()
+	{
+		if (this.def == null)
+		{
+			return;
+		}
+		
+		this.flushInput();
+		this.def.finish();
+		
+		while (!this.def.finished())
+		{
+			this.drain(Deflater.NO_FLUSH);
+			
+		}
+		
+		if (this.format == EnumZipFormat.ZLIB)
+		{
+			long v = this.check.getValue();
+			
+			this.out.write((byte)(v >>> 24), (byte)(v >>> 16), (byte)(v >>> 8), (byte)v);
+			
+		}
+		else if (this.format == EnumZipFormat.GZIP)
+		{
+			long v = this.check.getValue();
+			
+			this.out.write((byte)v, (byte)(v >>> 8), (byte)(v >>> 16), (byte)(v >>> 24),
+					(byte)this.total, (byte)(this.total >>> 8), (byte)(this.total >>> 16), (byte)(this.total >>> 24));
+					
+		}
+		
+		this.pool.release(this.def);
+		this.def = null;
+		
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			this.finish();
+			this.out.flush();
+			
+		}
+		finally
+		{
+			if (this.out instanceof Closeable)
+			{
+				((Closeable)this.out).close();
+				
+			}
+			
+		}
+		
+	}
+	
+	private void flushInput()
+	{
+		if (this.inLen > 0)
+		{
+			this.deflate(this.inBuf, 0, this.inLen);
+			this.inLen = 0;
+			
+		}
+		
+	}
+	
+	private void deflate(byte[] bytes, int off, int len)
+	{
+		if (this.check != null)
+		{
+			this.check.update(bytes, off, len);
+			
+		}
+		
+		this.total += len;
+		this.def.setInput(bytes, off, len);
+		
+		while (!this.def.needsInput())
+		{
+			this.drain(Deflater.NO_FLUSH);
+			
+		}
+		
+	}
+	
+	private int drain(int mode)
+	{
+		int ret = this.def.deflate(this.outBuf, 0, this.outBuf.length, mode);
+		
+		if (ret > 0)
+		{
+			this.out.write(ByteBuffer.wrap(this.outBuf, 0, ret));
+			
+		}
+		
+		return ret;
+	}
+	
+	private static void writeZlibHeader(IByteWriter w, int level)
+	{
+		int flevel = level == Deflater.DEFAULT_COMPRESSION ? 2 : (level < 2 ? 0 : (level < 6 ? 1 : (level == 6 ? 2 : 3)));
+		int header = (0x78 << 8) | (flevel << 6);
+		
+		header += 31 - (header % 31);
+		
+		w.write((byte)(header >>> 8), (byte)header);
+		
+	}
+	
+}
@@ -0,0 +1,169 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import com.elusivehawk.util.HashGen;
+
+/**
+ * 
+ * Incrementally hashes everything written to it, optionally passing it on to another {@link IByteWriter}.
+ * <p>
+ * Useful for hashing data as it's being saved or sent, or anything too big to hold in memory all at once.
+ * <br>{@link #digest()} finishes the hash and starts a new one.
+ * <br>Each writer has its own {@link MessageDigest}, so don't share one between threads; See {@link HashGen} for one-shot hashing.
+ * 
+ * @author Elusivehawk
+ */
+public class DigestWriter implements IByteWriter, Closeable
+{
+	protected final MessageDigest md;
+	protected final IByteWriter out;
+	private long total = 0L;
+	
+	public DigestWriter(String algorithm) throws NoSuchAlgorithmException
+	{
+		this(MessageDigest.getInstance(algorithm), null);
+		
+	}
+	
+	public DigestWriter(String algorithm, IByteWriter w) throws NoSuchAlgorithmException
+	{
+		this(MessageDigest.getInstance(algorithm), w);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public DigestWriter(MessageDigest digest, IByteWriter w)
+	{
+		assert digest != null;
+		
+		md = digest;
+		out = w;
+		
+	}
+	
+	@Override
+	public int write(byte... bytes)
+	{
+		return this.write(bytes, 0, bytes.length);
+	}
+	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		this.md.update(bytes, off, len);
+		this.total += len;
+		
+		if (this.out != null)
+		{
+			this.out.write(ByteBuffer.wrap(bytes, off, len));
+			
+		}
+		
+		return len;
+	}
+	
+	@Override
+	public int write(ByteBuffer bb, int count)
+	{
+		ByteBuffer part = bb.duplicate();
+		
+		part.limit(part.position() + Math.min(bb.remaining(), count));
+		
+		int ret = part.remaining();
+		
+		if (this.out != null)
+		{
+			this.md.update(part.duplicate());
+			this.out.write(part, ret);
+			
+		}
+		else
+		{
+			this.md.update(part);
+			
+		}
+		
+		bb.position(bb.position() + ret);
+		this.total += ret;
+		
+		return ret;
+	}
+	
+	//Pulls everything left out of the reader.
+	@Override
+	public int write(IByteReader r)
+	{
+		byte[] scratch = new byte[8192];
+		int ret = 0;
+		
+		try
+		{
+			int count;
+			
+			while ((count = r.read(scratch, 0, scratch.length)) > 0)
+			{
+				ret += this.write(scratch, 0, count);
+				
+			}
+			
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public void flush()
+	{
+		if (this.out != null)
+		{
+			this.out.flush();
+			
+		}
+		
+	}
+	
+	//Bytes hashed since the last digest.
+	public long getTotal()
+	{
+		return this.total;
+	}
+	
+	public byte[] digest()
+	{
+		this.total = 0L;
+		
+		return this.md.digest();
+	}
+	
+	public void reset()
+	{
+		this.md.reset();
+		this.total = 0L;
+		
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if (this.out instanceof Closeable)
+		{
+			((Closeable)this.out).close();
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,14 @@
+
+package com.elusivehawk.util.io;
+
+/**
+ * 
+ * Framing used around deflated data by {@link DeflateWriter} and {@link InflateReader}.
+ * 
+ * @author Elusivehawk
+ */
+public enum EnumZipFormat
+{
+	RAW, ZLIB, GZIP;
+	
+}
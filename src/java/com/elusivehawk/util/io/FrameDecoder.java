@@ -0,0 +1,178 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * 
+ * Splits a byte stream back into the frames written by a {@link FrameEncoder}.
+ * <p>
+ * Each frame is a little-endian int length, followed by that many bytes.
+ * <br>Partial reads (as non-blocking channels are prone to) are held onto until the rest of the frame comes in, so frames
+ * only ever come out whole.
+ * <br>Frames are handed out as slices of the internal buffer, not copies; They're only good until the next call to
+ * {@link #read(ReadableByteChannel)} or {@link #feed(ByteBuffer)}, so copy anything that needs to stick around.
+ * <br>Lengths above the maximum frame size are treated as a corrupt stream.
+ * 
+ * @author Elusivehawk
+ */
+public class FrameDecoder
+{
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16, DEFAULT_MAX_FRAME = 1 << 24;
+	
+	protected final int maxFrame;
+	protected final boolean direct;
+	private ByteBuffer buf;
+	
+	public FrameDecoder()
+	{
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FRAME, false);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public FrameDecoder(int bufSize, int max, boolean useDirect)
+	{
+		assert bufSize >= 4 && max >= 0;
+		
+		maxFrame = max;
+		direct = useDirect;
+		buf = allocate(bufSize, useDirect);
+		
+		buf.flip();
+		
+	}
+	
+	//Reads whatever the channel has right now; Returns -1 once the channel's hit the end.
+	public int read(ReadableByteChannel ch) throws IOException
+	{
+		this.prepare(4);
+		
+		int ret = ch.read(this.buf);
+		
+		this.buf.flip();
+		
+		return ret;
+	}
+	
+	//Takes bytes from somewhere other than a channel.
+	public void feed(ByteBuffer src)
+	{
+		while (src.hasRemaining())
+		{
+			this.prepare(Math.min(src.remaining(), Math.max(4, this.buf.capacity() >>> 1)));
+			
+			int count = Math.min(src.remaining(), this.buf.remaining());
+			ByteBuffer part = src.duplicate();
+			
+			part.limit(part.position() + count);
+			this.buf.put(part);
+			src.position(src.position() + count);
+			
+			this.buf.flip();
+			
+		}
+		
+	}
+	
+	//Returns the next complete frame, or null if there isn't one yet.
+	public ByteBuffer next() throws IOException
+	{
+		if (this.buf.remaining() < 4)
+		{
+			return null;
+		}
+		
+		int pos = this.buf.position();
+		int length = this.buf.getInt(pos);
+		
+		if (length < 0 || length > this.maxFrame)
+		{
+			throw new IOException(String.format("Bad frame length: %s", length));
+		}
+		
+		if (this.buf.remaining() - 4 < length)
+		{
+			return null;
+		}
+		
+		ByteBuffer ret = this.buf.duplicate();
+		
+		ret.position(pos + 4);
+		ret.limit(pos + 4 + length);
+		this.buf.position(pos + 4 + length);
+		
+		return ret.slice().order(this.buf.order());
+	}
+	
+	//Hands every complete frame to the consumer; Returns how many there were.
+	public int drain(Consumer<ByteBuffer> out) throws IOException
+	{
+		int ret = 0;
+		ByteBuffer frame;
+		
+		while ((frame = this.next()) != null)
+		{
+			out.accept(frame);
+			ret++;
+			
+		}
+		
+		return ret;
+	}
+	
+	//Bytes received but not yet handed out as frames.
+	public int buffered()
+	{
+		return this.buf.remaining();
+	}
+	
+	public void clear()
+	{
+		this.buf.clear();
+		this.buf.flip();
+		
+	}
+	
+	//Switches the buffer to filling, making sure there's room for at least the given amount (or the rest of the current frame).
+	private void prepare(int want)
+	{
+		int need = want;
+		
+		if (this.buf.remaining() >= 4)
+		{
+			int length = this.buf.getInt(this.buf.position());
+			
+			if (length >= 0 && length <= this.maxFrame)
+			{
+				need = Math.max(need, length + 4 - this.buf.remaining());
+				
+			}
+			
+		}
+		
+		//Only a partial frame's ever left over, so compacting never moves much.
+		if (this.buf.capacity() - this.buf.remaining() >= need)
+		{
+			this.buf.compact();
+			
+			return;
+		}
+		
+		ByteBuffer grown = allocate(Math.max(this.buf.capacity() << 1, this.buf.remaining() + need), this.direct);
+		
+		grown.put(this.buf);
+		this.buf = grown;
+		
+	}
+	
+	private static ByteBuffer allocate(int size, boolean direct)
+	{
+		return (direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size)).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+}
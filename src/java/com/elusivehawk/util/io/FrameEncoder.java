@@ -0,0 +1,110 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * 
+ * Queues up length-prefixed frames, and writes them out with gathering writes.
+ * <p>
+ * Payloads aren't copied: Each frame's header is sliced out of a shared buffer, and goes into a {@link CompositeByteBuffer}
+ * right alongside the payload itself. So don't touch a payload's contents until it's been written.
+ * <br>{@link #flush(GatheringByteChannel)} writes as much as the channel will take, which for non-blocking channels may not be
+ * everything; Keep calling it (say, whenever the channel's writable again) until it returns true.
+ * <br>See {@link FrameDecoder} for the other end.
+ * 
+ * @author Elusivehawk
+ */
+public class FrameEncoder
+{
+	private static final int HEADER_SLAB = 4096;
+	
+	protected final CompositeByteBuffer pending = new CompositeByteBuffer();
+	private ByteBuffer headers = allocateHeaders();
+	private int frames = 0;
+	
+	//Every given buffer goes into the same frame.
+	public FrameEncoder add(ByteBuffer... payload)
+	{
+		long length = 0;
+		
+		for (ByteBuffer part : payload)
+		{
+			length += part.remaining();
+			
+		}
+		
+		if (length > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException(String.format("Frame too big: %s bytes", length));
+		}
+		
+		if (this.headers.remaining() < 4)
+		{
+			//Whatever's still queued keeps the old slab alive.
+			this.headers = allocateHeaders();
+			
+		}
+		
+		ByteBuffer header = this.headers.slice().order(ByteOrder.LITTLE_ENDIAN);
+		
+		header.putInt(0, (int)length).limit(4);
+		this.headers.position(this.headers.position() + 4);
+		
+		this.pending.add(header);
+		this.pending.add(payload);
+		this.frames++;
+		
+		return this;
+	}
+	
+	//Frames queued since the last complete flush.
+	public int queued()
+	{
+		return this.frames;
+	}
+	
+	public int pendingBytes()
+	{
+		return this.pending.remaining();
+	}
+	
+	public boolean hasPending()
+	{
+		return this.pending.hasRemaining();
+	}
+	
+	//Returns true once everything queued has been written.
+	public boolean flush(GatheringByteChannel ch) throws IOException
+	{
+		while (this.pending.hasRemaining())
+		{
+			if (this.pending.writeTo(ch) == 0L)
+			{
+				return false;
+			}
+			
+		}
+		
+		this.clear();
+		
+		return true;
+	}
+	
+	public void clear()
+	{
+		this.pending.clear();
+		this.headers.clear();
+		this.frames = 0;
+		
+	}
+	
+	private static ByteBuffer allocateHeaders()
+	{
+		return ByteBuffer.allocateDirect(HEADER_SLAB);
+	}
+	
+}
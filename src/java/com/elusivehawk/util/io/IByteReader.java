@@ -17,6 +17,25 @@ public interface IByteReader
 	
 	byte read() throws Throwable;
 	
+	//Reads up to len bytes, returning how many were read, or -1 if there's nothing left; The default trusts remaining() to be exact, so readers where it isn't have to override this.
+	default int read(byte[] dest, int off, int len) throws Throwable
+	{
+		int count = Math.min(len, this.remaining());
+		
+		if (count <= 0)
+		{
+			return len == 0 ? 0 : -1;
+		}
+		
+		for (int c = 0; c < count; c++)
+		{
+			dest[off + c] = this.read();
+			
+		}
+		
+		return count;
+	}
+	
 	default byte[] readAll() throws Throwable
 	{
 		return this.read(this.remaining());
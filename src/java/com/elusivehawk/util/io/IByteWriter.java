@@ -2,6 +2,7 @@
 package com.elusivehawk.util.io;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.UUID;
 import com.elusivehawk.util.Logger;
 
@@ -18,6 +19,17 @@ public interface IByteWriter
 	
 	default void flush(){}
 	
+	//Writes len bytes starting at off, returning how many were written; The default has to copy them out first, so writers that can take a range directly should override this.
+	default int write(byte[] bytes, int off, int len)
+	{
+		if (off == 0 && len == bytes.length)
+		{
+			return this.write(bytes);
+		}
+		
+		return this.write(Arrays.copyOfRange(bytes, off, off + len));
+	}
+	
 	default int write(ByteBuffer bb)
 	{
 		return this.write(bb, bb.remaining());
@@ -25,7 +37,18 @@ public interface IByteWriter
 	
 	default int write(ByteBuffer bb, int count)
 	{
-		byte[] bs = new byte[Math.min(bb.remaining(), count)];
+		int len = Math.min(bb.remaining(), count);
+		
+		if (bb.hasArray())
+		{
+			int ret = this.write(bb.array(), bb.arrayOffset() + bb.position(), len);
+			
+			bb.position(bb.position() + Math.max(ret, 0));
+			
+			return ret;
+		}
+		
+		byte[] bs = new byte[len];
 		
 		bb.get(bs);
 		
@@ -6,6 +6,7 @@ import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileOutputStream;
@@ -198,6 +199,30 @@ public class IOHelper
 		return ret;
 	}
 	
+	public static void readFully(IByteReader r, byte[] dest, int off, int len) throws Throwable
+	{
+		int copied = 0;
+		
+		while (copied < len)
+		{
+			int count = r.read(dest, off + copied, len - copied);
+			
+			if (count == -1)
+			{
+				throw new EOFException();
+			}
+			
+			if (count == 0)
+			{
+				throw new IOException("Reader had nothing ready to read");
+			}
+			
+			copied += count;
+			
+		}
+		
+	}
+	
 	public static List<String> readText(File file)
 	{
 		return readText(file, UTF_8);
@@ -0,0 +1,404 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 
+ * Decompresses data pulled from another {@link IByteReader}.
+ * <p>
+ * Compressed input is pulled in bulk, as far as the source's {@link IByteReader#remaining()} goes, so sources should report
+ * everything they have.
+ * <br>{@link #remaining()} is how much is decompressed and ready to go, and only hits zero at the end of the stream; Reading past
+ * that throws an {@link EOFException}.
+ * <br>Trailing checksums are verified once the end of the stream is reached. Input is read ahead in bulk, so anything that
+ * follows the compressed data in the source may be consumed along with it.
+ * <br>{@link #close()} hands the {@link Inflater} back to its {@link ZipPool}, and closes the source if it can be.
+ * 
+ * @author Elusivehawk
+ */
+public class InflateReader implements IByteReader, Closeable
+{
+	protected final IByteReader in;
+	protected final EnumZipFormat format;
+	protected final ZipPool pool;
+	protected final Checksum check;
+	private final byte[] inBuf, outBuf;
+	private Inflater inf;
+	private int inPos = 0, inLen = 0, outPos = 0, outLen = 0;
+	private long total = 0L;
+	private boolean started = false, done = false;
+	
+	public InflateReader(IByteReader r)
+	{
+		this(r, EnumZipFormat.ZLIB);
+		
+	}
+	
+	public InflateReader(IByteReader r, EnumZipFormat f)
+	{
+		this(r, f, DeflateWriter.DEFAULT_BUFFER_SIZE, ZipPool.DEFAULT);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public InflateReader(IByteReader r, EnumZipFormat f, int bufSize, ZipPool p)
+	{
+		assert r != null && f != null && p != null;
+		assert bufSize > 0;
+		
+		in = r;
+		format = f;
+		pool = p;
+		inBuf = new byte[bufSize];
+		outBuf = new byte[bufSize];
+		inf = p.takeInflater();
+		
+		switch (f)
+		{
+			case ZLIB: check = new Adler32(); break;
+			case GZIP: check = new CRC32(); break;
+			default: check = null;
+		}
+		
+	}
+	
+	public static InflateReader gzip(IByteReader r)
+	{
+		return new InflateReader(r, EnumZipFormat.GZIP);
+	}
+	
+	@Override
+	public int remaining()
+	{
+		try
+		{
+			if (this.outPos == this.outLen)
+			{
+				this.fill();
+				
+			}
+			
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+		return this.outLen - this.outPos;
+	}
+	
+	public boolean isEOF() throws Throwable
+	{
+		return this.outPos == this.outLen && this.fill() == -1;
+	}
+	
+	@Override
+	public byte read() throws Throwable
+	{
+		if (this.outPos == this.outLen && this.fill() == -1)
+		{
+			throw new EOFException();
+		}
+		
+		return this.outBuf[this.outPos++];
+	}
+	
+	@Override
+	public byte[] read(int count) throws Throwable
+	{
+		byte[] ret = new byte[count];
+		
+		IOHelper.readFully(this, ret, 0, count);
+		
+		return ret;
+	}
+	
+	//Reads as much as it can, up to the requested length; Only stops early at the end of the stream.
+	@Override
+	public int read(byte[] dest, int off, int len) throws Throwable
+	{
+		int copied = 0;
+		
+		while (copied < len)
+		{
+			if (this.outPos == this.outLen && this.fill() == -1)
+			{
+				return copied == 0 ? -1 : copied;
+			}
+			
+			int count = Math.min(len - copied, this.outLen - this.outPos);
+			
+			System.arraycopy(this.outBuf, this.outPos, dest, off + copied, count);
+			this.outPos += count;
+			copied += count;
+			
+		}
+		
+		return copied;
+	}
+	
+	@Override
+	public byte[] readAll() throws Throwable
+	{
+		PooledByteArray acc = new PooledByteArray();
+		
+		try
+		{
+			while (this.outPos < this.outLen || this.fill() != -1)
+			{
+				acc.write(this.outBuf, this.outPos, this.outLen - this.outPos);
+				this.outPos = this.outLen;
+				
+			}
+			
+			return acc.toByteArray();
+		}
+		finally
+		{
+			acc.release();
+			
+		}
+		
+	}
+	
+	//Uncompressed bytes produced so far.
+	public long getTotalOut()
+	{
+		return this.total;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if (this.inf != null)
+		{
+			this.pool.release(this.inf);
+			this.inf = null;
+			
+		}
+		
+		if (this.in instanceof Closeable)
+		{
+			((Closeable)this.in).close();
+			
+		}
+		
+	}
+	
+	protected int fill() throws Throwable
+	{
+		if (this.done)
+		{
+			return -1;
+		}
+		
+		if (this.inf == null)
+		{
+			throw new IOException("Reader is closed");
+		}
+		
+		if (!this.started)
+		{
+			this.readHeader();
+			this.started = true;
+			
+			if (this.inLen > this.inPos)
+			{
+				this.inf.setInput(this.inBuf, this.inPos, this.inLen - this.inPos);
+				
+			}
+			
+		}
+		
+		while (true)
+		{
+			int count;
+			
+			try
+			{
+				count = this.inf.inflate(this.outBuf);
+				
+			}
+			catch (DataFormatException e)
+			{
+				throw new IOException(e);
+			}
+			
+			if (count > 0)
+			{
+				if (this.check != null)
+				{
+					this.check.update(this.outBuf, 0, count);
+					
+				}
+				
+				this.total += count;
+				this.outPos = 0;
+				this.outLen = count;
+				
+				return count;
+			}
+			
+			if (this.inf.finished())
+			{
+				this.inPos = this.inLen - this.inf.getRemaining();
+				this.readTrailer();
+				this.done = true;
+				
+				return -1;
+			}
+			
+			if (this.inf.needsDictionary())
+			{
+				throw new IOException("Preset dictionaries aren't supported");
+			}
+			
+			if (this.inf.needsInput())
+			{
+				this.inLen = this.in.read(this.inBuf, 0, this.inBuf.length);
+				
+				if (this.inLen <= 0)
+				{
+					throw new EOFException("Unexpected end of compressed data");
+				}
+				
+				this.inPos = 0;
+				this.inf.setInput(this.inBuf, 0, this.inLen);
+				
+			}
+			
+		}
+		
+	}
+	
+	private void readHeader() throws Throwable
+	{
+		if (this.format == EnumZipFormat.ZLIB)
+		{
+			int cmf = this.nextByte(), flg = this.nextByte();
+			
+			if ((cmf & 0x0F) != 8 || ((cmf << 8) | flg) % 31 != 0)
+			{
+				throw new IOException("Not zlib data");
+			}
+			
+			if ((flg & 0x20) != 0)
+			{
+				throw new IOException("Preset dictionaries aren't supported");
+			}
+			
+		}
+		else if (this.format == EnumZipFormat.GZIP)
+		{
+			if (this.nextByte() != 0x1F || this.nextByte() != 0x8B || this.nextByte() != 8)
+			{
+				throw new IOException("Not GZIP data");
+			}
+			
+			int flg = this.nextByte();
+			
+			//Modification time, extra flags, and OS.
+			for (int c = 0; c < 6; c++)
+			{
+				this.nextByte();
+				
+			}
+			
+			if ((flg & 0x04) != 0)
+			{
+				int xlen = this.nextByte() | (this.nextByte() << 8);
+				
+				for (int c = 0; c < xlen; c++)
+				{
+					this.nextByte();
+					
+				}
+				
+			}
+			
+			//File name, then comment; Both zero-terminated.
+			for (int bit = 0x08; bit <= 0x10; bit <<= 1)
+			{
+				if ((flg & bit) != 0)
+				{
+					while (this.nextByte() != 0);
+					
+				}
+				
+			}
+			
+			if ((flg & 0x02) != 0)
+			{
+				this.nextByte();
+				this.nextByte();
+				
+			}
+			
+		}
+		
+	}
+	
+	private void readTrailer() throws Throwable
+	{
+		if (this.format == EnumZipFormat.ZLIB)
+		{
+			long v = ((long)this.nextByte() << 24) | (this.nextByte() << 16) | (this.nextByte() << 8) | this.nextByte();
+			
+			if (v != this.check.getValue())
+			{
+				throw new IOException("Adler-32 mismatch");
+			}
+			
+		}
+		else if (this.format == EnumZipFormat.GZIP)
+		{
+			long crc = this.nextByte() | (this.nextByte() << 8) | (this.nextByte() << 16) | ((long)this.nextByte() << 24);
+			long size = this.nextByte() | (this.nextByte() << 8) | (this.nextByte() << 16) | ((long)this.nextByte() << 24);
+			
+			if (crc != this.check.getValue())
+			{
+				throw new IOException("CRC-32 mismatch");
+			}
+			
+			if (size != (this.total & 0xFFFFFFFFL))
+			{
+				throw new IOException("GZIP size mismatch");
+			}
+			
+		}
+		
+	}
+	
+	//Header and trailer bytes come out of the same buffer the inflater reads from.
+	private int nextByte() throws Throwable
+	{
+		if (this.inPos == this.inLen)
+		{
+			this.inLen = this.in.read(this.inBuf, 0, this.inBuf.length);
+			this.inPos = 0;
+			
+			if (this.inLen <= 0)
+			{
+				this.inLen = 0;
+				
+				throw new EOFException("Unexpected end of compressed data");
+			}
+			
+		}
+		
+		return this.inBuf[this.inPos++] & 0xFF;
+	}
+	
+}
@@ -0,0 +1,271 @@
+
+package com.elusivehawk.util.io;
+
+import java.util.Arrays;
+
+/**
+ * 
+ * Pure-Java compressor and decompressor for the LZ4 block format.
+ * <p>
+ * Trades compression ratio for speed: Matches are found with a single hash table lookup, and decompressing is little more
+ * than copying bytes around.
+ * <br>Blocks are compatible with other LZ4 implementations, but carry no framing of their own; See {@link LZ4Writer} and
+ * {@link LZ4Reader} for streams.
+ * <br>Malformed input never reads or writes outside the given ranges; It throws a {@link RuntimeException} instead.
+ * 
+ * @author Elusivehawk
+ */
+public final class LZ4Codec
+{
+	public static final int HASH_TABLE_SIZE = 1 << 12;
+	
+	private static final int MIN_MATCH = 4, LAST_LITERALS = 5, MF_LIMIT = 12, MAX_OFFSET = 0xFFFF;
+	
+	private LZ4Codec(){}
+	
+	public static int maxCompressedLength(int length)
+	{
+		return length + (length / 255) + 16;
+	}
+	
+	public static int compress(byte[] src, int off, int len, byte[] dest, int destOff)
+	{
+		return compress(src, off, len, dest, destOff, new int[HASH_TABLE_SIZE]);
+	}
+	
+	//The table's only scratch space, so callers compressing lots of blocks can hang onto one.
+	public static int compress(byte[] src, int off, int len, byte[] dest, int destOff, int[] table)
+	{
+		assert table.length == HASH_TABLE_SIZE;
+		
+		int end = off + len, matchLimit = end - MF_LIMIT, lastLiterals = end - LAST_LITERALS;
+		int ip = off, anchor = off, op = destOff;
+		
+		if (len >= MF_LIMIT + 1)
+		{
+			Arrays.fill(table, -1);
+			
+			table[hash(readInt(src, ip))] = ip;
+			ip++;
+			
+			while (ip < matchLimit)
+			{
+				int seq = readInt(src, ip);
+				int h = hash(seq);
+				int ref = table[h];
+				
+				table[h] = ip;
+				
+				if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq)
+				{
+					//Step further the longer we go without a match, so incompressible data doesn't slow things to a crawl.
+					ip += 1 + ((ip - anchor) >>> 6);
+					continue;
+				}
+				
+				while (ip > anchor && ref > off && src[ip - 1] == src[ref - 1])
+				{
+					ip--;
+					ref--;
+					
+				}
+				
+				int matchLen = MIN_MATCH;
+				
+				while (ip + matchLen < lastLiterals && src[ip + matchLen] == src[ref + matchLen])
+				{
+					matchLen++;
+					
+				}
+				
+				op = writeSequence(src, anchor, ip - anchor, dest, op, ip - ref, matchLen);
+				ip += matchLen;
+				anchor = ip;
+				
+				if (ip < matchLimit)
+				{
+					table[hash(readInt(src, ip - 2))] = ip - 2;
+					
+				}
+				
+			}
+			
+		}
+		
+		return writeSequence(src, anchor, end - anchor, dest, op, 0, 0) - destOff;
+	}
+	
+	//Returns the decompressed length, which can't be more than the given limit.
+	public static int decompress(byte[] src, int off, int len, byte[] dest, int destOff, int destLen)
+	{
+		int ip = off, end = off + len, op = destOff, destEnd = destOff + destLen;
+		
+		while (ip < end)
+		{
+			int token = src[ip++] & 0xFF;
+			int litLen = token >>> 4;
+			
+			if (litLen == 15)
+			{
+				int b;
+				
+				do
+				{
+					if (ip >= end)
+					{
+						throw malformed();
+					}
+					
+					b = src[ip++] & 0xFF;
+					litLen += b;
+					
+				}
+				while (b == 255);
+				
+			}
+			
+			if (litLen > end - ip || litLen > destEnd - op)
+			{
+				throw malformed();
+			}
+			
+			System.arraycopy(src, ip, dest, op, litLen);
+			ip += litLen;
+			op += litLen;
+			
+			if (ip == end)
+			{
+				break;
+			}
+			
+			if (end - ip < 2)
+			{
+				throw malformed();
+			}
+			
+			int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+			int matchLen = token & 0x0F;
+			
+			ip += 2;
+			
+			if (offset == 0 || offset > op - destOff)
+			{
+				throw malformed();
+			}
+			
+			if (matchLen == 15)
+			{
+				int b;
+				
+				do
+				{
+					if (ip >= end)
+					{
+						throw malformed();
+					}
+					
+					b = src[ip++] & 0xFF;
+					matchLen += b;
+					
+				}
+				while (b == 255);
+				
+			}
+			
+			matchLen += MIN_MATCH;
+			
+			if (matchLen > destEnd - op)
+			{
+				throw malformed();
+			}
+			
+			int ref = op - offset;
+			
+			if (offset >= matchLen)
+			{
+				System.arraycopy(dest, ref, dest, op, matchLen);
+				op += matchLen;
+				
+			}
+			else
+			{
+				//Overlapping match, which repeats the last few bytes; Has to go one at a time.
+				for (int c = 0; c < matchLen; c++)
+				{
+					dest[op++] = dest[ref + c];
+					
+				}
+				
+			}
+			
+		}
+		
+		return op - destOff;
+	}
+	
+	private static int writeSequence(byte[] src, int litOff, int litLen, byte[] dest, int destOff, int offset, int matchLen)
+	{
+		int op = destOff;
+		int token = op++;
+		int ml = matchLen - MIN_MATCH;
+		
+		dest[token] = (byte)((Math.min(litLen, 15) << 4) | (offset == 0 ? 0 : Math.min(ml, 15)));
+		
+		if (litLen >= 15)
+		{
+			op = writeLength(dest, op, litLen - 15);
+			
+		}
+		
+		System.arraycopy(src, litOff, dest, op, litLen);
+		op += litLen;
+		
+		if (offset == 0)
+		{
+			return op;
+		}
+		
+		dest[op++] = (byte)offset;
+		dest[op++] = (byte)(offset >>> 8);
+		
+		if (ml >= 15)
+		{
+			op = writeLength(dest, op, ml - 15);
+			
+		}
+		
+		return op;
+	}
+	
+	private static int writeLength(byte[] dest, int destOff, int length)
+	{
+		int op = destOff, left = length;
+		
+		while (left >= 255)
+		{
+			dest[op++] = (byte)255;
+			left -= 255;
+			
+		}
+		
+		dest[op++] = (byte)left;
+		
+		return op;
+	}
+	
+	private static int readInt(byte[] b, int i)
+	{
+		return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24);
+	}
+	
+	private static int hash(int seq)
+	{
+		return (seq * -1640531535) >>> 20;
+	}
+	
+	private static RuntimeException malformed()
+	{
+		return new RuntimeException("Malformed LZ4 block");
+	}
+	
+}
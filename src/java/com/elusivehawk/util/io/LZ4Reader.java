@@ -0,0 +1,215 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * 
+ * Decompresses streams written by {@link LZ4Writer}.
+ * <p>
+ * {@link #remaining()} is how much of the current block is left, and only hits zero at the end of the stream; Reading past that
+ * throws an {@link EOFException}, as does a stream that ends without its end marker.
+ * <br>{@link #close()} closes the source, if it can be.
+ * 
+ * @author Elusivehawk
+ */
+public class LZ4Reader implements IByteReader, Closeable
+{
+	public static final int MAX_BLOCK_SIZE = 1 << 30;
+	
+	protected final IByteReader in;
+	private final byte[] header = new byte[8];
+	private byte[] block = new byte[0], comp = new byte[0];
+	private int pos = 0, limit = 0;
+	private boolean done = false;
+	
+	@SuppressWarnings("unqualified-field-access")
+	public LZ4Reader(IByteReader r)
+	{
+		assert r != null;
+		
+		in = r;
+		
+	}
+	
+	@Override
+	public int remaining()
+	{
+		try
+		{
+			if (this.pos == this.limit)
+			{
+				this.fill();
+				
+			}
+			
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+		return this.limit - this.pos;
+	}
+	
+	public boolean isEOF() throws Throwable
+	{
+		return this.pos == this.limit && this.fill() == -1;
+	}
+	
+	@Override
+	public byte read() throws Throwable
+	{
+		if (this.pos == this.limit && this.fill() == -1)
+		{
+			throw new EOFException();
+		}
+		
+		return this.block[this.pos++];
+	}
+	
+	@Override
+	public byte[] read(int count) throws Throwable
+	{
+		byte[] ret = new byte[count];
+		
+		IOHelper.readFully(this, ret, 0, count);
+		
+		return ret;
+	}
+	
+	//Reads as much as it can, up to the requested length; Only stops early at the end of the stream.
+	@Override
+	public int read(byte[] dest, int off, int len) throws Throwable
+	{
+		int copied = 0;
+		
+		while (copied < len)
+		{
+			if (this.pos == this.limit && this.fill() == -1)
+			{
+				return copied == 0 ? -1 : copied;
+			}
+			
+			int count = Math.min(len - copied, this.limit - this.pos);
+			
+			System.arraycopy(this.block, this.pos, dest, off + copied, count);
+			this.pos += count;
+			copied += count;
+			
+		}
+		
+		return copied;
+	}
+	
+	@Override
+	public byte[] readAll() throws Throwable
+	{
+		PooledByteArray acc = new PooledByteArray();
+		
+		try
+		{
+			while (this.pos < this.limit || this.fill() != -1)
+			{
+				acc.write(this.block, this.pos, this.limit - this.pos);
+				this.pos = this.limit;
+				
+			}
+			
+			return acc.toByteArray();
+		}
+		finally
+		{
+			acc.release();
+			
+		}
+		
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if (this.in instanceof Closeable)
+		{
+			((Closeable)this.in).close();
+			
+		}
+		
+	}
+	
+	protected int fill() throws Throwable
+	{
+		if (this.done)
+		{
+			return -1;
+		}
+		
+		IOHelper.readFully(this.in, this.header, 0, 4);
+		
+		int rawLen = getInt(this.header, 0);
+		
+		if (rawLen == 0)
+		{
+			this.done = true;
+			
+			return -1;
+		}
+		
+		IOHelper.readFully(this.in, this.header, 4, 4);
+		
+		int stored = getInt(this.header, 4);
+		boolean raw = (stored & 0x80000000) != 0;
+		
+		stored &= 0x7FFFFFFF;
+		
+		if (rawLen < 0 || rawLen > MAX_BLOCK_SIZE || stored > LZ4Codec.maxCompressedLength(rawLen) || (raw && stored != rawLen))
+		{
+			throw new IOException("Corrupt LZ4 block header");
+		}
+		
+		if (this.block.length < rawLen)
+		{
+			this.block = new byte[rawLen];
+			
+		}
+		
+		if (raw)
+		{
+			IOHelper.readFully(this.in, this.block, 0, rawLen);
+			
+		}
+		else
+		{
+			if (this.comp.length < stored)
+			{
+				this.comp = new byte[stored];
+				
+			}
+			
+			IOHelper.readFully(this.in, this.comp, 0, stored);
+			
+			if (LZ4Codec.decompress(this.comp, 0, stored, this.block, 0, rawLen) != rawLen)
+			{
+				throw new IOException("Corrupt LZ4 block");
+			}
+			
+		}
+		
+		this.pos = 0;
+		this.limit = rawLen;
+		
+		return rawLen;
+	}
+	
+	private static int getInt(byte[] b, int i)
+	{
+		return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24);
+	}
+	
+}
@@ -0,0 +1,198 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 
+ * Compresses everything written to it into {@link LZ4Codec} blocks, for when speed matters more than size.
+ * <p>
+ * Each block is written as its uncompressed length and its stored length (both little-endian ints), followed by the block
+ * itself. Blocks that don't shrink are stored as-is, which is marked by the high bit of the stored length. A zero length
+ * marks the end of the stream.
+ * <br>{@link #flush()} ends the current block early, so everything written so far can be read on the other end.
+ * <br>{@link #finish()} writes the end marker; {@link #close()} does the same, then closes the downstream writer if it can be.
+ * 
+ * @author Elusivehawk
+ */
+public class LZ4Writer implements IByteWriter, Closeable
+{
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+	
+	protected final IByteWriter out;
+	private final byte[] block, comp;
+	private final int[] table = new int[LZ4Codec.HASH_TABLE_SIZE];
+	private int len = 0;
+	private boolean closed = false;
+	
+	public LZ4Writer(IByteWriter w)
+	{
+		this(w, DEFAULT_BLOCK_SIZE);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public LZ4Writer(IByteWriter w, int blockSize)
+	{
+		assert w != null;
+		assert blockSize > 0 && blockSize <= (1 << 30);
+		
+		out = w;
+		block = new byte[blockSize];
+		comp = new byte[LZ4Codec.maxCompressedLength(blockSize) + 8];
+		
+	}
+	
+	@Override
+	public int write(byte... bytes)
+	{
+		return this.write(bytes, 0, bytes.length);
+	}
+	
+	@Override
+	public int write(byte[] bytes, int off, int length)
+	{
+		if (this.closed)
+		{
+			throw new IllegalStateException("Stream is closed");
+		}
+		
+		int copied = 0;
+		
+		while (copied < length)
+		{
+			int count = Math.min(length - copied, this.block.length - this.len);
+			
+			System.arraycopy(bytes, off + copied, this.block, this.len, count);
+			this.len += count;
+			copied += count;
+			
+			if (this.len == this.block.length)
+			{
+				this.writeBlock();
+				
+			}
+			
+		}
+		
+		return length;
+	}
+	
+	@Override
+	public int write(ByteBuffer bb, int count)
+	{
+		if (this.closed)
+		{
+			throw new IllegalStateException("Stream is closed");
+		}
+		
+		int length = Math.min(bb.remaining(), count), left = length;
+		
+		while (left > 0)
+		{
+			int step = Math.min(left, this.block.length - this.len);
+			
+			bb.get(this.block, this.len, step);
+			this.len += step;
+			left -= step;
+			
+			if (this.len == this.block.length)
+			{
+				this.writeBlock();
+				
+			}
+			
+		}
+		
+		return length;
+	}
+	
+	@Override
+	public void flush()
+	{
+		if (this.closed)
+		{
+			return;
+		}
+		
+		this.writeBlock();
+		this.out.flush();
+		
+	}
+	
+	//Writes out the last block and the end marker; Nothing more can be written after this.
+	public void finish()
+	{
+		if (this.closed)
+		{
+			return;
+		}
+		
+		this.writeBlock();
+		this.out.write((byte)0, (byte)0, (byte)0, (byte)0);
+		this.closed = true;
+		
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			this.finish();
+			this.out.flush();
+			
+		}
+		finally
+		{
+			if (this.out instanceof Closeable)
+			{
+				((Closeable)this.out).close();
+				
+			}
+			
+		}
+		
+	}
+	
+	private void writeBlock()
+	{
+		if (this.len == 0)
+		{
+			return;
+		}
+		
+		int size = LZ4Codec.compress(this.block, 0, this.len, this.comp, 8, this.table);
+		
+		putInt(this.comp, 0, this.len);
+		
+		if (size < this.len)
+		{
+			putInt(this.comp, 4, size);
+			this.out.write(ByteBuffer.wrap(this.comp, 0, size + 8));
+			
+		}
+		else
+		{
+			putInt(this.comp, 4, this.len | 0x80000000);
+			this.out.write(ByteBuffer.wrap(this.comp, 0, 8));
+			this.out.write(ByteBuffer.wrap(this.block, 0, this.len));
+			
+		}
+		
+		this.len = 0;
+		
+	}
+	
+	private static void putInt(byte[] b, int i, int value)
+	{
+		b[i] = (byte)value;
+		b[i + 1] = (byte)(value >>> 8);
+		b[i + 2] = (byte)(value >>> 16);
+		b[i + 3] = (byte)(value >>> 24);
+		
+	}
+	
+}
@@ -0,0 +1,179 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 
+ * Memory-mapped file with random access at any (long) offset.
+ * <p>
+ * Large files are mapped as a series of windows, each one its own {@link MappedByteBuffer}; Reads come straight out of the page cache.
+ * <br>Read-write files are grown to the requested size up front. The write cursor starts at the end of the original contents,
+ * so reading walks through whatever was already there.
+ * <br>Call {@link #force()} to make sure changes have hit the disk. The JVM unmaps windows once they're collected, not when this is closed.
+ * 
+ * @author Elusivehawk
+ */
+public class MappedFile extends SegmentedBuffer
+{
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+	
+	protected final FileChannel channel;
+	protected final MapMode mode;
+	
+	public MappedFile(File file) throws IOException
+	{
+		this(FileChannel.open(file.toPath(), StandardOpenOption.READ), MapMode.READ_ONLY, -1, DEFAULT_WINDOW_SIZE);
+		
+	}
+	
+	public MappedFile(File file, long size) throws IOException
+	{
+		this(file, size, DEFAULT_WINDOW_SIZE);
+		
+	}
+	
+	public MappedFile(File file, long size, int windowSize) throws IOException
+	{
+		this(FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE), MapMode.READ_WRITE, size, windowSize);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	protected MappedFile(FileChannel ch, MapMode m, long size, int windowSize) throws IOException
+	{
+		super(checkSize(ch, size, windowSize), windowSize);
+		
+		channel = ch;
+		mode = m;
+		
+		try
+		{
+			writePos = ch.size();
+			
+			initSegments();
+			
+		}
+		catch (UncheckedIOException e)
+		{
+			ch.close();
+			
+			throw e.getCause();
+		}
+		catch (IOException | RuntimeException | Error e)
+		{
+			ch.close();
+			
+			throw e;
+		}
+		
+	}
+	
+	//Runs before the superclass gets a chance to throw, so the channel isn't leaked if the size won't work.
+	private static long checkSize(FileChannel ch, long size, int windowSize) throws IOException
+	{
+		try
+		{
+			long ret = Math.max(size, ch.size());
+			
+			if (windowSize <= 0 || Integer.bitCount(windowSize) != 1)
+			{
+				throw new IllegalArgumentException(String.format("Window size must be a power of two: %s", Integer.toString(windowSize)));
+			}
+			
+			if ((ret + windowSize - 1) / windowSize > Integer.MAX_VALUE)
+			{
+				throw new IllegalArgumentException(String.format("Too many windows needed for %s bytes", Long.toString(ret)));
+			}
+			
+			return ret;
+		}
+		catch (IOException | RuntimeException | Error e)
+		{
+			ch.close();
+			
+			throw e;
+		}
+		
+	}
+	
+	public boolean isReadOnly()
+	{
+		return this.mode == MapMode.READ_ONLY;
+	}
+	
+	public void force()
+	{
+		if (this.isReadOnly())
+		{
+			return;
+		}
+		
+		for (ByteBuffer seg : this.segments)
+		{
+			if (seg != null)
+			{
+				((MappedByteBuffer)seg).force();
+				
+			}
+			
+		}
+		
+	}
+	
+	@Override
+	public void close()
+	{
+		if (!this.isOpen())
+		{
+			return;
+		}
+		
+		try
+		{
+			this.force();
+			
+		}
+		finally
+		{
+			super.close();
+			
+			try
+			{
+				this.channel.close();
+				
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			
+		}
+		
+	}
+	
+	@Override
+	protected ByteBuffer createSegment(int index, int length)
+	{
+		try
+		{
+			return this.channel.map(this.mode, (long)index << this.shift, length);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+	}
+	
+	@Override
+	protected void releaseSegment(ByteBuffer seg){}
+	
+}
@@ -0,0 +1,69 @@
+
+package com.elusivehawk.util.io;
+
+import java.nio.ByteBuffer;
+import com.elusivehawk.util.storage.BufferHelper;
+import com.elusivehawk.util.storage.DirectBufferPool;
+
+/**
+ * 
+ * Off-heap storage of (nearly) any size, built from direct buffer segments.
+ * <p>
+ * Segments come from a {@link DirectBufferPool} when one's given (by default, whichever {@link BufferHelper} is using), and
+ * {@link #close()} hands them straight back. Segments that aren't pooled are freed on the spot, so releasing a large
+ * dataset never waits on the GC.
+ * 
+ * @author Elusivehawk
+ */
+public class OffHeapBuffer extends SegmentedBuffer
+{
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+	
+	protected final DirectBufferPool pool;
+	
+	public OffHeapBuffer(long length)
+	{
+		this(length, DEFAULT_SEGMENT_SIZE);
+		
+	}
+	
+	public OffHeapBuffer(long length, int segmentSize)
+	{
+		this(length, segmentSize, BufferHelper.getPool());
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public OffHeapBuffer(long length, int segmentSize, DirectBufferPool p)
+	{
+		super(length, segmentSize);
+		
+		pool = p;
+		
+		initSegments();
+		
+	}
+	
+	@Override
+	protected ByteBuffer createSegment(int index, int length)
+	{
+		return this.pool == null ? ByteBuffer.allocateDirect(length) : this.pool.take(length);
+	}
+	
+	@Override
+	protected void releaseSegment(ByteBuffer seg)
+	{
+		if (this.pool == null)
+		{
+			BufferHelper.free(seg);
+			
+		}
+		else
+		{
+			this.pool.release(seg);
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,365 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 
+ * Auto-expanding byte buffer with separate read and write cursors.
+ * <p>
+ * Storage is a list of chunks taken from a {@link ByteChunkPool}, so growing never copies what's already been written.
+ * <br>Call {@link #release()} (or {@link #close()}) once you're done to hand the chunks back to the pool.
+ * 
+ * @author Elusivehawk
+ */
+public class PooledByteArray implements IByteReader, IByteWriter, Closeable
+{
+	protected final ByteChunkPool pool;
+	protected final List<byte[]> chunks = new ArrayList<byte[]>();
+	protected final int shift, mask;
+	protected int readPos = 0, writePos = 0;
+	
+	public PooledByteArray()
+	{
+		this(ByteChunkPool.DEFAULT);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public PooledByteArray(ByteChunkPool p)
+	{
+		assert p != null;
+		
+		pool = p;
+		shift = Integer.numberOfTrailingZeros(p.getChunkSize());
+		mask = p.getChunkSize() - 1;
+		
+	}
+	
+	@Override
+	public int remaining()
+	{
+		return this.writePos - this.readPos;
+	}
+	
+	@Override
+	public byte read()
+	{
+		if (this.readPos == this.writePos)
+		{
+			throw new BufferUnderflowException();
+		}
+		
+		byte ret = this.chunks.get(this.readPos >>> this.shift)[this.readPos & this.mask];
+		
+		this.readPos++;
+		
+		return ret;
+	}
+	
+	@Override
+	public byte[] read(int count)
+	{
+		if (count > this.remaining())
+		{
+			throw new BufferUnderflowException();
+		}
+		
+		byte[] ret = new byte[count];
+		
+		this.read(ret, 0, count);
+		
+		return ret;
+	}
+	
+	@Override
+	public int read(byte[] dest, int off, int len)
+	{
+		int count = Math.min(len, this.remaining());
+		
+		if (count <= 0)
+		{
+			return len == 0 ? 0 : -1;
+		}
+		
+		this.get(this.readPos, dest, off, count);
+		
+		this.readPos += count;
+		
+		return count;
+	}
+	
+	public byte get(int index)
+	{
+		if (index < 0 || index >= this.writePos)
+		{
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+		
+		return this.chunks.get(index >>> this.shift)[index & this.mask];
+	}
+	
+	public void get(int index, byte[] dest, int off, int len)
+	{
+		if (index < 0 || index + len > this.writePos)
+		{
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+		
+		int pos = index, copied = 0;
+		
+		while (copied < len)
+		{
+			int inChunk = pos & this.mask;
+			int count = Math.min(len - copied, this.mask + 1 - inChunk);
+			
+			System.arraycopy(this.chunks.get(pos >>> this.shift), inChunk, dest, off + copied, count);
+			
+			pos += count;
+			copied += count;
+			
+		}
+		
+	}
+	
+	@Override
+	public int write(byte... bytes)
+	{
+		return this.write(bytes, 0, bytes.length);
+	}
+	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		this.ensureCapacity(this.writePos + len);
+		
+		int copied = 0;
+		
+		while (copied < len)
+		{
+			int inChunk = this.writePos & this.mask;
+			int count = Math.min(len - copied, this.mask + 1 - inChunk);
+			
+			System.arraycopy(bytes, off + copied, this.chunks.get(this.writePos >>> this.shift), inChunk, count);
+			
+			this.writePos += count;
+			copied += count;
+			
+		}
+		
+		return len;
+	}
+	
+	@Override
+	public int write(ByteBuffer bb, int count)
+	{
+		int len = Math.min(bb.remaining(), count);
+		
+		this.ensureCapacity(this.writePos + len);
+		
+		int copied = 0;
+		
+		while (copied < len)
+		{
+			int inChunk = this.writePos & this.mask;
+			int step = Math.min(len - copied, this.mask + 1 - inChunk);
+			
+			bb.get(this.chunks.get(this.writePos >>> this.shift), inChunk, step);
+			
+			this.writePos += step;
+			copied += step;
+			
+		}
+		
+		return len;
+	}
+	
+	@Override
+	public int write(IByteReader r, int count)
+	{
+		if (r instanceof PooledByteArray)
+		{
+			PooledByteArray other = (PooledByteArray)r;
+			int len = Math.min(other.remaining(), count);
+			
+			this.ensureCapacity(this.writePos + len);
+			
+			int copied = 0;
+			
+			while (copied < len)
+			{
+				int inChunk = this.writePos & this.mask;
+				int step = Math.min(len - copied, this.mask + 1 - inChunk);
+				
+				other.read(this.chunks.get(this.writePos >>> this.shift), inChunk, step);
+				
+				this.writePos += step;
+				copied += step;
+				
+			}
+			
+			return len;
+		}
+		
+		return IByteWriter.super.write(r, count);
+	}
+	
+	//Copies everything that hasn't been read yet into the writer, without moving the read cursor.
+	public int writeTo(IByteWriter w)
+	{
+		int pos = this.readPos, written = 0;
+		
+		while (pos < this.writePos)
+		{
+			int inChunk = pos & this.mask;
+			int count = Math.min(this.writePos - pos, this.mask + 1 - inChunk);
+			
+			written += w.write(ByteBuffer.wrap(this.chunks.get(pos >>> this.shift), inChunk, count));
+			
+			pos += count;
+			
+		}
+		
+		return written;
+	}
+	
+	public byte[] toByteArray()
+	{
+		byte[] ret = new byte[this.remaining()];
+		
+		this.get(this.readPos, ret, 0, ret.length);
+		
+		return ret;
+	}
+	
+	public int capacity()
+	{
+		return this.chunks.size() << this.shift;
+	}
+	
+	public void ensureCapacity(int size)
+	{
+		if (size < 0)
+		{
+			throw new OutOfMemoryError("Buffer size overflow");
+		}
+		
+		while (this.capacity() < size)
+		{
+			this.chunks.add(this.pool.take());
+			
+		}
+		
+	}
+	
+	public int readPosition()
+	{
+		return this.readPos;
+	}
+	
+	public void readPosition(int pos)
+	{
+		if (pos < 0 || pos > this.writePos)
+		{
+			throw new IndexOutOfBoundsException(Integer.toString(pos));
+		}
+		
+		this.readPos = pos;
+		
+	}
+	
+	public int writePosition()
+	{
+		return this.writePos;
+	}
+	
+	//Moving forward zeroes the gap, since recycled chunks still hold whatever was written to them last.
+	public void writePosition(int pos)
+	{
+		if (pos < this.readPos)
+		{
+			throw new IndexOutOfBoundsException(Integer.toString(pos));
+		}
+		
+		this.ensureCapacity(pos);
+		
+		while (this.writePos < pos)
+		{
+			int inChunk = this.writePos & this.mask;
+			int count = Math.min(pos - this.writePos, this.mask + 1 - inChunk);
+			
+			Arrays.fill(this.chunks.get(this.writePos >>> this.shift), inChunk, inChunk + count, (byte)0);
+			
+			this.writePos += count;
+			
+		}
+		
+		this.writePos = pos;
+		
+	}
+	
+	public void skip(int count)
+	{
+		this.readPosition(this.readPos + count);
+		
+	}
+	
+	//Recycles every chunk that's been completely read, then shifts both cursors back accordingly.
+	public void discardRead()
+	{
+		int done = this.readPos >>> this.shift;
+		
+		if (done == 0)
+		{
+			return;
+		}
+		
+		for (int c = 0; c < done; c++)
+		{
+			this.pool.recycle(this.chunks.get(c));
+			
+		}
+		
+		this.chunks.subList(0, done).clear();
+		
+		int offset = done << this.shift;
+		
+		this.readPos -= offset;
+		this.writePos -= offset;
+		
+	}
+	
+	//Resets both cursors, but keeps the chunks around for reuse.
+	public void clear()
+	{
+		this.readPos = 0;
+		this.writePos = 0;
+		
+	}
+	
+	public void release()
+	{
+		for (byte[] chunk : this.chunks)
+		{
+			this.pool.recycle(chunk);
+			
+		}
+		
+		this.chunks.clear();
+		this.clear();
+		
+	}
+	
+	@Override
+	public void close()
+	{
+		this.release();
+		
+	}
+	
+}
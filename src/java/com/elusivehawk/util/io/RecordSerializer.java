@@ -0,0 +1,708 @@
+
+package com.elusivehawk.util.io;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * Tagged, self-describing counterpart to {@link StructSerializer}.
+ * <p>
+ * Every value is written behind a tag holding its {@link SerialField} ID and wire type, and records end with a zero tag.
+ * <br>Decoding skips tags it doesn't recognize, and leaves fields that weren't sent alone, so data written by an older or newer
+ * version of a class can still be read: Adding fields, removing fields, and marking fields optional are all safe; Changing a
+ * field's ID or wire type is not.
+ * <br>Fields have to be present in every record unless they're {@link SerialField#optional() optional}; Null values are left
+ * out entirely.
+ * <br>Integers are written as (zigzag) varints, floats and doubles as fixed-width little-endian values, and everything else
+ * is length-delimited, with nested classes written as records themselves.
+ * <br>Enums are written by name, so constants can be added or reordered freely; Renaming one is like removing it.
+ * <br>Like {@link StructSerializer}, the fields are walked once per class, after which everything goes through {@link MethodHandle}s.
+ * 
+ * @author Elusivehawk
+ */
+public final class RecordSerializer<T> implements Serializer<T>
+{
+	public static final int VARINT = 0, FIXED64 = 1, LENGTH_DELIMITED = 2, FIXED32 = 5;
+	
+	private static final ClassValue<RecordSerializer<?>> CACHE = new ClassValue<RecordSerializer<?>>()
+	{
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		@Override
+		protected RecordSerializer<?> computeValue(Class<?> type)
+		{
+			return new RecordSerializer(type);
+		}
+		
+	};
+	
+	private final Class<T> type;
+	private final MethodHandle ctor;
+	private final TagCodec[] fields;
+	private final int[] ids;
+	private final int required;
+	
+	@SuppressWarnings("unqualified-field-access")
+	private RecordSerializer(Class<T> clazz)
+	{
+		type = clazz;
+		
+		List<Field> found = StructSerializer.serialFields(clazz);
+		
+		if (found.isEmpty())
+		{
+			throw new IllegalArgumentException(String.format("%s has no @SerialField fields", clazz.getName()));
+		}
+		
+		ctor = StructSerializer.constructor(clazz);
+		fields = new TagCodec[found.size()];
+		ids = new int[fields.length];
+		
+		int req = 0;
+		
+		for (int c = 0; c < fields.length; c++)
+		{
+			Field f = found.get(c);
+			int id = f.getAnnotation(SerialField.class).value();
+			
+			if (id <= 0 || id > (Integer.MAX_VALUE >>> 3))
+			{
+				throw new IllegalArgumentException(String.format("Invalid record field ID for %s: %s", f, id));
+			}
+			
+			fields[c] = TagCodec.create(f);
+			ids[c] = id;
+			
+			if (!fields[c].optional)
+			{
+				req++;
+				
+			}
+			
+		}
+		
+		required = req;
+		
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <T> RecordSerializer<T> of(Class<T> type)
+	{
+		return (RecordSerializer<T>)CACHE.get(type);
+	}
+	
+	public Class<T> getType()
+	{
+		return this.type;
+	}
+	
+	@Override
+	public int toBytes(T obj, IByteWriter w)
+	{
+		int ret = 0;
+		
+		try
+		{
+			for (TagCodec f : this.fields)
+			{
+				ret += f.write(obj, w);
+				
+			}
+			
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+		return ret + writeVarint(w, 0L);
+	}
+	
+	@Override
+	public T fromBytes(IByteReader r)
+	{
+		try
+		{
+			Object ret = this.ctor.invokeExact();
+			long[] seen = this.required == 0 ? null : new long[(this.fields.length + 63) >>> 6];
+			int found = 0, next = 0;
+			long tag;
+			
+			while ((tag = readVarint(r)) != 0L)
+			{
+				int id = (int)(tag >>> 3), wire = (int)tag & 7;
+				//Fields almost always show up in order, so check the next one before searching.
+				int i = next < this.ids.length && this.ids[next] == id ? next : Arrays.binarySearch(this.ids, id);
+				
+				if (i < 0 || !this.fields[i].accepts(wire))
+				{
+					skip(r, wire);
+					continue;
+				}
+				
+				TagCodec f = this.fields[i];
+				
+				f.read(ret, r, wire);
+				next = i + 1;
+				
+				if (seen != null && !f.optional && (seen[i >>> 6] & (1L << i)) == 0L)
+				{
+					seen[i >>> 6] |= 1L << i;
+					found++;
+					
+				}
+				
+			}
+			
+			if (found < this.required)
+			{
+				for (int c = 0; c < this.fields.length; c++)
+				{
+					if (!this.fields[c].optional && (seen[c >>> 6] & (1L << c)) == 0L)
+					{
+						throw new RuntimeException(String.format("Record for %s is missing required field %s", this.type.getName(), this.fields[c].name));
+					}
+					
+				}
+				
+			}
+			
+			return this.type.cast(ret);
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+	}
+	
+	public static int writeVarint(IByteWriter w, long value)
+	{
+		byte[] b = new byte[(63 - Long.numberOfLeadingZeros(value | 1L)) / 7 + 1];
+		long v = value;
+		
+		for (int c = 0; c < b.length - 1; c++)
+		{
+			b[c] = (byte)(v | 0x80L);
+			v >>>= 7;
+			
+		}
+		
+		b[b.length - 1] = (byte)v;
+		
+		return w.write(b);
+	}
+	
+	public static long readVarint(IByteReader r) throws Throwable
+	{
+		long ret = 0L;
+		
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = r.read();
+			
+			ret |= (b & 0x7FL) << shift;
+			
+			if (b >= 0)
+			{
+				return ret;
+			}
+			
+		}
+		
+		throw new RuntimeException("Malformed varint");
+	}
+	
+	//Skips over the value of an unknown tag.
+	public static void skip(IByteReader r, int wire) throws Throwable
+	{
+		switch (wire)
+		{
+			case VARINT: readVarint(r); break;
+			case FIXED64: skipBytes(r, 8); break;
+			case FIXED32: skipBytes(r, 4); break;
+			case LENGTH_DELIMITED: skipBytes(r, readVarint(r)); break;
+			default: throw new RuntimeException(String.format("Unknown wire type: %s", wire));
+		}
+		
+	}
+	
+	static void skipBytes(IByteReader r, long count) throws Throwable
+	{
+		if (r instanceof PooledByteArray)
+		{
+			((PooledByteArray)r).skip((int)count);
+			
+		}
+		else if (r instanceof Bounded)
+		{
+			((Bounded)r).skip((int)count);
+			
+		}
+		else
+		{
+			for (long c = 0; c < count; c++)
+			{
+				r.read();
+				
+			}
+			
+		}
+		
+	}
+	
+	static abstract class TagCodec
+	{
+		final MethodHandle get, set;
+		final String name;
+		final int wire;
+		final long tag;
+		final boolean optional;
+		
+		@SuppressWarnings("unqualified-field-access")
+		TagCodec(Field f, Class<?> as, int wireType) throws IllegalAccessException
+		{
+			f.setAccessible(true);
+			
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			SerialField info = f.getAnnotation(SerialField.class);
+			
+			//Explicit casts, so every integral type can share one long-typed codec.
+			get = MethodHandles.explicitCastArguments(lookup.unreflectGetter(f), MethodType.methodType(as, Object.class));
+			set = MethodHandles.explicitCastArguments(lookup.unreflectSetter(f), MethodType.methodType(void.class, Object.class, as));
+			name = f.getDeclaringClass().getSimpleName() + "." + f.getName();
+			wire = wireType;
+			tag = ((long)info.value() << 3) | wireType;
+			optional = info.optional();
+			
+		}
+		
+		abstract int write(Object obj, IByteWriter w) throws Throwable;
+		
+		abstract void read(Object obj, IByteReader r) throws Throwable;
+		
+		//Codecs that can still read what older versions wrote under another wire type override these two.
+		boolean accepts(int wireType)
+		{
+			return wireType == this.wire;
+		}
+		
+		void read(Object obj, IByteReader r, int wireType) throws Throwable
+		{
+			this.read(obj, r);
+			
+		}
+		
+		int writeTag(IByteWriter w)
+		{
+			return writeVarint(w, this.tag);
+		}
+		
+		//Returns whether or not a value should be written at all.
+		boolean present(Object value)
+		{
+			if (value != null)
+			{
+				return true;
+			}
+			
+			if (!this.optional)
+			{
+				throw new RuntimeException(String.format("Required field %s is null", this.name));
+			}
+			
+			return false;
+		}
+		
+		static TagCodec create(Field f)
+		{
+			Class<?> t = f.getType();
+			
+			try
+			{
+				if (t == byte.class || t == short.class || t == int.class || t == long.class)
+				{
+					return new VarintCodec(f, true);
+				}
+				
+				if (t == boolean.class || t == char.class)
+				{
+					return new VarintCodec(f, false);
+				}
+				
+				if (t == float.class)
+				{
+					return new TagCodec(f, float.class, FIXED32)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							int ret = this.writeTag(w);
+							
+							w.writeFloat((float)this.get.invokeExact(obj));
+							
+							return ret + 4;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.readFloat());
+							
+						}
+						
+					};
+				}
+				
+				if (t == double.class)
+				{
+					return new TagCodec(f, double.class, FIXED64)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							int ret = this.writeTag(w);
+							
+							w.writeDouble((double)this.get.invokeExact(obj));
+							
+							return ret + 8;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.readDouble());
+							
+						}
+						
+					};
+				}
+				
+				if (t.isEnum())
+				{
+					return new EnumCodec(f);
+				}
+				
+				if (t == String.class)
+				{
+					return new StringCodec(f);
+				}
+				
+				return new NestedCodec(f);
+			}
+			catch (IllegalAccessException e)
+			{
+				throw new IllegalArgumentException(String.format("Cannot access field %s", f), e);
+			}
+			
+		}
+		
+	}
+	
+	static class VarintCodec extends TagCodec
+	{
+		final boolean zigzag;
+		
+		@SuppressWarnings("unqualified-field-access")
+		VarintCodec(Field f, boolean signed) throws IllegalAccessException
+		{
+			super(f, long.class, VARINT);
+			
+			zigzag = signed;
+			
+		}
+		
+		@Override
+		int write(Object obj, IByteWriter w) throws Throwable
+		{
+			long v = (long)this.get.invokeExact(obj);
+			
+			if (this.zigzag)
+			{
+				v = (v << 1) ^ (v >> 63);
+				
+			}
+			
+			return this.writeTag(w) + writeVarint(w, v);
+		}
+		
+		@Override
+		void read(Object obj, IByteReader r) throws Throwable
+		{
+			long v = readVarint(r);
+			
+			if (this.zigzag)
+			{
+				v = (v >>> 1) ^ -(v & 1L);
+				
+			}
+			
+			this.set.invokeExact(obj, v);
+			
+		}
+		
+	}
+	
+	//Written as UTF-8 names; Ordinals written by older versions are still read.
+	static class EnumCodec extends TagCodec
+	{
+		final Object[] values;
+		final Map<String, Object> names = new HashMap<String, Object>();
+		
+		@SuppressWarnings("unqualified-field-access")
+		EnumCodec(Field f) throws IllegalAccessException
+		{
+			super(f, Object.class, LENGTH_DELIMITED);
+			
+			values = f.getType().getEnumConstants();
+			
+			for (Object e : values)
+			{
+				names.put(((Enum<?>)e).name(), e);
+				
+			}
+			
+		}
+		
+		@Override
+		int write(Object obj, IByteWriter w) throws Throwable
+		{
+			Object v = this.get.invokeExact(obj);
+			
+			if (!this.present(v))
+			{
+				return 0;
+			}
+			
+			byte[] b = ((Enum<?>)v).name().getBytes(StandardCharsets.UTF_8);
+			
+			return this.writeTag(w) + writeVarint(w, b.length) + w.write(b);
+		}
+		
+		@Override
+		boolean accepts(int wireType)
+		{
+			return wireType == LENGTH_DELIMITED || wireType == VARINT;
+		}
+		
+		@Override
+		void read(Object obj, IByteReader r, int wireType) throws Throwable
+		{
+			Object v;
+			
+			if (wireType == VARINT)
+			{
+				long ord = readVarint(r);
+				
+				v = ord < this.values.length ? this.values[(int)ord] : null;
+				
+			}
+			else
+			{
+				v = this.names.get(new String(r.read((int)readVarint(r)), StandardCharsets.UTF_8));
+				
+			}
+			
+			//Constants this version doesn't know about are left unset.
+			if (v != null)
+			{
+				this.set.invokeExact(obj, v);
+				
+			}
+			
+		}
+		
+		@Override
+		void read(Object obj, IByteReader r) throws Throwable
+		{
+			this.read(obj, r, LENGTH_DELIMITED);
+			
+		}
+		
+	}
+	
+	static class StringCodec extends TagCodec
+	{
+		StringCodec(Field f) throws IllegalAccessException
+		{
+			super(f, Object.class, LENGTH_DELIMITED);
+			
+		}
+		
+		@Override
+		int write(Object obj, IByteWriter w) throws Throwable
+		{
+			Object v = this.get.invokeExact(obj);
+			
+			if (!this.present(v))
+			{
+				return 0;
+			}
+			
+			byte[] b = ((String)v).getBytes(StandardCharsets.UTF_8);
+			
+			return this.writeTag(w) + writeVarint(w, b.length) + w.write(b);
+		}
+		
+		@Override
+		void read(Object obj, IByteReader r) throws Throwable
+		{
+			this.set.invokeExact(obj, (Object)new String(r.read((int)readVarint(r)), StandardCharsets.UTF_8));
+			
+		}
+		
+	}
+	
+	//Anything else is serialized into a scratch buffer first, so its length can go in front of it.
+	static class NestedCodec extends TagCodec
+	{
+		final Class<?> type;
+		private volatile Serializer<Object> ser = null;
+		
+		@SuppressWarnings("unqualified-field-access")
+		NestedCodec(Field f) throws IllegalAccessException
+		{
+			super(f, Object.class, LENGTH_DELIMITED);
+			
+			type = f.getType();
+			
+		}
+		
+		Serializer<Object> serializer()
+		{
+			Serializer<Object> ret = this.ser;
+			
+			if (ret == null)
+			{
+				ret = StructSerializer.serializerFor(this.type, RecordSerializer::of, true);
+				this.ser = ret;
+				
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		int write(Object obj, IByteWriter w) throws Throwable
+		{
+			Object v = this.get.invokeExact(obj);
+			
+			if (!this.present(v))
+			{
+				return 0;
+			}
+			
+			PooledByteArray scratch = new PooledByteArray();
+			
+			try
+			{
+				this.serializer().toBytes(v, scratch);
+				
+				return this.writeTag(w) + writeVarint(w, scratch.remaining()) + scratch.writeTo(w);
+			}
+			finally
+			{
+				scratch.release();
+				
+			}
+			
+		}
+		
+		@Override
+		void read(Object obj, IByteReader r) throws Throwable
+		{
+			Bounded in = new Bounded(r, (int)readVarint(r));
+			Object v = this.serializer().fromBytes(in);
+			
+			//Whatever the serializer didn't read was written by something newer.
+			in.skip(in.left);
+			
+			this.set.invokeExact(obj, v);
+			
+		}
+		
+	}
+	
+	//View over the next few bytes of a reader, so nested values can't run past their own length.
+	static class Bounded implements IByteReader
+	{
+		final IByteReader src;
+		int left;
+		
+		@SuppressWarnings("unqualified-field-access")
+		Bounded(IByteReader r, int length)
+		{
+			src = r;
+			left = length;
+			
+		}
+		
+		@Override
+		public int remaining()
+		{
+			return this.left;
+		}
+		
+		@Override
+		public byte read() throws Throwable
+		{
+			if (this.left <= 0)
+			{
+				throw new BufferUnderflowException();
+			}
+			
+			this.left--;
+			
+			return this.src.read();
+		}
+		
+		@Override
+		public int read(byte[] dest, int off, int len) throws Throwable
+		{
+			int count = Math.min(len, this.left);
+			
+			if (count <= 0)
+			{
+				return len == 0 ? 0 : -1;
+			}
+			
+			int ret = this.src.read(dest, off, count);
+			
+			if (ret > 0)
+			{
+				this.left -= ret;
+				
+			}
+			
+			return ret;
+		}
+		
+		void skip(int count) throws Throwable
+		{
+			assert count <= this.left;
+			
+			this.left -= count;
+			
+			skipBytes(this.src, count);
+			
+		}
+		
+	}
+	
+}
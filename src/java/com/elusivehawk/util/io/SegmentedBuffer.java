@@ -0,0 +1,637 @@
+
+package com.elusivehawk.util.io;
+
+import java.io.Closeable;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 
+ * Long-indexed storage spread across equally sized {@link ByteBuffer} segments, getting around the 2 GB limit of a single buffer.
+ * <p>
+ * Typed accessors are little-endian, matching {@link Serializers}. Accesses that straddle two segments fall back to
+ * assembling the value byte by byte.
+ * <br>As a reader/writer, this has separate cursors: Reading consumes everything between the read position and the write position.
+ * 
+ * @author Elusivehawk
+ */
+public abstract class SegmentedBuffer implements IByteReader, IByteWriter, Closeable
+{
+	protected final ByteBuffer[] segments;
+	protected final int shift;
+	protected final long mask, size;
+	protected long readPos = 0, writePos = 0;
+	private boolean open = true;
+	
+	@SuppressWarnings("unqualified-field-access")
+	protected SegmentedBuffer(long length, int segmentSize)
+	{
+		assert length >= 0;
+		assert segmentSize > 0 && Integer.bitCount(segmentSize) == 1 : "Segment size must be a power of two";
+		
+		shift = Integer.numberOfTrailingZeros(segmentSize);
+		mask = segmentSize - 1;
+		size = length;
+		
+		long count = (length + mask) >>> shift;
+		
+		if (count > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException(String.format("Too many segments needed for %s bytes", Long.toString(length)));
+		}
+		
+		segments = new ByteBuffer[(int)count];
+		
+	}
+	
+	//Called by subclasses once the segments are in place; The last segment only needs to hold what's left over.
+	protected void initSegments()
+	{
+		for (int c = 0; c < this.segments.length; c++)
+		{
+			long start = (long)c << this.shift;
+			ByteBuffer seg = this.createSegment(c, (int)Math.min(this.mask + 1, this.size - start));
+			
+			seg.order(ByteOrder.LITTLE_ENDIAN);
+			this.segments[c] = seg;
+			
+		}
+		
+	}
+	
+	protected abstract ByteBuffer createSegment(int index, int length);
+	
+	protected abstract void releaseSegment(ByteBuffer seg);
+	
+	public long size()
+	{
+		return this.size;
+	}
+	
+	public int segmentSize()
+	{
+		return (int)this.mask + 1;
+	}
+	
+	public boolean isOpen()
+	{
+		return this.open;
+	}
+	
+	public byte getByte(long index)
+	{
+		return this.segment(index).get((int)(index & this.mask));
+	}
+	
+	public void putByte(long index, byte b)
+	{
+		this.segment(index).put((int)(index & this.mask), b);
+		
+	}
+	
+	public short getShort(long index)
+	{
+		ByteBuffer seg = this.segment(index);
+		int off = (int)(index & this.mask);
+		
+		if (off <= seg.limit() - 2)
+		{
+			return seg.getShort(off);
+		}
+		
+		return (short)this.getSlow(index, 2);
+	}
+	
+	public void putShort(long index, short s)
+	{
+		ByteBuffer seg = this.segment(index);
+		int off = (int)(index & this.mask);
+		
+		if (off <= seg.limit() - 2)
+		{
+			seg.putShort(off, s);
+			
+		}
+		else this.putSlow(index, s, 2);
+		
+	}
+	
+	public int getInt(long index)
+	{
+		ByteBuffer seg = this.segment(index);
+		int off = (int)(index & this.mask);
+		
+		if (off <= seg.limit() - 4)
+		{
+			return seg.getInt(off);
+		}
+		
+		return (int)this.getSlow(index, 4);
+	}
+	
+	public void putInt(long index, int i)
+	{
+		ByteBuffer seg = this.segment(index);
+		int off = (int)(index & this.mask);
+		
+		if (off <= seg.limit() - 4)
+		{
+			seg.putInt(off, i);
+			
+		}
+		else this.putSlow(index, i, 4);
+		
+	}
+	
+	public long getLong(long index)
+	{
+		ByteBuffer seg = this.segment(index);
+		int off = (int)(index & this.mask);
+		
+		if (off <= seg.limit() - 8)
+		{
+			return seg.getLong(off);
+		}
+		
+		return this.getSlow(index, 8);
+	}
+	
+	public void putLong(long index, long l)
+	{
+		ByteBuffer seg = this.segment(index);
+		int off = (int)(index & this.mask);
+		
+		if (off <= seg.limit() - 8)
+		{
+			seg.putLong(off, l);
+			
+		}
+		else this.putSlow(index, l, 8);
+		
+	}
+	
+	public float getFloat(long index)
+	{
+		return Float.intBitsToFloat(this.getInt(index));
+	}
+	
+	public void putFloat(long index, float f)
+	{
+		this.putInt(index, Float.floatToRawIntBits(f));
+		
+	}
+	
+	public double getDouble(long index)
+	{
+		return Double.longBitsToDouble(this.getLong(index));
+	}
+	
+	public void putDouble(long index, double d)
+	{
+		this.putLong(index, Double.doubleToRawLongBits(d));
+		
+	}
+	
+	public void get(long index, byte[] dest, int off, int len)
+	{
+		this.checkRange(index, len);
+		
+		long pos = index;
+		int copied = 0;
+		
+		while (copied < len)
+		{
+			ByteBuffer seg = this.segments[(int)(pos >>> this.shift)].duplicate();
+			int inSeg = (int)(pos & this.mask);
+			int count = Math.min(len - copied, seg.limit() - inSeg);
+			
+			seg.position(inSeg);
+			seg.get(dest, off + copied, count);
+			
+			pos += count;
+			copied += count;
+			
+		}
+		
+	}
+	
+	public void put(long index, byte[] src, int off, int len)
+	{
+		this.checkRange(index, len);
+		
+		long pos = index;
+		int copied = 0;
+		
+		while (copied < len)
+		{
+			ByteBuffer seg = this.segments[(int)(pos >>> this.shift)].duplicate();
+			int inSeg = (int)(pos & this.mask);
+			int count = Math.min(len - copied, seg.limit() - inSeg);
+			
+			seg.position(inSeg);
+			seg.put(src, off + copied, count);
+			
+			pos += count;
+			copied += count;
+			
+		}
+		
+	}
+	
+	public int put(long index, ByteBuffer src)
+	{
+		int len = src.remaining();
+		
+		this.checkRange(index, len);
+		
+		long pos = index;
+		int copied = 0;
+		ByteBuffer in = src.duplicate();
+		
+		while (copied < len)
+		{
+			ByteBuffer seg = this.segments[(int)(pos >>> this.shift)].duplicate();
+			int inSeg = (int)(pos & this.mask);
+			int count = Math.min(len - copied, seg.limit() - inSeg);
+			
+			seg.position(inSeg);
+			in.limit(in.position() + count);
+			seg.put(in);
+			
+			pos += count;
+			copied += count;
+			
+		}
+		
+		src.position(src.position() + len);
+		
+		return len;
+	}
+	
+	//Zero-copy view of a region; Only works when the region doesn't cross into another segment.
+	public ByteBuffer asByteBuffer(long index, int length)
+	{
+		this.checkRange(index, length);
+		
+		ByteBuffer seg = this.segment(index);
+		int off = (int)(index & this.mask);
+		
+		if (off + length > seg.limit())
+		{
+			throw new IllegalArgumentException(String.format("Region at %s (%s bytes) crosses a segment boundary", Long.toString(index), Integer.toString(length)));
+		}
+		
+		ByteBuffer ret = seg.duplicate();
+		
+		ret.limit(off + length).position(off);
+		
+		return ret.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	//Zero-copy views covering any region, one per segment touched.
+	public ByteBuffer[] nioBuffers(long index, long length)
+	{
+		if (length == 0)
+		{
+			return new ByteBuffer[0];
+		}
+		
+		this.checkRange(index, length);
+		
+		int first = (int)(index >>> this.shift), last = (int)((index + length - 1) >>> this.shift);
+		ByteBuffer[] ret = new ByteBuffer[last - first + 1];
+		long pos = index, end = index + length;
+		
+		for (int c = 0; c < ret.length; c++)
+		{
+			ByteBuffer seg = this.segments[first + c].duplicate();
+			int inSeg = (int)(pos & this.mask);
+			int count = (int)Math.min(end - pos, seg.limit() - inSeg);
+			
+			seg.limit(inSeg + count).position(inSeg);
+			ret[c] = seg.slice().order(ByteOrder.LITTLE_ENDIAN);
+			
+			pos += count;
+			
+		}
+		
+		return ret;
+	}
+	
+	public long readPosition()
+	{
+		return this.readPos;
+	}
+	
+	public void readPosition(long pos)
+	{
+		if (pos < 0 || pos > this.writePos)
+		{
+			throw new IndexOutOfBoundsException(Long.toString(pos));
+		}
+		
+		this.readPos = pos;
+		
+	}
+	
+	public long writePosition()
+	{
+		return this.writePos;
+	}
+	
+	public void writePosition(long pos)
+	{
+		if (pos < this.readPos || pos > this.size)
+		{
+			throw new IndexOutOfBoundsException(Long.toString(pos));
+		}
+		
+		this.writePos = pos;
+		
+	}
+	
+	public long readable()
+	{
+		return this.writePos - this.readPos;
+	}
+	
+	public long writable()
+	{
+		return this.size - this.writePos;
+	}
+	
+	@Override
+	public int remaining()
+	{
+		return (int)Math.min(this.readable(), Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public byte read()
+	{
+		if (this.readPos == this.writePos)
+		{
+			throw new BufferUnderflowException();
+		}
+		
+		return this.getByte(this.readPos++);
+	}
+	
+	@Override
+	public byte[] read(int count)
+	{
+		this.ensureReadable(count);
+		
+		byte[] ret = new byte[count];
+		
+		this.read(ret, 0, count);
+		
+		return ret;
+	}
+	
+	@Override
+	public int read(byte[] dest, int off, int len)
+	{
+		int count = Math.min(len, this.remaining());
+		
+		if (count <= 0)
+		{
+			return len == 0 ? 0 : -1;
+		}
+		
+		this.get(this.readPos, dest, off, count);
+		this.readPos += count;
+		
+		return count;
+	}
+	
+	@Override
+	public short readShort()
+	{
+		this.ensureReadable(2);
+		
+		short ret = this.getShort(this.readPos);
+		
+		this.readPos += 2;
+		
+		return ret;
+	}
+	
+	@Override
+	public int readInt()
+	{
+		this.ensureReadable(4);
+		
+		int ret = this.getInt(this.readPos);
+		
+		this.readPos += 4;
+		
+		return ret;
+	}
+	
+	@Override
+	public long readLong()
+	{
+		this.ensureReadable(8);
+		
+		long ret = this.getLong(this.readPos);
+		
+		this.readPos += 8;
+		
+		return ret;
+	}
+	
+	@Override
+	public float readFloat()
+	{
+		return Float.intBitsToFloat(this.readInt());
+	}
+	
+	@Override
+	public double readDouble()
+	{
+		return Double.longBitsToDouble(this.readLong());
+	}
+	
+	@Override
+	public int write(byte... bytes)
+	{
+		this.ensureWritable(bytes.length);
+		
+		this.put(this.writePos, bytes, 0, bytes.length);
+		this.writePos += bytes.length;
+		
+		return bytes.length;
+	}
+	
+	@Override
+	public int write(byte[] bytes, int off, int len)
+	{
+		this.ensureWritable(len);
+		
+		this.put(this.writePos, bytes, off, len);
+		this.writePos += len;
+		
+		return len;
+	}
+	
+	@Override
+	public int write(ByteBuffer bb, int count)
+	{
+		int len = Math.min(bb.remaining(), count);
+		
+		this.ensureWritable(len);
+		
+		ByteBuffer in = bb.duplicate();
+		
+		in.limit(in.position() + len);
+		
+		this.put(this.writePos, in);
+		this.writePos += len;
+		bb.position(bb.position() + len);
+		
+		return len;
+	}
+	
+	@Override
+	public void writeShort(short s)
+	{
+		this.ensureWritable(2);
+		
+		this.putShort(this.writePos, s);
+		this.writePos += 2;
+		
+	}
+	
+	@Override
+	public void writeInt(int i)
+	{
+		this.ensureWritable(4);
+		
+		this.putInt(this.writePos, i);
+		this.writePos += 4;
+		
+	}
+	
+	@Override
+	public void writeLong(long l)
+	{
+		this.ensureWritable(8);
+		
+		this.putLong(this.writePos, l);
+		this.writePos += 8;
+		
+	}
+	
+	@Override
+	public void writeFloat(float f)
+	{
+		this.writeInt(Float.floatToRawIntBits(f));
+		
+	}
+	
+	@Override
+	public void writeDouble(double d)
+	{
+		this.writeLong(Double.doubleToRawLongBits(d));
+		
+	}
+	
+	@Override
+	public void close()
+	{
+		if (!this.open)
+		{
+			return;
+		}
+		
+		this.open = false;
+		
+		for (int c = 0; c < this.segments.length; c++)
+		{
+			if (this.segments[c] != null)
+			{
+				this.releaseSegment(this.segments[c]);
+				this.segments[c] = null;
+				
+			}
+			
+		}
+		
+	}
+	
+	protected ByteBuffer segment(long index)
+	{
+		if (index < 0 || index >= this.size)
+		{
+			throw new IndexOutOfBoundsException(Long.toString(index));
+		}
+		
+		ByteBuffer ret = this.segments[(int)(index >>> this.shift)];
+		
+		if (ret == null)
+		{
+			throw new IllegalStateException("Buffer has been closed");
+		}
+		
+		return ret;
+	}
+	
+	protected void checkRange(long index, long length)
+	{
+		if (!this.open)
+		{
+			throw new IllegalStateException("Buffer has been closed");
+		}
+		
+		if (index < 0 || length < 0 || index + length > this.size)
+		{
+			throw new IndexOutOfBoundsException(String.format("%s + %s", Long.toString(index), Long.toString(length)));
+		}
+		
+	}
+	
+	private void ensureReadable(int count)
+	{
+		if (this.readable() < count)
+		{
+			throw new BufferUnderflowException();
+		}
+		
+	}
+	
+	private void ensureWritable(int count)
+	{
+		if (this.writable() < count)
+		{
+			throw new BufferOverflowException();
+		}
+		
+	}
+	
+	private long getSlow(long index, int count)
+	{
+		long ret = 0;
+		
+		for (int c = 0; c < count; c++)
+		{
+			ret |= (this.getByte(index + c) & 0xFFL) << (c << 3);
+			
+		}
+		
+		return ret;
+	}
+	
+	private void putSlow(long index, long value, int count)
+	{
+		for (int c = 0; c < count; c++)
+		{
+			this.putByte(index + c, (byte)(value >>> (c << 3)));
+			
+		}
+		
+	}
+	
+}
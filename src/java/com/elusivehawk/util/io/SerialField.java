@@ -0,0 +1,25 @@
+
+package com.elusivehawk.util.io;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 
+ * Marks a field for {@link StructSerializer} and {@link RecordSerializer}; Fields are encoded in ascending order of their ID.
+ * <p>
+ * Optional fields may be missing from a {@link RecordSerializer} record; {@link StructSerializer} ignores the flag.
+ * 
+ * @author Elusivehawk
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface SerialField
+{
+	int value();
+	
+	boolean optional() default false;
+	
+}
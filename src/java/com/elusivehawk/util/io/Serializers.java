@@ -15,6 +15,61 @@ public final class Serializers
 {
 	private Serializers(){}
 	
+	public static final Serializer<Boolean> BOOLEAN = new Serializer<Boolean>()
+			{
+				@Override
+				public int toBytes(Boolean bool, IByteWriter w)
+				{
+					return w.write((byte)(bool ? 1 : 0));
+				}
+				
+				@Override
+				public Boolean fromBytes(IByteReader b)
+				{
+					return b.readBool();
+				}
+				
+			};
+	public static final Serializer<Byte> BYTE = new Serializer<Byte>()
+			{
+				@Override
+				public int toBytes(Byte bt, IByteWriter w)
+				{
+					return w.write(bt);
+				}
+				
+				@Override
+				public Byte fromBytes(IByteReader b)
+				{
+					try
+					{
+						return b.read();
+					}
+					catch (Throwable e)
+					{
+						Logger.err(e);
+						
+					}
+					
+					return 0;
+				}
+				
+			};
+	public static final Serializer<Character> CHARACTER = new Serializer<Character>()
+			{
+				@Override
+				public int toBytes(Character ch, IByteWriter w)
+				{
+					return SHORT.toBytes((short)ch.charValue(), w);
+				}
+				
+				@Override
+				public Character fromBytes(IByteReader b)
+				{
+					return (char)(short)SHORT.fromBytes(b);
+				}
+				
+			};
 	public static final Serializer<Short> SHORT = new Serializer<Short>()
 			{
 				@Override
@@ -28,7 +83,7 @@ public final class Serializers
 				{
 					try
 					{
-						return (short)(b.read() | (b.read() << 8));
+						return (short)((b.read() & 0xFF) | (b.read() << 8));
 					}
 					catch (Throwable e)
 					{
@@ -65,7 +120,7 @@ public final class Serializers
 					{
 						try
 						{
-							ret &= b.read() << (c * 8);
+							ret |= (b.read() & 0xFF) << (c * 8);
 							
 						}
 						catch (Throwable e)
@@ -105,7 +160,7 @@ public final class Serializers
 					{
 						try
 						{
-							ret &= b.read() << (c * 8);
+							ret |= (b.read() & 0xFFL) << (c * 8);
 							
 						}
 						catch (Throwable e)
@@ -180,6 +235,33 @@ public final class Serializers
 					return new String(str);
 				}
 				
+			};
+	public static final Serializer<byte[]> BYTE_ARRAY = new Serializer<byte[]>()
+			{
+				@Override
+				public int toBytes(byte[] bs, IByteWriter w)
+				{
+					INTEGER.toBytes(bs.length, w);
+					
+					return w.write(bs) + 4;
+				}
+				
+				@Override
+				public byte[] fromBytes(IByteReader b)
+				{
+					try
+					{
+						return b.read(INTEGER.fromBytes(b));
+					}
+					catch (Throwable e)
+					{
+						Logger.err(e);
+						
+					}
+					
+					return new byte[0];
+				}
+				
 			};
 	public static final Serializer<UUID> UUID = new Serializer<UUID>()
 			{
@@ -0,0 +1,914 @@
+
+package com.elusivehawk.util.io;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 
+ * {@link Serializer} generated from a class' {@link SerialField}-annotated fields.
+ * <p>
+ * The fields are walked once, when the serializer's first requested; After that, every field is read and written through
+ * {@link MethodHandle}s, so encoding an object never touches reflection.
+ * <br>Supported field types are primitives, anything with a registered serializer (boxed primitives, strings, UUIDs and
+ * byte arrays by default), enums, primitive and object arrays, and other classes with annotated fields.
+ * <br>Serialized classes need a no-args constructor; It doesn't have to be public.
+ * 
+ * @author Elusivehawk
+ */
+public final class StructSerializer<T> implements Serializer<T>
+{
+	private static final ClassValue<StructSerializer<?>> CACHE = new ClassValue<StructSerializer<?>>()
+	{
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		@Override
+		protected StructSerializer<?> computeValue(Class<?> type)
+		{
+			return new StructSerializer(type);
+		}
+		
+	};
+	private static final Map<Class<?>, Serializer<?>> SERIALIZERS = new ConcurrentHashMap<Class<?>, Serializer<?>>();
+	
+	static
+	{
+		register(Boolean.class, Serializers.BOOLEAN);
+		register(Byte.class, Serializers.BYTE);
+		register(Character.class, Serializers.CHARACTER);
+		register(Short.class, Serializers.SHORT);
+		register(Integer.class, Serializers.INTEGER);
+		register(Long.class, Serializers.LONG);
+		register(Float.class, Serializers.FLOAT);
+		register(Double.class, Serializers.DOUBLE);
+		register(String.class, Serializers.STRING);
+		register(UUID.class, Serializers.UUID);
+		register(byte[].class, Serializers.BYTE_ARRAY);
+		
+	}
+	
+	private final Class<T> type;
+	private final MethodHandle ctor;
+	private final FieldCodec[] fields;
+	
+	@SuppressWarnings("unqualified-field-access")
+	private StructSerializer(Class<T> clazz)
+	{
+		type = clazz;
+		
+		List<Field> found = serialFields(clazz);
+		
+		if (found.isEmpty())
+		{
+			throw new IllegalArgumentException(String.format("%s has no @SerialField fields", clazz.getName()));
+		}
+		
+		ctor = constructor(clazz);
+		fields = new FieldCodec[found.size()];
+		
+		for (int c = 0; c < fields.length; c++)
+		{
+			fields[c] = FieldCodec.create(found.get(c));
+			
+		}
+		
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <T> StructSerializer<T> of(Class<T> type)
+	{
+		return (StructSerializer<T>)CACHE.get(type);
+	}
+	
+	public static <T> void register(Class<T> type, Serializer<T> ser)
+	{
+		assert type != null && ser != null;
+		
+		SERIALIZERS.put(type, ser);
+		
+	}
+	
+	public Class<T> getType()
+	{
+		return this.type;
+	}
+	
+	@Override
+	public int toBytes(T obj, IByteWriter w)
+	{
+		int ret = 0;
+		
+		try
+		{
+			for (FieldCodec f : this.fields)
+			{
+				ret += f.write(obj, w);
+				
+			}
+			
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public T fromBytes(IByteReader r)
+	{
+		try
+		{
+			Object ret = this.ctor.invokeExact();
+			
+			for (FieldCodec f : this.fields)
+			{
+				f.read(ret, r);
+				
+			}
+			
+			return this.type.cast(ret);
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+	}
+	
+	//Adapted to ()Object, so it can be called with invokeExact.
+	static MethodHandle constructor(Class<?> clazz)
+	{
+		try
+		{
+			Constructor<?> c = clazz.getDeclaredConstructor();
+			
+			c.setAccessible(true);
+			
+			return MethodHandles.lookup().unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalArgumentException(String.format("%s needs a no-args constructor", clazz.getName()), e);
+		}
+		
+	}
+	
+	static List<Field> serialFields(Class<?> clazz)
+	{
+		List<Field> ret = new ArrayList<Field>();
+		
+		for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass())
+		{
+			for (Field f : c.getDeclaredFields())
+			{
+				if (Modifier.isStatic(f.getModifiers()) || !f.isAnnotationPresent(SerialField.class))
+				{
+					continue;
+				}
+				
+				ret.add(f);
+				
+			}
+			
+		}
+		
+		ret.sort(Comparator.comparingInt((f) -> f.getAnnotation(SerialField.class).value()));
+		
+		for (int c = 1; c < ret.size(); c++)
+		{
+			if (ret.get(c).getAnnotation(SerialField.class).value() == ret.get(c - 1).getAnnotation(SerialField.class).value())
+			{
+				throw new IllegalArgumentException(String.format("Duplicate @SerialField ID in %s: %s", clazz.getName(), ret.get(c).getName()));
+			}
+			
+		}
+		
+		return ret;
+	}
+	
+	static Serializer<Object> serializerFor(Class<?> type)
+	{
+		return serializerFor(type, StructSerializer::of);
+	}
+	
+	static Serializer<Object> serializerFor(Class<?> type, Function<Class<?>, Serializer<?>> structs)
+	{
+		return serializerFor(type, structs, false);
+	}
+	
+	//Annotated classes are handed to the given factory, so other formats can swap in their own; Enums go by ordinal unless asked to go by name.
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static Serializer<Object> serializerFor(Class<?> type, Function<Class<?>, Serializer<?>> structs, boolean enumNames)
+	{
+		Serializer<?> ret = SERIALIZERS.get(type);
+		
+		if (ret != null)
+		{
+			return (Serializer<Object>)ret;
+		}
+		
+		if (type.isEnum())
+		{
+			return enumNames ? new EnumNameSerializer(type) : new EnumSerializer(type);
+		}
+		
+		if (type.isArray())
+		{
+			return (Serializer<Object>)arraySerializer(type.getComponentType(), structs, enumNames);
+		}
+		
+		if (!serialFields(type).isEmpty())
+		{
+			return (Serializer<Object>)structs.apply(type);
+		}
+		
+		throw new IllegalArgumentException(String.format("Don't know how to serialize %s", type.getName()));
+	}
+	
+	private static Serializer<?> arraySerializer(Class<?> comp, Function<Class<?>, Serializer<?>> structs, boolean enumNames)
+	{
+		if (comp == int.class)
+		{
+			return new Serializer<int[]>()
+			{
+				@Override
+				public int toBytes(int[] arr, IByteWriter w)
+				{
+					w.writeInt(arr.length);
+					
+					for (int i : arr)
+					{
+						w.writeInt(i);
+						
+					}
+					
+					return 4 + (arr.length << 2);
+				}
+				
+				@Override
+				public int[] fromBytes(IByteReader r)
+				{
+					int[] ret = new int[r.readInt()];
+					
+					for (int c = 0; c < ret.length; c++)
+					{
+						ret[c] = r.readInt();
+						
+					}
+					
+					return ret;
+				}
+				
+			};
+		}
+		
+		if (comp == long.class)
+		{
+			return new Serializer<long[]>()
+			{
+				@Override
+				public int toBytes(long[] arr, IByteWriter w)
+				{
+					w.writeInt(arr.length);
+					
+					for (long l : arr)
+					{
+						w.writeLong(l);
+						
+					}
+					
+					return 4 + (arr.length << 3);
+				}
+				
+				@Override
+				public long[] fromBytes(IByteReader r)
+				{
+					long[] ret = new long[r.readInt()];
+					
+					for (int c = 0; c < ret.length; c++)
+					{
+						ret[c] = r.readLong();
+						
+					}
+					
+					return ret;
+				}
+				
+			};
+		}
+		
+		if (comp == float.class)
+		{
+			return new Serializer<float[]>()
+			{
+				@Override
+				public int toBytes(float[] arr, IByteWriter w)
+				{
+					w.writeInt(arr.length);
+					
+					for (float f : arr)
+					{
+						w.writeFloat(f);
+						
+					}
+					
+					return 4 + (arr.length << 2);
+				}
+				
+				@Override
+				public float[] fromBytes(IByteReader r)
+				{
+					float[] ret = new float[r.readInt()];
+					
+					for (int c = 0; c < ret.length; c++)
+					{
+						ret[c] = r.readFloat();
+						
+					}
+					
+					return ret;
+				}
+				
+			};
+		}
+		
+		if (comp == double.class)
+		{
+			return new Serializer<double[]>()
+			{
+				@Override
+				public int toBytes(double[] arr, IByteWriter w)
+				{
+					w.writeInt(arr.length);
+					
+					for (double d : arr)
+					{
+						w.writeDouble(d);
+						
+					}
+					
+					return 4 + (arr.length << 3);
+				}
+				
+				@Override
+				public double[] fromBytes(IByteReader r)
+				{
+					double[] ret = new double[r.readInt()];
+					
+					for (int c = 0; c < ret.length; c++)
+					{
+						ret[c] = r.readDouble();
+						
+					}
+					
+					return ret;
+				}
+				
+			};
+		}
+		
+		if (comp == short.class)
+		{
+			return new Serializer<short[]>()
+			{
+				@Override
+				public int toBytes(short[] arr, IByteWriter w)
+				{
+					w.writeInt(arr.length);
+					
+					for (short s : arr)
+					{
+						w.writeShort(s);
+						
+					}
+					
+					return 4 + (arr.length << 1);
+				}
+				
+				@Override
+				public short[] fromBytes(IByteReader r)
+				{
+					short[] ret = new short[r.readInt()];
+					
+					for (int c = 0; c < ret.length; c++)
+					{
+						ret[c] = r.readShort();
+						
+					}
+					
+					return ret;
+				}
+				
+			};
+		}
+		
+		if (comp == char.class)
+		{
+			return new Serializer<char[]>()
+			{
+				@Override
+				public int toBytes(char[] arr, IByteWriter w)
+				{
+					w.writeInt(arr.length);
+					
+					for (char ch : arr)
+					{
+						w.writeShort((short)ch);
+						
+					}
+					
+					return 4 + (arr.length << 1);
+				}
+				
+				@Override
+				public char[] fromBytes(IByteReader r)
+				{
+					char[] ret = new char[r.readInt()];
+					
+					for (int c = 0; c < ret.length; c++)
+					{
+						ret[c] = (char)r.readShort();
+						
+					}
+					
+					return ret;
+				}
+				
+			};
+		}
+		
+		if (comp == boolean.class)
+		{
+			//Packed eight to a byte.
+			return new Serializer<boolean[]>()
+			{
+				@Override
+				public int toBytes(boolean[] arr, IByteWriter w)
+				{
+					w.writeInt(arr.length);
+					
+					for (int c = 0; c < arr.length; c += 8)
+					{
+						int packed = 0;
+						
+						for (int b = 0; b < 8 && c + b < arr.length; b++)
+						{
+							packed |= arr[c + b] ? 1 << b : 0;
+							
+						}
+						
+						w.write((byte)packed);
+						
+					}
+					
+					return 4 + ((arr.length + 7) >>> 3);
+				}
+				
+				@Override
+				public boolean[] fromBytes(IByteReader r)
+				{
+					boolean[] ret = new boolean[r.readInt()];
+					byte[] packed;
+					
+					try
+					{
+						packed = r.read((ret.length + 7) >>> 3);
+						
+					}
+					catch (RuntimeException | Error e)
+					{
+						throw e;
+					}
+					catch (Throwable e)
+					{
+						throw new RuntimeException(e);
+					}
+					
+					for (int c = 0; c < ret.length; c++)
+					{
+						ret[c] = (packed[c >>> 3] & (1 << (c & 7))) != 0;
+						
+					}
+					
+					return ret;
+				}
+				
+			};
+		}
+		
+		return new ArraySerializer(comp, structs, enumNames);
+	}
+	
+	static abstract class FieldCodec
+	{
+		final MethodHandle get, set;
+		
+		@SuppressWarnings("unqualified-field-access")
+		FieldCodec(Field f, Class<?> as) throws IllegalAccessException
+		{
+			f.setAccessible(true);
+			
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			
+			get = lookup.unreflectGetter(f).asType(MethodType.methodType(as, Object.class));
+			set = lookup.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, as));
+			
+		}
+		
+		abstract int write(Object obj, IByteWriter w) throws Throwable;
+		
+		abstract void read(Object obj, IByteReader r) throws Throwable;
+		
+		static FieldCodec create(Field f)
+		{
+			Class<?> t = f.getType();
+			
+			try
+			{
+				if (t == boolean.class)
+				{
+					return new FieldCodec(f, t)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							w.writeBool((boolean)this.get.invokeExact(obj));
+							
+							return 1;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.readBool());
+							
+						}
+						
+					};
+				}
+				
+				if (t == byte.class)
+				{
+					return new FieldCodec(f, t)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							return w.write((byte)this.get.invokeExact(obj));
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.read());
+							
+						}
+						
+					};
+				}
+				
+				if (t == char.class)
+				{
+					return new FieldCodec(f, t)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							w.writeShort((short)(char)this.get.invokeExact(obj));
+							
+							return 2;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, (char)r.readShort());
+							
+						}
+						
+					};
+				}
+				
+				if (t == short.class)
+				{
+					return new FieldCodec(f, t)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							w.writeShort((short)this.get.invokeExact(obj));
+							
+							return 2;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.readShort());
+							
+						}
+						
+					};
+				}
+				
+				if (t == int.class)
+				{
+					return new FieldCodec(f, t)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							w.writeInt((int)this.get.invokeExact(obj));
+							
+							return 4;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.readInt());
+							
+						}
+						
+					};
+				}
+				
+				if (t == long.class)
+				{
+					return new FieldCodec(f, t)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							w.writeLong((long)this.get.invokeExact(obj));
+							
+							return 8;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.readLong());
+							
+						}
+						
+					};
+				}
+				
+				if (t == float.class)
+				{
+					return new FieldCodec(f, t)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							w.writeFloat((float)this.get.invokeExact(obj));
+							
+							return 4;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.readFloat());
+							
+						}
+						
+					};
+				}
+				
+				if (t == double.class)
+				{
+					return new FieldCodec(f, t)
+					{
+						@Override
+						int write(Object obj, IByteWriter w) throws Throwable
+						{
+							w.writeDouble((double)this.get.invokeExact(obj));
+							
+							return 8;
+						}
+						
+						@Override
+						void read(Object obj, IByteReader r) throws Throwable
+						{
+							this.set.invokeExact(obj, r.readDouble());
+							
+						}
+						
+					};
+				}
+				
+				return new ObjectCodec(f);
+			}
+			catch (IllegalAccessException e)
+			{
+				throw new IllegalArgumentException(String.format("Cannot access field %s", f), e);
+			}
+			
+		}
+		
+	}
+	
+	//Nullable, so every value is prefixed with whether or not it's there.
+	static class ObjectCodec extends FieldCodec
+	{
+		final Class<?> type;
+		private volatile Serializer<Object> ser = null;
+		
+		@SuppressWarnings("unqualified-field-access")
+		ObjectCodec(Field f) throws IllegalAccessException
+		{
+			super(f, Object.class);
+			
+			type = f.getType();
+			
+		}
+		
+		//Resolved on first use, so classes can refer to themselves.
+		Serializer<Object> serializer()
+		{
+			Serializer<Object> ret = this.ser;
+			
+			if (ret == null)
+			{
+				ret = serializerFor(this.type);
+				this.ser = ret;
+				
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		int write(Object obj, IByteWriter w) throws Throwable
+		{
+			Object v = this.get.invokeExact(obj);
+			
+			w.writeBool(v != null);
+			
+			return v == null ? 1 : 1 + this.serializer().toBytes(v, w);
+		}
+		
+		@Override
+		void read(Object obj, IByteReader r) throws Throwable
+		{
+			this.set.invokeExact(obj, r.readBool() ? this.serializer().fromBytes(r) : null);
+			
+		}
+		
+	}
+	
+	private static class EnumSerializer implements Serializer<Object>
+	{
+		private final Object[] values;
+		
+		@SuppressWarnings("unqualified-field-access")
+		EnumSerializer(Class<?> type)
+		{
+			values = type.getEnumConstants();
+			
+		}
+		
+		@Override
+		public int toBytes(Object obj, IByteWriter w)
+		{
+			w.writeInt(((Enum<?>)obj).ordinal());
+			
+			return 4;
+		}
+		
+		@Override
+		public Object fromBytes(IByteReader r)
+		{
+			return this.values[r.readInt()];
+		}
+		
+	}
+	
+	//Names stay valid when constants are added or reordered; Ones that no longer exist come back as null.
+	static class EnumNameSerializer implements Serializer<Object>
+	{
+		private final Map<String, Object> values = new HashMap<String, Object>();
+		
+		EnumNameSerializer(Class<?> type)
+		{
+			for (Object e : type.getEnumConstants())
+			{
+				this.values.put(((Enum<?>)e).name(), e);
+				
+			}
+			
+		}
+		
+		@Override
+		public int toBytes(Object obj, IByteWriter w)
+		{
+			return Serializers.STRING.toBytes(((Enum<?>)obj).name(), w);
+		}
+		
+		@Override
+		public Object fromBytes(IByteReader r)
+		{
+			return this.values.get(Serializers.STRING.fromBytes(r));
+		}
+		
+	}
+	
+	private static class ArraySerializer implements Serializer<Object>
+	{
+		private final Class<?> comp;
+		private final Function<Class<?>, Serializer<?>> structs;
+		private final boolean enumNames;
+		private volatile Serializer<Object> ser = null;
+		
+		@SuppressWarnings("unqualified-field-access")
+		ArraySerializer(Class<?> type, Function<Class<?>, Serializer<?>> factory, boolean names)
+		{
+			comp = type;
+			structs = factory;
+			enumNames = names;
+			
+		}
+		
+		private Serializer<Object> serializer()
+		{
+			Serializer<Object> ret = this.ser;
+			
+			if (ret == null)
+			{
+				ret = serializerFor(this.comp, this.structs, this.enumNames);
+				this.ser = ret;
+				
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		public int toBytes(Object obj, IByteWriter w)
+		{
+			Object[] arr = (Object[])obj;
+			int ret = 4;
+			
+			w.writeInt(arr.length);
+			
+			for (Object o : arr)
+			{
+				w.writeBool(o != null);
+				ret++;
+				
+				if (o != null)
+				{
+					ret += this.serializer().toBytes(o, w);
+					
+				}
+				
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		public Object fromBytes(IByteReader r)
+		{
+			Object[] ret = (Object[])Array.newInstance(this.comp, r.readInt());
+			
+			for (int c = 0; c < ret.length; c++)
+			{
+				if (r.readBool())
+				{
+					ret[c] = this.serializer().fromBytes(r);
+					
+				}
+				
+			}
+			
+			return ret;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,131 @@
+
+package com.elusivehawk.util.io;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 
+ * Recycles {@link Deflater}s and {@link Inflater}s, which are expensive to create and hold onto native memory until they're ended.
+ * <p>
+ * Everything pooled here works on raw deflate data; {@link DeflateWriter} and {@link InflateReader} handle the zlib and GZIP
+ * framing themselves, so one pool covers every format.
+ * <br>Anything that doesn't fit back into the pool is ended right away.
+ * 
+ * @author Elusivehawk
+ */
+public class ZipPool
+{
+	public static final ZipPool DEFAULT = new ZipPool(64);
+	
+	private final Deque<Deflater> deflaters = new ArrayDeque<Deflater>();
+	private final Deque<Inflater> inflaters = new ArrayDeque<Inflater>();
+	private final int maxPooled;
+	
+	@SuppressWarnings("unqualified-field-access")
+	public ZipPool(int max)
+	{
+		assert max >= 0;
+		
+		maxPooled = max;
+		
+	}
+	
+	public Deflater takeDeflater(int level)
+	{
+		Deflater ret;
+		
+		synchronized (this)
+		{
+			ret = this.deflaters.pollFirst();
+			
+		}
+		
+		if (ret == null)
+		{
+			return new Deflater(level, true);
+		}
+		
+		ret.setLevel(level);
+		
+		return ret;
+	}
+	
+	public Inflater takeInflater()
+	{
+		Inflater ret;
+		
+		synchronized (this)
+		{
+			ret = this.inflaters.pollFirst();
+			
+		}
+		
+		return ret == null ? new Inflater(true) : ret;
+	}
+	
+	public void release(Deflater def)
+	{
+		def.reset();
+		
+		synchronized (this)
+		{
+			if (this.deflaters.size() < this.maxPooled)
+			{
+				this.deflaters.addFirst(def);
+				
+				return;
+			}
+			
+		}
+		
+		def.end();
+		
+	}
+	
+	public void release(Inflater inf)
+	{
+		inf.reset();
+		
+		synchronized (this)
+		{
+			if (this.inflaters.size() < this.maxPooled)
+			{
+				this.inflaters.addFirst(inf);
+				
+				return;
+			}
+			
+		}
+		
+		inf.end();
+		
+	}
+	
+	public synchronized int getPooledCount()
+	{
+		return this.deflaters.size() + this.inflaters.size();
+	}
+	
+	public synchronized void clear()
+	{
+		for (Deflater def : this.deflaters)
+		{
+			def.end();
+			
+		}
+		
+		for (Inflater inf : this.inflaters)
+		{
+			inf.end();
+			
+		}
+		
+		this.deflaters.clear();
+		this.inflaters.clear();
+		
+	}
+	
+}
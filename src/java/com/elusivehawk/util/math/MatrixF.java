@@ -8,6 +8,7 @@ import static com.elusivehawk.util.math.MathConst.Z;
 import static com.elusivehawk.util.math.MathHelper.square;
 import static com.elusivehawk.util.math.MathHelper.toRadians;
 import java.nio.FloatBuffer;
+import com.elusivehawk.util.parse.json.JsonArray;
 
 /**
  * 
@@ -52,6 +53,26 @@ public class MatrixF extends FloatArithmetic
 		
 	}
 	
+	@SuppressWarnings("boxing")
+	public MatrixF(JsonArray json)
+	{
+		this((int)Math.sqrt(json.length()));
+		
+		boolean numeric = json.isNumeric();
+		
+		for (int c = 0; c < size(); c++)
+		{
+			if (!numeric && !(json.getValue(c) instanceof Number))
+			{
+				throw new RuntimeException(String.format("Incompatible argument in array object %s: %s", c, json.getValue(c)));
+			}
+			
+			set(c, json.getFloat(c));
+			
+		}
+		
+	}
+	
 	@SuppressWarnings("unqualified-field-access")
 	public MatrixF(MatrixF m)
 	{
@@ -44,6 +44,18 @@ public class VectorD extends DoubleArithmetic
 	{
 		this(json.length());
 		
+		//Numeric arrays are already unboxed, so there's nothing to check.
+		if (json.isNumeric())
+		{
+			for (int c = 0; c < size(); c++)
+			{
+				set(c, json.getDouble(c));
+				
+			}
+			
+			return;
+		}
+		
 		for (int c = 0; c < size(); c++)
 		{
 			Object obj = json.getValue(c);
@@ -53,7 +65,7 @@ public class VectorD extends DoubleArithmetic
 				throw new RuntimeException(String.format("Incompatible argument in array object %s: %s", c, obj));
 			}
 			
-			set(c, ((Number)obj).floatValue());
+			set(c, ((Number)obj).doubleValue());
 			
 		}
 		
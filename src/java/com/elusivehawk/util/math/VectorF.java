@@ -44,6 +44,18 @@ public class VectorF extends FloatArithmetic
 	{
 		this(json.length());
 		
+		//Numeric arrays are already unboxed, so there's nothing to check.
+		if (json.isNumeric())
+		{
+			for (int c = 0; c < size(); c++)
+			{
+				set(c, json.getFloat(c));
+				
+			}
+			
+			return;
+		}
+		
 		for (int c = 0; c < size(); c++)
 		{
 			Object obj = json.getValue(c);
@@ -0,0 +1,24 @@
+
+package com.elusivehawk.util.parse.json;
+
+/**
+ * 
+ * Events handed out by an {@link IJsonReader}.
+ * 
+ * @author Elusivehawk
+ */
+public enum EnumJsonToken
+{
+	BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT;
+	
+	public boolean isValue()
+	{
+		return this != END_OBJECT && this != END_ARRAY && this != NAME && this != END_DOCUMENT;
+	}
+	
+	public boolean isScalar()
+	{
+		return this == STRING || this == NUMBER || this == BOOLEAN || this == NULL;
+	}
+	
+}
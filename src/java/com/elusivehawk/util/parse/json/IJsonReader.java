@@ -0,0 +1,87 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.io.Closeable;
+
+/**
+ * 
+ * Pull parser for JSON; Each call to {@link #next()} moves on to the next token, which the getters then describe.
+ * <p>
+ * Only the token being looked at is kept around, so memory use doesn't depend on the size of the document.
+ * <br>{@link #skipValue()} passes over whole objects and arrays without building any strings or numbers out of them.
+ * <br>Errors, including I/O errors, are thrown as {@link JsonParseException}s.
+ * 
+ * @author Elusivehawk
+ */
+public interface IJsonReader extends Closeable
+{
+	EnumJsonToken next() throws JsonParseException;
+	
+	//The last token returned by next(), or null if it's never been called.
+	EnumJsonToken current();
+	
+	//How many objects and arrays the reader's currently inside of.
+	int getDepth();
+	
+	//The name of the field whose value is being read, or was just read.
+	String getName();
+	
+	//Works on names, strings and numbers; Numbers come back as they were written.
+	String getString() throws JsonParseException;
+	
+	Number getNumber() throws JsonParseException;
+	
+	long getLong() throws JsonParseException;
+	
+	double getDouble() throws JsonParseException;
+	
+	boolean getBoolean() throws JsonParseException;
+	
+	//Skips the value at hand: Objects and arrays that were just started are skipped to their end, and names have their value skipped.
+	void skipValue() throws JsonParseException;
+	
+	@Override
+	void close();
+	
+	//Makes an exception for something wrong at the reader's current spot; Readers that know where they are should say so.
+	default JsonParseException error(String msg, Object... args)
+	{
+		return new JsonParseException(msg, args);
+	}
+	
+	//Throws rather than wrapping around when the number doesn't fit.
+	default int getInt() throws JsonParseException
+	{
+		long ret = this.getLong();
+		
+		if (ret < Integer.MIN_VALUE || ret > Integer.MAX_VALUE)
+		{
+			throw this.error("%s doesn't fit in an int", this.getString());
+		}
+		
+		return (int)ret;
+	}
+	
+	default float getFloat() throws JsonParseException
+	{
+		return (float)this.getDouble();
+	}
+	
+	default boolean isNull()
+	{
+		return this.current() == EnumJsonToken.NULL;
+	}
+	
+	//Moves onto the next token, throwing if it isn't what's expected.
+	default void expect(EnumJsonToken tkn) throws JsonParseException
+	{
+		EnumJsonToken found = this.next();
+		
+		if (found != tkn)
+		{
+			throw this.error("Was expecting %s, found %s", tkn, found);
+		}
+		
+	}
+	
+}
@@ -16,4 +16,11 @@ public interface IJsonSerializer
 		return this.toJson(0);
 	}
 	
+	//Streams this out as a single value; Anything that can write itself out piece by piece should override this.
+	default void writeJson(JsonWriter w)
+	{
+		w.rawValue(this.toJson());
+		
+	}
+	
 }
@@ -1,6 +1,7 @@
 
 package com.elusivehawk.util.parse.json;
 
+import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
@@ -10,19 +11,24 @@ import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import com.elusivehawk.util.IPopulator;
 import com.elusivehawk.util.Logger;
 import com.elusivehawk.util.storage.BufferHelper;
 
 /**
  * 
- * 
+ * Arrays made up of only longs and doubles are kept unboxed until something else is added; See {@link #isNumeric()}.
+ * <p>
+ * How the elements are stored doesn't change how the array behaves: Removing through the iterator works either way, and
+ * boxes everything back up first.
  * 
  * @author Elusivehawk
  */
 public class JsonArray implements IJsonSerializer, Iterable<Object>
 {
 	private final List<Object> array = new ArrayList<Object>();
+	private PackedNumbers nums = null;
 	
 	public JsonArray(){}
 	
@@ -35,47 +41,46 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	@Override
 	public Iterator<Object> iterator()
 	{
-		return this.array.iterator();
+		return this.nums == null ? this.array.iterator() : new Cursor();
 	}
 	
 	@Override
 	public String toJson(int tabs)
 	{
-		StringBuilder b = new StringBuilder();
+		StringWriter ret = new StringWriter();
+		JsonWriter w = new JsonWriter(ret, "\t").setBaseLevel(tabs);
 		
-		b.append("[");
+		this.writeJson(w);
+		w.flush();
 		
-		for (int c = 0; c < this.array.size(); c++)
+		return ret.toString();
+	}
+	
+	@Override
+	public void writeJson(JsonWriter w)
+	{
+		if (this.nums != null)
 		{
-			if (c > 0)
-			{
-				b.append(", ");
-				
-			}
+			this.nums.write(w);
 			
-			Object obj = this.array.get(c);
-			
-			if (obj instanceof IJsonSerializer)
-			{
-				b.append(((IJsonSerializer)obj).toJson(tabs + 1));
-				
-			}
-			else
-			{
-				b.append(obj);
-				
-			}
+			return;
+		}
+		
+		w.beginArray();
+		
+		for (Object obj : this.array)
+		{
+			w.value(obj);
 			
 		}
 		
-		b.append("]");
+		w.endArray();
 		
-		return b.toString();
 	}
 	
 	public int length()
 	{
-		return this.array.size();
+		return this.nums == null ? this.array.size() : this.nums.size();
 	}
 	
 	public boolean getBool(int i)
@@ -97,6 +102,11 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	
 	public byte getByte(int i, byte dflt)
 	{
+		if (this.nums != null)
+		{
+			return (byte)this.nums.getInt(i);
+		}
+		
 		Object v = this.getValue(i);
 		
 		return (v instanceof Number) ? ((Number)v).byteValue() : dflt;
@@ -109,6 +119,11 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	
 	public double getDouble(int i, double dflt)
 	{
+		if (this.nums != null)
+		{
+			return this.nums.getDouble(i);
+		}
+		
 		Object v = this.getValue(i);
 		
 		return (v instanceof Number) ? ((Number)v).doubleValue() : dflt;
@@ -121,6 +136,11 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	
 	public float getFloat(int i, float dflt)
 	{
+		if (this.nums != null)
+		{
+			return (float)this.nums.getDouble(i);
+		}
+		
 		Object v = this.getValue(i);
 		
 		return (v instanceof Number) ? ((Number)v).floatValue() : dflt;
@@ -133,6 +153,11 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	
 	public int getInt(int i, int dflt)
 	{
+		if (this.nums != null)
+		{
+			return this.nums.getInt(i);
+		}
+		
 		Object v = this.getValue(i);
 		
 		return (v instanceof Number) ? ((Number)v).intValue() : dflt;
@@ -145,6 +170,11 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	
 	public long getLong(int i, long dflt)
 	{
+		if (this.nums != null)
+		{
+			return this.nums.getLong(i);
+		}
+		
 		Object v = this.getValue(i);
 		
 		return (v instanceof Number) ? ((Number)v).longValue() : dflt;
@@ -157,6 +187,11 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	
 	public short getShort(int i, short dflt)
 	{
+		if (this.nums != null)
+		{
+			return (short)this.nums.getInt(i);
+		}
+		
 		Object v = this.getValue(i);
 		
 		return (v instanceof Number) ? ((Number)v).shortValue() : dflt;
@@ -176,7 +211,7 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	
 	public Object getValue(int i)
 	{
-		return this.array.get(i);
+		return this.nums == null ? this.array.get(i) : this.nums.get(i);
 	}
 	
 	public <T> T getValue(int i, Class<T> clazz)
@@ -221,6 +256,24 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	
 	public void add(Object obj)
 	{
+		if (this.nums != null)
+		{
+			if (this.nums.add(obj))
+			{
+				return;
+			}
+			
+			this.unpack();
+			
+		}
+		else if (this.array.isEmpty() && (obj instanceof Long || obj instanceof Double))
+		{
+			this.nums = new PackedNumbers();
+			this.nums.add(obj);
+			
+			return;
+		}
+		
 		this.array.add(obj);
 		
 	}
@@ -228,11 +281,54 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	public void addAll(Object... objs)
 	{
 		for (Object obj : objs)
+		{
+			this.add(obj);
+			
+		}
+		
+	}
+	
+	//Only reachable through the iterator, same as with a plain list.
+	void remove(int i)
+	{
+		if (this.nums != null)
+		{
+			this.unpack();
+			
+		}
+		
+		this.array.remove(i);
+		
+	}
+	
+	private void unpack()
+	{
+		for (Object obj : this.nums)
 		{
 			this.array.add(obj);
 			
 		}
 		
+		this.nums = null;
+		
+	}
+	
+	//True if every element is a long or double, and they're being kept unboxed.
+	public boolean isNumeric()
+	{
+		return this.nums != null;
+	}
+	
+	//Read-only view of the elements, without copying; Null unless the array's numeric and holds nothing but longs.
+	public LongBuffer longView()
+	{
+		return this.nums == null ? null : this.nums.longView();
+	}
+	
+	//Read-only view of the elements, without copying; Null unless the array's numeric and has at least one double in it.
+	public DoubleBuffer doubleView()
+	{
+		return this.nums == null ? null : this.nums.doubleView();
 	}
 	
 	public <T> T[] toArray(T[] ret, Class<T> clazz)
@@ -265,6 +361,13 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	{
 		DoubleBuffer ret = BufferHelper.createDoubleBuffer(this.length());
 		
+		if (this.nums != null)
+		{
+			this.nums.copyTo(ret);
+			
+			return ret;
+		}
+		
 		for (int c = 0; c < this.length(); c++)
 		{
 			ret.put(this.getDouble(c));
@@ -304,6 +407,13 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 	{
 		LongBuffer ret = BufferHelper.createLongBuffer(this.length());
 		
+		if (this.nums != null)
+		{
+			this.nums.copyTo(ret);
+			
+			return ret;
+		}
+		
 		for (int c = 0; c < this.length(); c++)
 		{
 			ret.put(this.getLong(c));
@@ -326,4 +436,44 @@ public class JsonArray implements IJsonSerializer, Iterable<Object>
 		return ret;
 	}
 	
+	//Walks the array by index, for storage that isn't a plain list.
+	class Cursor implements Iterator<Object>
+	{
+		private int next = 0;
+		private boolean removable = false;
+		
+		@Override
+		public boolean hasNext()
+		{
+			return this.next < JsonArray.this.length();
+		}
+		
+		@Override
+		public Object next()
+		{
+			if (!this.hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			
+			this.removable = true;
+			
+			return JsonArray.this.getValue(this.next++);
+		}
+		
+		@Override
+		public void remove()
+		{
+			if (!this.removable)
+			{
+				throw new IllegalStateException();
+			}
+			
+			JsonArray.this.remove(--this.next);
+			this.removable = false;
+			
+		}
+		
+	}
+	
 }
@@ -0,0 +1,1650 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * 
+ * Maps JSON objects onto plain classes and records, and back.
+ * <p>
+ * A class' fields (or a record's components) are walked once, the first time its binder's requested; After that, every
+ * field is read and written through {@link MethodHandle}s, so binding an object never touches reflection.
+ * <br>Objects can be bound from a {@link JsonObject}, or straight off an {@link IJsonReader} without building a tree first;
+ * Keys that don't match a field are skipped, and fields without a key are left alone.
+ * <br>Supported field types are primitives and their boxes, strings, enums (by name), arrays, collections, maps with string
+ * keys, {@link JsonObject}s, {@link JsonArray}s, plain {@link Object}s (kept as whatever the parser makes), and other bound classes.
+ * <br>Numbers have to fit the field they're going into: Integers can't overflow or have a fraction, and floats can't
+ * overflow. Anything that doesn't fit, or is the wrong type altogether, throws a {@link JsonParseException}.
+ * <br>Static and transient fields are ignored, and final fields are only ever written out. Plain classes need a no-args
+ * constructor, which doesn't have to be public.
+ * 
+ * @author Elusivehawk
+ */
+public final class JsonBinder<T>
+{
+	private static final ClassValue<JsonBinder<?>> CACHE = new ClassValue<JsonBinder<?>>()
+	{
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		@Override
+		protected JsonBinder<?> computeValue(Class<?> type)
+		{
+			return new JsonBinder(type);
+		}
+		
+	};
+	//Records only exist on Java 16 and up, so everything about them is looked up reflectively.
+	private static final Method IS_RECORD, GET_COMPONENTS, COMPONENT_NAME, COMPONENT_TYPE, COMPONENT_ACCESSOR;
+	
+	static
+	{
+		Method[] ms = new Method[5];
+		
+		try
+		{
+			Class<?> comp = Class.forName("java.lang.reflect.RecordComponent");
+			
+			ms[0] = Class.class.getMethod("isRecord");
+			ms[1] = Class.class.getMethod("getRecordComponents");
+			ms[2] = comp.getMethod("getName");
+			ms[3] = comp.getMethod("getGenericType");
+			ms[4] = comp.getMethod("getAccessor");
+			
+		}
+		catch (ReflectiveOperationException e){}
+		
+		IS_RECORD = ms[0];
+		GET_COMPONENTS = ms[1];
+		COMPONENT_NAME = ms[2];
+		COMPONENT_TYPE = ms[3];
+		COMPONENT_ACCESSOR = ms[4];
+		
+	}
+	
+	private final Class<T> type;
+	private final boolean record;
+	private final MethodHandle ctor;
+	private final Property[] props;
+	private final Map<String, Property> names = new HashMap<String, Property>();
+	private final Object[] defaults;
+	
+	@SuppressWarnings("unqualified-field-access")
+	private JsonBinder(Class<T> clazz)
+	{
+		type = clazz;
+		record = isRecord(clazz);
+		
+		if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()) || clazz.isPrimitive() || clazz.isArray() || clazz.isEnum())
+		{
+			throw new IllegalArgumentException(String.format("Can't bind %s", clazz.getName()));
+		}
+		
+		try
+		{
+			props = record ? recordProperties(clazz) : fieldProperties(clazz);
+			
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalArgumentException(String.format("Can't bind %s", clazz.getName()), e);
+		}
+		
+		defaults = new Object[props.length];
+		
+		for (Property p : props)
+		{
+			if (names.put(p.name, p) != null)
+			{
+				throw new IllegalArgumentException(String.format("Duplicate field name in %s: %s", clazz.getName(), p.name));
+			}
+			
+			defaults[p.index] = p.codec.dflt;
+			
+		}
+		
+		ctor = record ? recordConstructor(clazz, props) : constructor(clazz);
+		
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <T> JsonBinder<T> of(Class<T> type)
+	{
+		return (JsonBinder<T>)CACHE.get(type);
+	}
+	
+	public Class<T> getType()
+	{
+		return this.type;
+	}
+	
+	public T fromJson(JsonObject json)
+	{
+		if (json == null)
+		{
+			return null;
+		}
+		
+		try
+		{
+			return this.type.cast(this.convert(json));
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+	}
+	
+	public JsonObject toJson(T obj)
+	{
+		if (obj == null)
+		{
+			return null;
+		}
+		
+		try
+		{
+			return this.toTree(obj);
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+	}
+	
+	//Reads a whole UTF-8 document, which has to be a single object.
+	public T read(ByteBuffer buf) throws JsonParseException
+	{
+		try (JsonByteReader r = new JsonByteReader(buf))
+		{
+			T ret = this.read(r);
+			
+			if (r.next() != EnumJsonToken.END_DOCUMENT)
+			{
+				throw r.error("Found trailing data after the document");
+			}
+			
+			return ret;
+		}
+		
+	}
+	
+	//Reads the object starting at the reader's current token, or its next one if nothing's been read yet; Null comes back as null.
+	public T read(IJsonReader r) throws JsonParseException
+	{
+		if (r.current() == null)
+		{
+			r.next();
+			
+		}
+		
+		try
+		{
+			return this.type.cast(this.readObject(r));
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+	}
+	
+	//Reads an array of objects, the same way read() would.
+	public List<T> readList(IJsonReader r) throws JsonParseException
+	{
+		if (r.current() == null)
+		{
+			r.next();
+			
+		}
+		
+		if (r.current() != EnumJsonToken.BEGIN_ARRAY)
+		{
+			throw new JsonParseException("Was expecting an array, found %s", r.current());
+		}
+		
+		List<T> ret = new ArrayList<T>();
+		
+		while (r.next() != EnumJsonToken.END_ARRAY)
+		{
+			ret.add(this.read(r));
+			
+		}
+		
+		return ret;
+	}
+	
+	public void write(T obj, JsonWriter w)
+	{
+		try
+		{
+			this.writeObject(obj, w);
+			
+		}
+		catch (RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new RuntimeException(e);
+		}
+		
+	}
+	
+	private Object readObject(IJsonReader r) throws Throwable
+	{
+		EnumJsonToken tkn = r.current();
+		
+		if (tkn == EnumJsonToken.NULL)
+		{
+			return null;
+		}
+		
+		if (tkn != EnumJsonToken.BEGIN_OBJECT)
+		{
+			throw new JsonParseException("Was expecting an object for %s, found %s", this.type.getName(), tkn);
+		}
+		
+		Object[] args = this.record ? this.defaults.clone() : null;
+		Object ret = this.record ? null : this.ctor.invokeExact();
+		int next = 0;
+		
+		while (r.next() != EnumJsonToken.END_OBJECT)
+		{
+			String name = r.getName();
+			//Keys usually come in the same order as the fields, so check the next one before looking it up.
+			Property p = next < this.props.length && this.props[next].name.equals(name) ? this.props[next] : this.names.get(name);
+			
+			if (p == null || (!this.record && p.set == null))
+			{
+				r.skipValue();
+				continue;
+			}
+			
+			r.next();
+			
+			if (this.record)
+			{
+				args[p.index] = p.codec.read(r);
+				
+			}
+			else
+			{
+				p.read(ret, r);
+				
+			}
+			
+			next = p.index + 1;
+			
+		}
+		
+		return this.record ? (Object)this.ctor.invokeExact(args) : ret;
+	}
+	
+	private Object convert(JsonObject json) throws Throwable
+	{
+		Object[] args = this.record ? this.defaults.clone() : null;
+		Object ret = this.record ? null : this.ctor.invokeExact();
+		
+		for (Property p : this.props)
+		{
+			if ((!this.record && p.set == null) || !json.hasKey(p.name))
+			{
+				continue;
+			}
+			
+			Object v = p.codec.convert(json.getValue(p.name));
+			
+			if (this.record)
+			{
+				args[p.index] = v;
+				
+			}
+			else
+			{
+				p.set.invokeExact(ret, v);
+				
+			}
+			
+		}
+		
+		return this.record ? (Object)this.ctor.invokeExact(args) : ret;
+	}
+	
+	private JsonObject toTree(Object obj) throws Throwable
+	{
+		JsonObject ret = new JsonObject();
+		
+		for (Property p : this.props)
+		{
+			ret.add(p.name, p.codec.toTree(p.get.invokeExact(obj)));
+			
+		}
+		
+		return ret;
+	}
+	
+	private void writeObject(Object obj, JsonWriter w) throws Throwable
+	{
+		if (obj == null)
+		{
+			w.nullValue();
+			return;
+		}
+		
+		w.beginObject();
+		
+		for (Property p : this.props)
+		{
+			w.name(p.name);
+			p.write(obj, w);
+			
+		}
+		
+		w.endObject();
+		
+	}
+	
+	private static boolean isRecord(Class<?> clazz)
+	{
+		try
+		{
+			return IS_RECORD != null && ((Boolean)IS_RECORD.invoke(clazz)).booleanValue();
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return false;
+		}
+		
+	}
+	
+	private static Property[] fieldProperties(Class<?> clazz) throws ReflectiveOperationException
+	{
+		List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+		
+		for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass())
+		{
+			hierarchy.add(0, c);
+			
+		}
+		
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		List<Property> ret = new ArrayList<Property>();
+		
+		for (Class<?> c : hierarchy)
+		{
+			for (Field f : c.getDeclaredFields())
+			{
+				int mod = f.getModifiers();
+				
+				if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic())
+				{
+					continue;
+				}
+				
+				f.setAccessible(true);
+				
+				ret.add(Property.create(f.getName(), ret.size(), f.getType(), codecFor(f.getGenericType()),
+						lookup.unreflectGetter(f), Modifier.isFinal(mod) ? null : lookup.unreflectSetter(f)));
+						
+			}
+			
+		}
+		
+		return ret.toArray(new Property[ret.size()]);
+	}
+	
+	private static Property[] recordProperties(Class<?> clazz) throws ReflectiveOperationException
+	{
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		Object[] comps = (Object[])GET_COMPONENTS.invoke(clazz);
+		Property[] ret = new Property[comps.length];
+		
+		for (int c = 0; c < comps.length; c++)
+		{
+			Method acc = (Method)COMPONENT_ACCESSOR.invoke(comps[c]);
+			
+			acc.setAccessible(true);
+			
+			ret[c] = Property.create((String)COMPONENT_NAME.invoke(comps[c]), c, acc.getReturnType(),
+					codecFor((Type)COMPONENT_TYPE.invoke(comps[c])), lookup.unreflect(acc), null);
+					
+		}
+		
+		return ret;
+	}
+	
+	//Adapted to ()Object, so it can be called with invokeExact.
+	private static MethodHandle constructor(Class<?> clazz)
+	{
+		try
+		{
+			Constructor<?> c = clazz.getDeclaredConstructor();
+			
+			c.setAccessible(true);
+			
+			return MethodHandles.lookup().unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalArgumentException(String.format("%s needs a no-args constructor", clazz.getName()), e);
+		}
+		
+	}
+	
+	//The canonical constructor, adapted to (Object[])Object.
+	private static MethodHandle recordConstructor(Class<?> clazz, Property[] props)
+	{
+		Class<?>[] params = new Class<?>[props.length];
+		
+		for (int c = 0; c < params.length; c++)
+		{
+			params[c] = props[c].type;
+			
+		}
+		
+		try
+		{
+			Constructor<?> c = clazz.getDeclaredConstructor(params);
+			
+			c.setAccessible(true);
+			
+			return MethodHandles.lookup().unreflectConstructor(c).asSpreader(Object[].class, params.length)
+					.asType(MethodType.methodType(Object.class, Object[].class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalArgumentException(String.format("Can't find %s's canonical constructor", clazz.getName()), e);
+		}
+		
+	}
+	
+	private static Class<?> raw(Type t)
+	{
+		if (t instanceof Class)
+		{
+			return (Class<?>)t;
+		}
+		
+		if (t instanceof ParameterizedType)
+		{
+			return raw(((ParameterizedType)t).getRawType());
+		}
+		
+		if (t instanceof GenericArrayType)
+		{
+			return Array.newInstance(raw(((GenericArrayType)t).getGenericComponentType()), 0).getClass();
+		}
+		
+		if (t instanceof WildcardType)
+		{
+			return raw(((WildcardType)t).getUpperBounds()[0]);
+		}
+		
+		if (t instanceof TypeVariable)
+		{
+			return raw(((TypeVariable<?>)t).getBounds()[0]);
+		}
+		
+		return Object.class;
+	}
+	
+	private static Type typeArg(Type t, int i)
+	{
+		return t instanceof ParameterizedType ? ((ParameterizedType)t).getActualTypeArguments()[i] : Object.class;
+	}
+	
+	@SuppressWarnings("boxing")
+	static Codec codecFor(Type t)
+	{
+		Class<?> c = raw(t);
+		
+		if (c == boolean.class || c == Boolean.class)
+		{
+			return new BooleanCodec(c.isPrimitive() ? Boolean.FALSE : null);
+		}
+		
+		if (c == byte.class || c == Byte.class)
+		{
+			return new NumberCodec(c, Byte.MIN_VALUE, Byte.MAX_VALUE, Number::byteValue);
+		}
+		
+		if (c == short.class || c == Short.class)
+		{
+			return new NumberCodec(c, Short.MIN_VALUE, Short.MAX_VALUE, Number::shortValue);
+		}
+		
+		if (c == int.class || c == Integer.class)
+		{
+			return new NumberCodec(c, Integer.MIN_VALUE, Integer.MAX_VALUE, Number::intValue);
+		}
+		
+		if (c == long.class || c == Long.class)
+		{
+			return new NumberCodec(c, Long.MIN_VALUE, Long.MAX_VALUE, Number::longValue);
+		}
+		
+		if (c == float.class || c == Float.class)
+		{
+			return new NumberCodec(c, Number::floatValue);
+		}
+		
+		if (c == double.class || c == Double.class)
+		{
+			return new NumberCodec(c, Number::doubleValue);
+		}
+		
+		if (c == char.class || c == Character.class)
+		{
+			return new CharCodec(c.isPrimitive() ? '\0' : null);
+		}
+		
+		if (c == String.class)
+		{
+			return new StringCodec();
+		}
+		
+		if (c.isEnum())
+		{
+			return new EnumCodec(c);
+		}
+		
+		if (c == Object.class || c == JsonObject.class || c == JsonArray.class || c == Number.class)
+		{
+			return new TreeCodec(c);
+		}
+		
+		if (c.isArray())
+		{
+			Type comp = t instanceof GenericArrayType ? ((GenericArrayType)t).getGenericComponentType() : c.getComponentType();
+			
+			return new ArrayCodec(c.getComponentType(), codecFor(comp));
+		}
+		
+		if (Collection.class.isAssignableFrom(c))
+		{
+			MethodHandle make;
+			
+			if (c.isAssignableFrom(ArrayList.class))
+			{
+				make = constructor(ArrayList.class);
+				
+			}
+			else if (c.isAssignableFrom(LinkedHashSet.class))
+			{
+				make = constructor(LinkedHashSet.class);
+				
+			}
+			else if (c.isAssignableFrom(TreeSet.class) && SortedSet.class.isAssignableFrom(c))
+			{
+				make = constructor(TreeSet.class);
+				
+			}
+			else
+			{
+				make = constructor(c);
+				
+			}
+			
+			return new CollectionCodec(make, codecFor(typeArg(t, 0)));
+		}
+		
+		if (Map.class.isAssignableFrom(c))
+		{
+			Class<?> key = raw(typeArg(t, 0));
+			
+			if (key != String.class && key != Object.class)
+			{
+				throw new IllegalArgumentException(String.format("Map keys have to be strings: %s", t));
+			}
+			
+			MethodHandle make;
+			
+			if (c.isAssignableFrom(LinkedHashMap.class))
+			{
+				make = constructor(LinkedHashMap.class);
+				
+			}
+			else if (c.isAssignableFrom(TreeMap.class) && SortedMap.class.isAssignableFrom(c))
+			{
+				make = constructor(TreeMap.class);
+				
+			}
+			else
+			{
+				make = constructor(c);
+				
+			}
+			
+			return new MapCodec(make, codecFor(typeArg(t, 1)));
+		}
+		
+		return new BeanCodec(c);
+	}
+	
+	private static JsonParseException mismatch(String expected, IJsonReader r)
+	{
+		return r.error("Was expecting %s, found %s", expected, r.current());
+	}
+	
+	private static JsonParseException mismatch(Class<?> expected, Object found)
+	{
+		return new JsonParseException("Cannot convert %s to %s", found.getClass(), expected);
+	}
+	
+	//Reads the current number as a whole one between min and max; Ones written with a fraction or exponent are fine, as long as they're whole.
+	@SuppressWarnings("boxing")
+	static long readIntegral(IJsonReader r, long min, long max, Class<?> type) throws JsonParseException
+	{
+		long ret = r.getLong();
+		
+		//Doubles are truncated and clamped on the way to a long, so anything that was has to be caught; Only the type tells 2^63 apart from Long.MAX_VALUE.
+		boolean whole = ret == Long.MAX_VALUE ? r.getNumber() instanceof Long : ret == r.getDouble();
+		
+		if (!whole || ret < min || ret > max)
+		{
+			throw r.error("%s doesn't fit in %s", r.getString(), type.getSimpleName());
+		}
+		
+		return ret;
+	}
+	
+	//Same as above, for numbers the parser already built.
+	@SuppressWarnings("boxing")
+	static long convertIntegral(Number n, long min, long max, Class<?> type)
+	{
+		long ret = n.longValue();
+		boolean whole = n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte || (ret == n.doubleValue() && ret != Long.MAX_VALUE);
+		
+		if (!whole || ret < min || ret > max)
+		{
+			throw new JsonParseException("%s doesn't fit in %s", n, type.getSimpleName());
+		}
+		
+		return ret;
+	}
+	
+	static class Property
+	{
+		final String name;
+		final int index;
+		final Class<?> type;
+		final Codec codec;
+		//Boxed, as (Object)Object and (Object, Object)void; The setter's null for records and final fields.
+		final MethodHandle get, set;
+		
+		@SuppressWarnings("unqualified-field-access")
+		Property(String n, int i, Class<?> t, Codec c, MethodHandle g, MethodHandle s)
+		{
+			name = n;
+			index = i;
+			type = t;
+			codec = c;
+			get = g.asType(MethodType.methodType(Object.class, Object.class));
+			set = s == null ? null : s.asType(MethodType.methodType(void.class, Object.class, Object.class));
+			
+		}
+		
+		void read(Object obj, IJsonReader r) throws Throwable
+		{
+			this.set.invokeExact(obj, this.codec.read(r));
+			
+		}
+		
+		void write(Object obj, JsonWriter w) throws Throwable
+		{
+			this.codec.write(this.get.invokeExact(obj), w);
+			
+		}
+		
+		//The most common primitives get their own handles, so they're never boxed while streaming.
+		static Property create(String name, int i, Class<?> t, Codec c, MethodHandle g, MethodHandle s)
+		{
+			if (t == int.class)
+			{
+				return new Property(name, i, t, c, g, s)
+				{
+					final MethodHandle getInt = g.asType(MethodType.methodType(int.class, Object.class)),
+							setInt = s == null ? null : s.asType(MethodType.methodType(void.class, Object.class, int.class));
+							
+					@Override
+					void read(Object obj, IJsonReader r) throws Throwable
+					{
+						if (r.current() != EnumJsonToken.NUMBER)
+						{
+							super.read(obj, r);
+							return;
+						}
+						
+						this.setInt.invokeExact(obj, (int)readIntegral(r, Integer.MIN_VALUE, Integer.MAX_VALUE, int.class));
+						
+					}
+					
+					@Override
+					void write(Object obj, JsonWriter w) throws Throwable
+					{
+						w.value((long)(int)this.getInt.invokeExact(obj));
+						
+					}
+					
+				};
+			}
+			
+			if (t == long.class)
+			{
+				return new Property(name, i, t, c, g, s)
+				{
+					final MethodHandle getLong = g.asType(MethodType.methodType(long.class, Object.class)),
+							setLong = s == null ? null : s.asType(MethodType.methodType(void.class, Object.class, long.class));
+							
+					@Override
+					void read(Object obj, IJsonReader r) throws Throwable
+					{
+						if (r.current() != EnumJsonToken.NUMBER)
+						{
+							super.read(obj, r);
+							return;
+						}
+						
+						this.setLong.invokeExact(obj, readIntegral(r, Long.MIN_VALUE, Long.MAX_VALUE, long.class));
+						
+					}
+					
+					@Override
+					void write(Object obj, JsonWriter w) throws Throwable
+					{
+						w.value((long)this.getLong.invokeExact(obj));
+						
+					}
+					
+				};
+			}
+			
+			if (t == double.class)
+			{
+				return new Property(name, i, t, c, g, s)
+				{
+					final MethodHandle getDouble = g.asType(MethodType.methodType(double.class, Object.class)),
+							setDouble = s == null ? null : s.asType(MethodType.methodType(void.class, Object.class, double.class));
+							
+					@Override
+					void read(Object obj, IJsonReader r) throws Throwable
+					{
+						if (r.current() != EnumJsonToken.NUMBER)
+						{
+							super.read(obj, r);
+							return;
+						}
+						
+						this.setDouble.invokeExact(obj, r.getDouble());
+						
+					}
+					
+					@Override
+					void write(Object obj, JsonWriter w) throws Throwable
+					{
+						w.value((double)this.getDouble.invokeExact(obj));
+						
+					}
+					
+				};
+			}
+			
+			if (t == boolean.class)
+			{
+				return new Property(name, i, t, c, g, s)
+				{
+					final MethodHandle getBool = g.asType(MethodType.methodType(boolean.class, Object.class)),
+							setBool = s == null ? null : s.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+							
+					@Override
+					void read(Object obj, IJsonReader r) throws Throwable
+					{
+						if (r.current() != EnumJsonToken.BOOLEAN)
+						{
+							super.read(obj, r);
+							return;
+						}
+						
+						this.setBool.invokeExact(obj, r.getBoolean());
+						
+					}
+					
+					@Override
+					void write(Object obj, JsonWriter w) throws Throwable
+					{
+						w.value((boolean)this.getBool.invokeExact(obj));
+						
+					}
+					
+				};
+			}
+			
+			return new Property(name, i, t, c, g, s);
+		}
+		
+	}
+	
+	static abstract class Codec
+	{
+		//What missing keys and nulls turn into; Only primitives have one.
+		final Object dflt;
+		
+		@SuppressWarnings("unqualified-field-access")
+		Codec(Object d)
+		{
+			dflt = d;
+			
+		}
+		
+		//Reads the value the reader's on, leaving it on that value's last token.
+		abstract Object read(IJsonReader r) throws Throwable;
+		
+		//Converts a value built by the parser.
+		abstract Object convert(Object json) throws Throwable;
+		
+		abstract void write(Object obj, JsonWriter w) throws Throwable;
+		
+		//Converts a value into something the parser could've built.
+		Object toTree(Object obj) throws Throwable
+		{
+			return obj;
+		}
+		
+	}
+	
+	static final class BooleanCodec extends Codec
+	{
+		BooleanCodec(Object d)
+		{
+			super(d);
+			
+		}
+		
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			switch (r.current())
+			{
+				case NULL: return this.dflt;
+				case BOOLEAN: return Boolean.valueOf(r.getBoolean());
+				default: throw mismatch("a boolean", r);
+			}
+			
+		}
+		
+		@Override
+		Object convert(Object json)
+		{
+			if (json == null)
+			{
+				return this.dflt;
+			}
+			
+			if (json instanceof Boolean)
+			{
+				return json;
+			}
+			
+			throw mismatch(Boolean.class, json);
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w)
+		{
+			w.value(obj);
+			
+		}
+		
+	}
+	
+	static final class NumberCodec extends Codec
+	{
+		private final Class<?> type;
+		private final boolean floating;
+		private final long min, max;
+		private final Function<Number, Object> narrow;
+		
+		//For floats and doubles.
+		NumberCodec(Class<?> t, Function<Number, Object> n)
+		{
+			this(t, true, 0L, 0L, n);
+			
+		}
+		
+		//For integers, which have to be whole and between lo and hi.
+		NumberCodec(Class<?> t, long lo, long hi, Function<Number, Object> n)
+		{
+			this(t, false, lo, hi, n);
+			
+		}
+		
+		@SuppressWarnings({"unqualified-field-access", "boxing"})
+		private NumberCodec(Class<?> t, boolean fp, long lo, long hi, Function<Number, Object> n)
+		{
+			super(t.isPrimitive() ? n.apply(0) : null);
+			
+			type = t;
+			floating = fp;
+			min = lo;
+			max = hi;
+			narrow = n;
+			
+		}
+		
+		@SuppressWarnings("boxing")
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			switch (r.current())
+			{
+				case NULL: return this.dflt;
+				case NUMBER: break;
+				default: throw mismatch("a number", r);
+			}
+			
+			if (!this.floating)
+			{
+				return this.narrow.apply(readIntegral(r, this.min, this.max, this.type));
+			}
+			
+			Object ret = this.narrow.apply(r.getDouble());
+			
+			if (overflowed(ret))
+			{
+				throw r.error("%s doesn't fit in %s", r.getString(), this.type.getSimpleName());
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		Object convert(Object json)
+		{
+			if (json == null)
+			{
+				return this.dflt;
+			}
+			
+			if (!(json instanceof Number))
+			{
+				throw mismatch(this.type, json);
+			}
+			
+			if (!this.floating)
+			{
+				return this.narrow.apply(convertIntegral((Number)json, this.min, this.max, this.type));
+			}
+			
+			Object ret = this.narrow.apply((Number)json);
+			
+			if (overflowed(ret))
+			{
+				throw new JsonParseException("%s doesn't fit in %s", json, this.type.getSimpleName());
+			}
+			
+			return ret;
+		}
+		
+		//Parsed numbers are always finite, so only floats can overflow.
+		private static boolean overflowed(Object value)
+		{
+			return value instanceof Float && ((Float)value).isInfinite();
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w)
+		{
+			w.value(obj);
+			
+		}
+		
+		@Override
+		Object toTree(Object obj)
+		{
+			//The parser only ever makes longs and doubles.
+			if (obj == null)
+			{
+				return null;
+			}
+			
+			//Going through the float's own decimal form keeps 0.1f from turning into 0.10000000149011612.
+			if (obj instanceof Float)
+			{
+				return Double.parseDouble(obj.toString());
+			}
+			
+			return this.floating ? (Object)((Number)obj).doubleValue() : (Object)((Number)obj).longValue();
+		}
+		
+	}
+	
+	static final class CharCodec extends Codec
+	{
+		CharCodec(Object d)
+		{
+			super(d);
+			
+		}
+		
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			switch (r.current())
+			{
+				case NULL: return this.dflt;
+				case STRING: return this.convert(r.getString());
+				default: throw mismatch("a single character", r);
+			}
+			
+		}
+		
+		@Override
+		Object convert(Object json)
+		{
+			if (json == null)
+			{
+				return this.dflt;
+			}
+			
+			if (json instanceof String && ((String)json).length() == 1)
+			{
+				return Character.valueOf(((String)json).charAt(0));
+			}
+			
+			throw mismatch(Character.class, json);
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w)
+		{
+			w.value(obj == null ? null : obj.toString());
+			
+		}
+		
+		@Override
+		Object toTree(Object obj)
+		{
+			return obj == null ? null : obj.toString();
+		}
+		
+	}
+	
+	static final class StringCodec extends Codec
+	{
+		StringCodec()
+		{
+			super(null);
+			
+		}
+		
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			switch (r.current())
+			{
+				case NULL: return null;
+				case STRING: return r.getString();
+				default: throw mismatch("a string", r);
+			}
+			
+		}
+		
+		@Override
+		Object convert(Object json)
+		{
+			if (json == null || json instanceof String)
+			{
+				return json;
+			}
+			
+			throw mismatch(String.class, json);
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w)
+		{
+			w.value((String)obj);
+			
+		}
+		
+	}
+	
+	static final class EnumCodec extends Codec
+	{
+		private final Class<?> type;
+		private final Map<String, Object> values = new HashMap<String, Object>();
+		
+		@SuppressWarnings("unqualified-field-access")
+		EnumCodec(Class<?> t)
+		{
+			super(null);
+			
+			type = t;
+			
+			for (Object e : t.getEnumConstants())
+			{
+				values.put(((Enum<?>)e).name(), e);
+				
+			}
+			
+		}
+		
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			switch (r.current())
+			{
+				case NULL: return null;
+				case STRING: return this.convert(r.getString());
+				default: throw mismatch("an enum name", r);
+			}
+			
+		}
+		
+		@Override
+		Object convert(Object json)
+		{
+			if (json == null)
+			{
+				return null;
+			}
+			
+			Object ret = this.values.get(json);
+			
+			if (ret == null)
+			{
+				throw mismatch(this.type, json);
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w)
+		{
+			w.value(obj == null ? null : ((Enum<?>)obj).name());
+			
+		}
+		
+		@Override
+		Object toTree(Object obj)
+		{
+			return obj == null ? null : ((Enum<?>)obj).name();
+		}
+		
+	}
+	
+	//Objects, arrays, numbers and anything else are kept the way the parser builds them.
+	static final class TreeCodec extends Codec
+	{
+		private final Class<?> type;
+		
+		@SuppressWarnings("unqualified-field-access")
+		TreeCodec(Class<?> t)
+		{
+			super(null);
+			
+			type = t;
+			
+		}
+		
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			return this.convert(JsonParser.readValue(r));
+		}
+		
+		@Override
+		Object convert(Object json)
+		{
+			if (json == null || this.type.isInstance(json))
+			{
+				return json;
+			}
+			
+			throw mismatch(this.type, json);
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w)
+		{
+			w.value(obj);
+			
+		}
+		
+	}
+	
+	static final class ArrayCodec extends Codec
+	{
+		private final Class<?> comp;
+		private final Codec elements;
+		
+		@SuppressWarnings("unqualified-field-access")
+		ArrayCodec(Class<?> c, Codec e)
+		{
+			super(null);
+			
+			comp = c;
+			elements = e;
+			
+		}
+		
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			switch (r.current())
+			{
+				case NULL: return null;
+				case BEGIN_ARRAY: break;
+				default: throw mismatch("an array", r);
+			}
+			
+			List<Object> tmp = new ArrayList<Object>();
+			
+			while (r.next() != EnumJsonToken.END_ARRAY)
+			{
+				tmp.add(this.elements.read(r));
+				
+			}
+			
+			return this.toArray(tmp);
+		}
+		
+		@Override
+		Object convert(Object json) throws Throwable
+		{
+			if (json == null)
+			{
+				return null;
+			}
+			
+			if (!(json instanceof JsonArray))
+			{
+				throw mismatch(this.comp, json);
+			}
+			
+			List<Object> tmp = new ArrayList<Object>();
+			
+			for (Object obj : (JsonArray)json)
+			{
+				tmp.add(this.elements.convert(obj));
+				
+			}
+			
+			return this.toArray(tmp);
+		}
+		
+		private Object toArray(List<Object> tmp)
+		{
+			Object ret = Array.newInstance(this.comp, tmp.size());
+			
+			for (int c = 0; c < tmp.size(); c++)
+			{
+				Array.set(ret, c, tmp.get(c));
+				
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w) throws Throwable
+		{
+			if (obj == null)
+			{
+				w.nullValue();
+				return;
+			}
+			
+			w.beginArray();
+			
+			for (int c = 0, len = Array.getLength(obj); c < len; c++)
+			{
+				this.elements.write(Array.get(obj, c), w);
+				
+			}
+			
+			w.endArray();
+			
+		}
+		
+		@Override
+		Object toTree(Object obj) throws Throwable
+		{
+			if (obj == null)
+			{
+				return null;
+			}
+			
+			JsonArray ret = new JsonArray();
+			
+			for (int c = 0, len = Array.getLength(obj); c < len; c++)
+			{
+				ret.add(this.elements.toTree(Array.get(obj, c)));
+				
+			}
+			
+			return ret;
+		}
+		
+	}
+	
+	static final class CollectionCodec extends Codec
+	{
+		private final MethodHandle make;
+		private final Codec elements;
+		
+		@SuppressWarnings("unqualified-field-access")
+		CollectionCodec(MethodHandle m, Codec e)
+		{
+			super(null);
+			
+			make = m;
+			elements = e;
+			
+		}
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			switch (r.current())
+			{
+				case NULL: return null;
+				case BEGIN_ARRAY: break;
+				default: throw mismatch("an array", r);
+			}
+			
+			Collection<Object> ret = (Collection<Object>)(Object)this.make.invokeExact();
+			
+			while (r.next() != EnumJsonToken.END_ARRAY)
+			{
+				ret.add(this.elements.read(r));
+				
+			}
+			
+			return ret;
+		}
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		Object convert(Object json) throws Throwable
+		{
+			if (json == null)
+			{
+				return null;
+			}
+			
+			if (!(json instanceof JsonArray))
+			{
+				throw mismatch(Collection.class, json);
+			}
+			
+			Collection<Object> ret = (Collection<Object>)(Object)this.make.invokeExact();
+			
+			for (Object obj : (JsonArray)json)
+			{
+				ret.add(this.elements.convert(obj));
+				
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w) throws Throwable
+		{
+			if (obj == null)
+			{
+				w.nullValue();
+				return;
+			}
+			
+			w.beginArray();
+			
+			for (Object e : (Collection<?>)obj)
+			{
+				this.elements.write(e, w);
+				
+			}
+			
+			w.endArray();
+			
+		}
+		
+		@Override
+		Object toTree(Object obj) throws Throwable
+		{
+			if (obj == null)
+			{
+				return null;
+			}
+			
+			JsonArray ret = new JsonArray();
+			
+			for (Object e : (Collection<?>)obj)
+			{
+				ret.add(this.elements.toTree(e));
+				
+			}
+			
+			return ret;
+		}
+		
+	}
+	
+	static final class MapCodec extends Codec
+	{
+		private final MethodHandle make;
+		private final Codec values;
+		
+		@SuppressWarnings("unqualified-field-access")
+		MapCodec(MethodHandle m, Codec v)
+		{
+			super(null);
+			
+			make = m;
+			values = v;
+			
+		}
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			switch (r.current())
+			{
+				case NULL: return null;
+				case BEGIN_OBJECT: break;
+				default: throw mismatch("an object", r);
+			}
+			
+			Map<String, Object> ret = (Map<String, Object>)(Object)this.make.invokeExact();
+			
+			while (r.next() != EnumJsonToken.END_OBJECT)
+			{
+				String name = r.getName();
+				
+				r.next();
+				ret.put(name, this.values.read(r));
+				
+			}
+			
+			return ret;
+		}
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		Object convert(Object json) throws Throwable
+		{
+			if (json == null)
+			{
+				return null;
+			}
+			
+			if (!(json instanceof JsonObject))
+			{
+				throw mismatch(Map.class, json);
+			}
+			
+			JsonObject obj = (JsonObject)json;
+			Map<String, Object> ret = (Map<String, Object>)(Object)this.make.invokeExact();
+			
+			for (String key : obj.keys())
+			{
+				ret.put(key, this.values.convert(obj.getValue(key)));
+				
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w) throws Throwable
+		{
+			if (obj == null)
+			{
+				w.nullValue();
+				return;
+			}
+			
+			w.beginObject();
+			
+			for (Entry<?, ?> e : ((Map<?, ?>)obj).entrySet())
+			{
+				w.name(String.valueOf(e.getKey()));
+				this.values.write(e.getValue(), w);
+				
+			}
+			
+			w.endObject();
+			
+		}
+		
+		@Override
+		Object toTree(Object obj) throws Throwable
+		{
+			if (obj == null)
+			{
+				return null;
+			}
+			
+			JsonObject ret = new JsonObject();
+			
+			for (Entry<?, ?> e : ((Map<?, ?>)obj).entrySet())
+			{
+				ret.add(String.valueOf(e.getKey()), this.values.toTree(e.getValue()));
+				
+			}
+			
+			return ret;
+		}
+		
+	}
+	
+	//Looks its binder up on first use, so classes can refer to themselves.
+	static final class BeanCodec extends Codec
+	{
+		private final Class<?> type;
+		private JsonBinder<?> binder = null;
+		
+		@SuppressWarnings("unqualified-field-access")
+		BeanCodec(Class<?> t)
+		{
+			super(null);
+			
+			type = t;
+			
+		}
+		
+		private JsonBinder<?> binder()
+		{
+			JsonBinder<?> ret = this.binder;
+			
+			if (ret == null)
+			{
+				this.binder = ret = of(this.type);
+				
+			}
+			
+			return ret;
+		}
+		
+		@Override
+		Object read(IJsonReader r) throws Throwable
+		{
+			return this.binder().readObject(r);
+		}
+		
+		@Override
+		Object convert(Object json) throws Throwable
+		{
+			if (json == null)
+			{
+				return null;
+			}
+			
+			if (!(json instanceof JsonObject))
+			{
+				throw mismatch(this.type, json);
+			}
+			
+			return this.binder().convert((JsonObject)json);
+		}
+		
+		@Override
+		void write(Object obj, JsonWriter w) throws Throwable
+		{
+			this.binder().writeObject(obj, w);
+			
+		}
+		
+		@Override
+		Object toTree(Object obj) throws Throwable
+		{
+			return obj == null ? null : this.binder().toTree(obj);
+		}
+		
+	}
+	
+}
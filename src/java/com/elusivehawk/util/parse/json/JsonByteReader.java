@@ -0,0 +1,986 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 
+ * {@link IJsonReader} working directly on UTF-8 bytes, from anything that fits in a {@link ByteBuffer}: Arrays, direct buffers,
+ * or memory-mapped files.
+ * <p>
+ * Strings and numbers are only found, not decoded, until they're asked for; A value that's never looked at never becomes a
+ * {@link String}.
+ * <br>Names go through a {@link KeyCache}, so the same key showing up over and over only gets decoded once. Pass the same cache
+ * to many readers (on the same thread) to share it between documents.
+ * <br>The buffer's position and limit are left alone.
+ * 
+ * @author Elusivehawk
+ */
+@SuppressWarnings("boxing")
+public class JsonByteReader implements IJsonReader
+{
+	private static final byte ROOT = 0, ROOT_DONE = 1, OBJ_FIRST = 2, OBJ_NAME = 3, OBJ_VALUE = 4, OBJ_NEXT = 5, ARR_FIRST = 6, ARR_NEXT = 7;
+	
+	private final ByteBuffer bb;
+	private final byte[] array;
+	private final int arrayOff;
+	private int start, end;
+	private final KeyCache keys;
+	private int pos;
+	
+	private byte[] stack = new byte[32];
+	private int depth = 1;
+	
+	private EnumJsonToken tkn = null;
+	private String name = null, str = null;
+	private int valueStart, valueEnd;
+	private boolean escaped = false, bool = false, isFloat = false, hasLong = false, skipping = false;
+	private long longValue = 0L;
+	private byte[] scratch = null;
+	private char[] charScratch = null;
+	
+	public JsonByteReader(byte[] bytes)
+	{
+		this(ByteBuffer.wrap(bytes));
+		
+	}
+	
+	public JsonByteReader(ByteBuffer buf)
+	{
+		this(buf, new KeyCache());
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public JsonByteReader(ByteBuffer buf, KeyCache cache)
+	{
+		assert buf != null && cache != null;
+		
+		bb = buf.duplicate();
+		array = bb.hasArray() ? bb.array() : null;
+		arrayOff = bb.hasArray() ? bb.arrayOffset() : 0;
+		end = bb.limit();
+		keys = cache;
+		stack[0] = ROOT;
+		
+		int from = bb.position();
+		
+		//Byte order marks aren't allowed by the spec, but they're out there.
+		if (end - from >= 3 && this.byteAt(from) == (byte)0xEF && this.byteAt(from + 1) == (byte)0xBB && this.byteAt(from + 2) == (byte)0xBF)
+		{
+			from += 3;
+			
+		}
+		
+		start = from;
+		pos = from;
+		
+	}
+	
+	@Override
+	public EnumJsonToken next() throws JsonParseException
+	{
+		int c;
+		
+		switch (this.stack[this.depth - 1])
+		{
+			case ROOT:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == -1)
+				{
+					throw this.error("Empty document");
+				}
+				
+				this.stack[0] = ROOT_DONE;
+				
+				return this.readValue(c);
+			}
+			case ROOT_DONE:
+			{
+				if (this.skipWhitespace() != -1)
+				{
+					throw this.error("Unexpected data after the root value");
+				}
+				
+				return this.tkn = EnumJsonToken.END_DOCUMENT;
+			}
+			case OBJ_FIRST:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == '}')
+				{
+					return this.pop(EnumJsonToken.END_OBJECT);
+				}
+				
+				return this.readName(c);
+			}
+			case OBJ_NAME: return this.readName(this.skipWhitespace());
+			case OBJ_VALUE:
+			{
+				if (this.skipWhitespace() != ':')
+				{
+					//Names aren't decoded while skipping, so it's done here instead.
+					throw this.error("Was expecting ':' after \"%s\"", this.skipping ? this.decode(this.valueStart, this.valueEnd, true) : this.name);
+				}
+				
+				this.pos++;
+				this.stack[this.depth - 1] = OBJ_NEXT;
+				
+				return this.readValue(this.skipWhitespace());
+			}
+			case OBJ_NEXT:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == '}')
+				{
+					return this.pop(EnumJsonToken.END_OBJECT);
+				}
+				
+				if (c != ',')
+				{
+					throw this.error("Was expecting ',' or '}'");
+				}
+				
+				this.pos++;
+				
+				return this.readName(this.skipWhitespace());
+			}
+			case ARR_FIRST:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == ']')
+				{
+					return this.pop(EnumJsonToken.END_ARRAY);
+				}
+				
+				this.stack[this.depth - 1] = ARR_NEXT;
+				
+				return this.readValue(c);
+			}
+			case ARR_NEXT:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == ']')
+				{
+					return this.pop(EnumJsonToken.END_ARRAY);
+				}
+				
+				if (c != ',')
+				{
+					throw this.error("Was expecting ',' or ']'");
+				}
+				
+				this.pos++;
+				
+				return this.readValue(this.skipWhitespace());
+			}
+			default: throw new IllegalStateException();
+		}
+		
+	}
+	
+	@Override
+	public EnumJsonToken current()
+	{
+		return this.tkn;
+	}
+	
+	@Override
+	public int getDepth()
+	{
+		return this.depth - 1;
+	}
+	
+	@Override
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	@Override
+	public String getString() throws JsonParseException
+	{
+		if (this.tkn == EnumJsonToken.NAME)
+		{
+			return this.name;
+		}
+		
+		if (this.tkn != EnumJsonToken.STRING && this.tkn != EnumJsonToken.NUMBER)
+		{
+			throw this.error("Was expecting a string, found %s", this.tkn);
+		}
+		
+		if (this.str == null)
+		{
+			this.str = this.decode(this.valueStart, this.valueEnd, this.escaped);
+			
+		}
+		
+		return this.str;
+	}
+	
+	@Override
+	public Number getNumber() throws JsonParseException
+	{
+		this.checkNumber();
+		
+		return this.hasLong ? (Number)this.longValue : (Number)this.parseDouble();
+	}
+	
+	@Override
+	public long getLong() throws JsonParseException
+	{
+		this.checkNumber();
+		
+		return this.hasLong ? this.longValue : (long)this.parseDouble();
+	}
+	
+	@Override
+	public double getDouble() throws JsonParseException
+	{
+		this.checkNumber();
+		
+		return this.hasLong ? this.longValue : this.parseDouble();
+	}
+	
+	@Override
+	public boolean getBoolean() throws JsonParseException
+	{
+		if (this.tkn != EnumJsonToken.BOOLEAN)
+		{
+			throw this.error("Was expecting a boolean, found %s", this.tkn);
+		}
+		
+		return this.bool;
+	}
+	
+	//Whether the current number had a fraction or exponent, or was too big for a long.
+	public boolean isFloatingPoint()
+	{
+		return this.isFloat || !this.hasLong;
+	}
+	
+	@Override
+	public void skipValue() throws JsonParseException
+	{
+		this.skipping = true;
+		
+		try
+		{
+			if (this.tkn == EnumJsonToken.NAME)
+			{
+				this.next();
+				
+			}
+			
+			if (this.tkn == EnumJsonToken.BEGIN_OBJECT || this.tkn == EnumJsonToken.BEGIN_ARRAY)
+			{
+				int target = this.depth - 1;
+				
+				while (this.depth > target)
+				{
+					this.next();
+					
+				}
+				
+			}
+			
+		}
+		finally
+		{
+			this.skipping = false;
+			
+		}
+		
+	}
+	
+	@Override
+	public void close(){}
+	
+	//Points the reader at part of the same buffer; JsonTape walks documents with skipping on, then decodes values one at a time.
+	void reset(int from, int to, boolean skip)
+	{
+		this.reset(from, from, to, skip);
+		
+	}
+	
+	//Same as above, but counts lines and columns from origin, so errors point at the right spot in the whole document.
+	void reset(int origin, int from, int to, boolean skip)
+	{
+		this.start = origin;
+		this.pos = from;
+		this.end = to;
+		this.depth = 1;
+		this.stack[0] = ROOT;
+		this.tkn = null;
+		this.str = null;
+		this.skipping = skip;
+		
+	}
+	
+	//Where the current name, string or number starts and ends; Strings don't include their quotes.
+	int tokenStart()
+	{
+		return this.valueStart;
+	}
+	
+	int tokenEnd()
+	{
+		return this.valueEnd;
+	}
+	
+	int position()
+	{
+		return this.pos;
+	}
+	
+	private void checkNumber() throws JsonParseException
+	{
+		if (this.tkn != EnumJsonToken.NUMBER)
+		{
+			throw this.error("Was expecting a number, found %s", this.tkn);
+		}
+		
+	}
+	
+	private EnumJsonToken pop(EnumJsonToken endTkn)
+	{
+		this.pos++;
+		this.depth--;
+		
+		return this.tkn = endTkn;
+	}
+	
+	private void push(byte state) throws JsonParseException
+	{
+		if (this.depth > JsonReader.MAX_DEPTH)
+		{
+			throw this.error("Nested deeper than %s levels", JsonReader.MAX_DEPTH);
+		}
+		
+		if (this.depth == this.stack.length)
+		{
+			this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+			
+		}
+		
+		this.stack[this.depth++] = state;
+		
+	}
+	
+	private EnumJsonToken readName(int c) throws JsonParseException
+	{
+		if (c != '"')
+		{
+			throw this.error("Was expecting a key");
+		}
+		
+		this.pos++;
+		
+		int from = this.pos;
+		boolean esc = this.scanString();
+		
+		this.valueStart = from;
+		this.valueEnd = this.pos - 1;
+		
+		if (!this.skipping)
+		{
+			this.name = esc ? this.decode(from, this.pos - 1, true) : this.keys.get(this, from, this.pos - 1);
+			
+		}
+		
+		this.stack[this.depth - 1] = OBJ_VALUE;
+		
+		return this.tkn = EnumJsonToken.NAME;
+	}
+	
+	private EnumJsonToken readValue(int c) throws JsonParseException
+	{
+		this.str = null;
+		
+		switch (c)
+		{
+			case '{': this.pos++; this.push(OBJ_FIRST); return this.tkn = EnumJsonToken.BEGIN_OBJECT;
+			case '[': this.pos++; this.push(ARR_FIRST); return this.tkn = EnumJsonToken.BEGIN_ARRAY;
+			case '"':
+			{
+				this.pos++;
+				this.valueStart = this.pos;
+				this.escaped = this.scanString();
+				this.valueEnd = this.pos - 1;
+				
+				return this.tkn = EnumJsonToken.STRING;
+			}
+			case 't': this.expectWord("true"); this.bool = true; return this.tkn = EnumJsonToken.BOOLEAN;
+			case 'f': this.expectWord("false"); this.bool = false; return this.tkn = EnumJsonToken.BOOLEAN;
+			case 'n': this.expectWord("null"); return this.tkn = EnumJsonToken.NULL;
+			case -1: throw this.error("Unexpected end of input");
+			default: break;
+		}
+		
+		if (c == '-' || (c >= '0' && c <= '9'))
+		{
+			this.scanNumber();
+			
+			return this.tkn = EnumJsonToken.NUMBER;
+		}
+		
+		throw this.error("Invalid value: '%s'", (char)c);
+	}
+	
+	//Finds the end of a string, leaving the position just past the closing quote; Returns whether it had any escapes.
+	private boolean scanString() throws JsonParseException
+	{
+		boolean ret = false;
+		int i = this.pos;
+		
+		while (i < this.end)
+		{
+			int b = this.byteAt(i);
+			
+			if (b == '"')
+			{
+				this.pos = i + 1;
+				
+				return ret;
+			}
+			
+			if (b == '\\')
+			{
+				ret = true;
+				i = this.checkEscape(i);
+				
+				continue;
+			}
+			
+			if (b >= 0 && b < 0x20)
+			{
+				this.pos = i;
+				
+				throw this.error("Unescaped control character in string");
+			}
+			
+			i++;
+			
+		}
+		
+		this.pos = this.end;
+		
+		throw this.error("Unterminated string");
+	}
+	
+	//Escapes are checked as they're found, so strings that are skipped or decoded later are held to the same rules; Returns where the escape ends.
+	private int checkEscape(int at) throws JsonParseException
+	{
+		if (at + 1 >= this.end)
+		{
+			this.pos = this.end;
+			
+			throw this.error("Unterminated string");
+		}
+		
+		char e = (char)this.byteAt(at + 1);
+		
+		switch (e)
+		{
+			case '"':
+			case '\\':
+			case '/':
+			case 'b':
+			case 'f':
+			case 'n':
+			case 'r':
+			case 't': return at + 2;
+			case 'u': this.readHex(at + 2, this.end); return at + 6;
+			default: this.pos = at; throw this.error("Invalid escape sequence: \\%s", e);
+		}
+		
+	}
+	
+	private void scanNumber() throws JsonParseException
+	{
+		int i = this.pos;
+		boolean neg = this.byteAt(i) == '-';
+		
+		if (neg)
+		{
+			i++;
+			
+		}
+		
+		int digits = i;
+		long v = 0L;
+		
+		while (i < this.end)
+		{
+			int b = this.byteAt(i);
+			
+			if (b < '0' || b > '9')
+			{
+				break;
+			}
+			
+			v = v * 10 + (b - '0');
+			i++;
+			
+		}
+		
+		int count = i - digits;
+		
+		if (count == 0)
+		{
+			this.pos = i;
+			
+			throw this.error("Was expecting a digit");
+		}
+		
+		if (count > 1 && this.byteAt(digits) == '0')
+		{
+			this.pos = digits;
+			
+			throw this.error("Leading zeroes aren't allowed");
+		}
+		
+		boolean frac = false;
+		
+		if (i < this.end && this.byteAt(i) == '.')
+		{
+			frac = true;
+			i = this.skipDigits(i + 1);
+			
+		}
+		
+		if (i < this.end && (this.byteAt(i) | 0x20) == 'e')
+		{
+			frac = true;
+			i++;
+			
+			if (i < this.end && (this.byteAt(i) == '+' || this.byteAt(i) == '-'))
+			{
+				i++;
+				
+			}
+			
+			i = this.skipDigits(i);
+			
+		}
+		
+		this.valueStart = this.pos;
+		this.valueEnd = i;
+		this.escaped = false;
+		this.pos = i;
+		this.isFloat = frac;
+		
+		//18 digits always fit in a long; Longer integers are left for getLong() and friends to sort out.
+		this.hasLong = !frac && count <= 18;
+		
+		if (this.hasLong)
+		{
+			this.longValue = neg ? -v : v;
+			
+		}
+		else if (!frac && !this.skipping)
+		{
+			this.hasLong = this.parseLong(digits, i, neg);
+			
+		}
+		
+	}
+	
+	//For integers that might not fit; Returns false if they don't, leaving them to be read as doubles.
+	private boolean parseLong(int from, int to, boolean neg)
+	{
+		long v = 0L;
+		
+		for (int i = from; i < to; i++)
+		{
+			int d = this.byteAt(i) - '0';
+			
+			//Accumulated as a negative number, so Long.MIN_VALUE fits.
+			if (v < (Long.MIN_VALUE + d) / 10)
+			{
+				return false;
+			}
+			
+			v = v * 10 - d;
+			
+		}
+		
+		if (!neg && v == Long.MIN_VALUE)
+		{
+			return false;
+		}
+		
+		this.longValue = neg ? v : -v;
+		
+		return true;
+	}
+	
+	//Numbers are plain ASCII, so they're just widened into chars.
+	private double parseDouble() throws JsonParseException
+	{
+		int len = this.valueEnd - this.valueStart;
+		char[] cs = this.chars(len);
+		
+		for (int c = 0; c < len; c++)
+		{
+			cs[c] = (char)this.byteAt(this.valueStart + c);
+			
+		}
+		
+		double ret = JsonNumbers.parseDouble(cs, 0, len);
+		
+		//Infinity can't be written back out, so it's not let in either.
+		if (Double.isInfinite(ret))
+		{
+			throw this.errorAt(this.valueStart, "Number is too big to fit in a double");
+		}
+		
+		return ret;
+	}
+	
+	private int skipDigits(int from) throws JsonParseException
+	{
+		int i = from;
+		
+		while (i < this.end)
+		{
+			int b = this.byteAt(i);
+			
+			if (b < '0' || b > '9')
+			{
+				break;
+			}
+			
+			i++;
+			
+		}
+		
+		if (i == from)
+		{
+			this.pos = i;
+			
+			throw this.error("Was expecting a digit");
+		}
+		
+		return i;
+	}
+	
+	private void expectWord(String word) throws JsonParseException
+	{
+		int len = word.length();
+		
+		if (this.pos + len > this.end)
+		{
+			throw this.error("Was expecting \"%s\"", word);
+		}
+		
+		for (int c = 0; c < len; c++)
+		{
+			if (this.byteAt(this.pos + c) != word.charAt(c))
+			{
+				throw this.error("Was expecting \"%s\"", word);
+			}
+			
+		}
+		
+		this.pos += len;
+		
+	}
+	
+	private int skipWhitespace()
+	{
+		int i = this.pos;
+		
+		for (; i < this.end; i++)
+		{
+			int b = this.byteAt(i);
+			
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+			{
+				this.pos = i;
+				
+				return b & 0xFF;
+			}
+			
+		}
+		
+		this.pos = i;
+		
+		return -1;
+	}
+	
+	private byte byteAt(int i)
+	{
+		return this.array != null ? this.array[this.arrayOff + i] : this.bb.get(i);
+	}
+	
+	private String decode(int from, int to, boolean esc) throws JsonParseException
+	{
+		if (!esc)
+		{
+			return this.utf8(from, to - from);
+		}
+		
+		//Escapes are decoded by hand, so escaped surrogates come through untouched; The result can't have more chars than there are bytes.
+		char[] cs = this.chars(to - from);
+		int out = 0, run = from;
+		
+		for (int i = from; i < to;)
+		{
+			//Backslashes never show up inside a multi-byte sequence, so everything between escapes is whole UTF-8.
+			if (this.byteAt(i) != '\\')
+			{
+				i++;
+				
+				continue;
+			}
+			
+			out = this.utf8(run, i - run, cs, out);
+			i++;
+			
+			char e = (char)this.byteAt(i++);
+			
+			switch (e)
+			{
+				case '"':
+				case '\\':
+				case '/': cs[out++] = e; break;
+				case 'b': cs[out++] = '\b'; break;
+				case 'f': cs[out++] = '\f'; break;
+				case 'n': cs[out++] = '\n'; break;
+				case 'r': cs[out++] = '\r'; break;
+				case 't': cs[out++] = '\t'; break;
+				case 'u': cs[out++] = (char)this.readHex(i, to); i += 4; break;
+				default: this.pos = i - 2; throw this.error("Invalid escape sequence: \\%s", e);
+			}
+			
+			run = i;
+			
+		}
+		
+		out = this.utf8(run, to - run, cs, out);
+		
+		return new String(cs, 0, out);
+	}
+	
+	//Every run of raw bytes goes through the JDK's decoder, so malformed UTF-8 becomes U+FFFD the same way whether or not the string has escapes.
+	private String utf8(int from, int len)
+	{
+		if (this.array != null)
+		{
+			return new String(this.array, this.arrayOff + from, len, StandardCharsets.UTF_8);
+		}
+		
+		byte[] bs = this.scratch(len);
+		
+		for (int c = 0; c < len; c++)
+		{
+			bs[c] = this.bb.get(from + c);
+			
+		}
+		
+		return new String(bs, 0, len, StandardCharsets.UTF_8);
+	}
+	
+	private int utf8(int from, int len, char[] cs, int out)
+	{
+		if (len == 0)
+		{
+			return out;
+		}
+		
+		String run = this.utf8(from, len);
+		
+		run.getChars(0, run.length(), cs, out);
+		
+		return out + run.length();
+	}
+	
+	private int readHex(int from, int to) throws JsonParseException
+	{
+		if (from + 4 > to)
+		{
+			this.pos = from;
+			
+			throw this.error("Unterminated unicode escape");
+		}
+		
+		int ret = 0;
+		
+		for (int i = from; i < from + 4; i++)
+		{
+			int d = JsonReader.hexDigit(this.byteAt(i));
+			
+			if (d == -1)
+			{
+				this.pos = i;
+				
+				throw this.error("Invalid hex digit in unicode escape");
+			}
+			
+			ret = (ret << 4) | d;
+			
+		}
+		
+		return ret;
+	}
+	
+	private byte[] scratch(int len)
+	{
+		if (this.scratch == null || this.scratch.length < len)
+		{
+			this.scratch = new byte[Math.max(len, 256)];
+			
+		}
+		
+		return this.scratch;
+	}
+	
+	private char[] chars(int len)
+	{
+		if (this.charScratch == null || this.charScratch.length < len)
+		{
+			this.charScratch = new char[Math.max(len, 256)];
+			
+		}
+		
+		return this.charScratch;
+	}
+	
+	@Override
+	public JsonParseException error(String msg, Object... args)
+	{
+		return this.errorAt(this.pos, msg, args);
+	}
+	
+	JsonParseException errorAt(int at, String msg, Object... args)
+	{
+		int line = 1, col = 1;
+		
+		for (int c = this.start; c < at && c < this.end; c++)
+		{
+			if (this.byteAt(c) == '\n')
+			{
+				line++;
+				col = 1;
+				
+			}
+			else if ((this.byteAt(c) & 0xC0) != 0x80)
+			{
+				col++;
+				
+			}
+			
+		}
+		
+		return new JsonParseException("%s at line %s, col %s", String.format(msg, args), line, col);
+	}
+	
+	/**
+	 * 
+	 * Maps the raw bytes of object keys to their strings, so repeated keys aren't decoded (or allocated) again.
+	 * <p>
+	 * Fixed size and direct-mapped; A new key just takes over its slot. Long keys aren't cached.
+	 * <br>Not thread-safe.
+	 * 
+	 * @author Elusivehawk
+	 */
+	public static final class KeyCache
+	{
+		public static final int MAX_KEY_LENGTH = 64;
+		
+		private final byte[][] raw;
+		private final String[] strs;
+		private final int mask;
+		
+		public KeyCache()
+		{
+			this(1024);
+			
+		}
+		
+		@SuppressWarnings("unqualified-field-access")
+		public KeyCache(int size)
+		{
+			assert Integer.bitCount(size) == 1;
+			
+			raw = new byte[size][];
+			strs = new String[size];
+			mask = size - 1;
+			
+		}
+		
+		String get(JsonByteReader r, int from, int to)
+		{
+			int len = to - from;
+			
+			if (len > MAX_KEY_LENGTH)
+			{
+				return r.decode(from, to, false);
+			}
+			
+			int h = len;
+			
+			for (int i = from; i < to; i++)
+			{
+				h = 31 * h + r.byteAt(i);
+				
+			}
+			
+			int slot = (h ^ (h >>> 16)) & this.mask;
+			byte[] key = this.raw[slot];
+			
+			if (key != null && key.length == len && matches(key, r, from))
+			{
+				return this.strs[slot];
+			}
+			
+			key = new byte[len];
+			
+			for (int c = 0; c < len; c++)
+			{
+				key[c] = r.byteAt(from + c);
+				
+			}
+			
+			String ret = new String(key, StandardCharsets.UTF_8);
+			
+			this.raw[slot] = key;
+			this.strs[slot] = ret;
+			
+			return ret;
+		}
+		
+		private static boolean matches(byte[] key, JsonByteReader r, int from)
+		{
+			for (int c = 0; c < key.length; c++)
+			{
+				if (key[c] != r.byteAt(from + c))
+				{
+					return false;
+				}
+				
+			}
+			
+			return true;
+		}
+		
+		public void clear()
+		{
+			Arrays.fill(this.raw, null);
+			Arrays.fill(this.strs, null);
+			
+		}
+		
+	}
+	
+}
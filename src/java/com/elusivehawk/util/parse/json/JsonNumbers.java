@@ -0,0 +1,598 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.math.BigInteger;
+
+/**
+ * 
+ * Allocation-free conversions between doubles and their JSON text.
+ * <p>
+ * Parsing uses Clinger's fast path where it's exact, and Eisel and Lemire's algorithm otherwise; The few inputs it can't decide
+ * (mostly ones with more than 19 significant digits sitting right between two doubles) go to {@link Double#parseDouble(String)}.
+ * <br>Formatting uses Giulietti's Schubfach algorithm, which always picks the shortest decimal that reads back as the same
+ * double, and lays it out the same way {@link Double#toString(double)} does.
+ * <br>Both work off tables of 128-bit powers, which are worked out with {@link BigInteger}s when the class is loaded.
+ * 
+ * @author Elusivehawk
+ */
+final class JsonNumbers
+{
+	//The most characters format() can write.
+	static final int MAX_CHARS = 24;
+	
+	private static final long NO_RESULT = -1L, INFINITY = 0x7FF0000000000000L;
+	private static final int Q_MIN = -342, Q_MAX = 308;
+	private static final long[] POW5 = new long[(Q_MAX - Q_MIN + 1) * 2];
+	private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+			1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+			
+	private static final int P = 53, BQ_MASK = 0x7FF, BIN_Q_MIN = -1074, K_MIN = -324, K_MAX = 292, H = 17;
+	private static final long T_MASK = (1L << (P - 1)) - 1, C_MIN = 1L << (P - 1), C_TINY = 3L, MASK_63 = Long.MAX_VALUE;
+	private static final int MASK_28 = (1 << 28) - 1;
+	private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+	private static final long[] POW10L = new long[H + 1];
+	
+	static
+	{
+		BigInteger five = BigInteger.valueOf(5);
+		
+		//5^q, truncated to its top 128 bits; Negative powers are the reciprocal, rounded up where it fits in 64 bits.
+		for (int q = Q_MIN; q <= Q_MAX; q++)
+		{
+			BigInteger v;
+			
+			if (q >= 0)
+			{
+				BigInteger p = five.pow(q);
+				int shift = p.bitLength() - 128;
+				
+				v = shift > 0 ? p.shiftRight(shift) : p.shiftLeft(-shift);
+				
+			}
+			else
+			{
+				BigInteger p = five.pow(-q);
+				int z = p.bitLength();
+				
+				v = BigInteger.ONE.shiftLeft(q >= -27 ? z + 127 : 2 * z + 128).divide(p).add(BigInteger.ONE);
+				
+				if (v.bitLength() > 128)
+				{
+					v = v.shiftRight(v.bitLength() - 128);
+					
+				}
+				
+			}
+			
+			int i = (q - Q_MIN) << 1;
+			
+			POW5[i] = v.shiftRight(64).longValue();
+			POW5[i + 1] = v.longValue();
+			
+		}
+		
+		//10^-k as a 126-bit g (rounded up) and a power of two, split into 63-bit halves.
+		for (int k = K_MIN; k <= K_MAX; k++)
+		{
+			int r = flog2pow10(-k) - 125;
+			BigInteger num = BigInteger.TEN.pow(Math.max(-k, 0)).shiftLeft(Math.max(-r, 0));
+			BigInteger den = BigInteger.TEN.pow(Math.max(k, 0)).shiftLeft(Math.max(r, 0));
+			BigInteger g = num.divide(den).add(BigInteger.ONE);
+			int i = (k - K_MIN) << 1;
+			
+			G[i] = g.shiftRight(63).longValue();
+			G[i + 1] = g.longValue() & MASK_63;
+			
+		}
+		
+		POW10L[0] = 1L;
+		
+		for (int c = 1; c < POW10L.length; c++)
+		{
+			POW10L[c] = POW10L[c - 1] * 10;
+			
+		}
+		
+	}
+	
+	private JsonNumbers(){}
+	
+	//Reads a number that's already been checked as valid JSON.
+	static double parseDouble(char[] b, int from, int to)
+	{
+		int i = from;
+		boolean neg = b[i] == '-';
+		
+		if (neg)
+		{
+			i++;
+			
+		}
+		
+		//Only the first 19 significant digits are kept, which always fit in an unsigned long.
+		long w = 0L;
+		int digits = 0, exp = 0;
+		boolean truncated = false;
+		
+		for (; i < to && b[i] >= '0' && b[i] <= '9'; i++)
+		{
+			if (digits < 19)
+			{
+				w = w * 10 + (b[i] - '0');
+				
+				if (w != 0L)
+				{
+					digits++;
+					
+				}
+				
+			}
+			else
+			{
+				exp++;
+				truncated |= b[i] != '0';
+				
+			}
+			
+		}
+		
+		if (i < to && b[i] == '.')
+		{
+			for (i++; i < to && b[i] >= '0' && b[i] <= '9'; i++)
+			{
+				if (digits < 19)
+				{
+					w = w * 10 + (b[i] - '0');
+					exp--;
+					
+					if (w != 0L)
+					{
+						digits++;
+						
+					}
+					
+				}
+				else
+				{
+					truncated |= b[i] != '0';
+					
+				}
+				
+			}
+			
+		}
+		
+		if (i < to && (b[i] | 0x20) == 'e')
+		{
+			i++;
+			
+			boolean negExp = b[i] == '-';
+			
+			if (negExp || b[i] == '+')
+			{
+				i++;
+				
+			}
+			
+			int e = 0;
+			
+			for (; i < to; i++)
+			{
+				//Anything this big is zero or infinity anyway.
+				if (e < 100000)
+				{
+					e = e * 10 + (b[i] - '0');
+					
+				}
+				
+			}
+			
+			exp += negExp ? -e : e;
+			
+		}
+		
+		if (w == 0L)
+		{
+			return neg ? -0d : 0d;
+		}
+		
+		double ret;
+		
+		if (!truncated && exp >= -22 && exp <= 22 && w >= 0L && w <= (1L << 53))
+		{
+			//Both w and 10^|exp| are exact, so a single rounding gets the right answer.
+			ret = exp < 0 ? w / POW10[-exp] : w * POW10[exp];
+			
+		}
+		else
+		{
+			long bits = eiselLemire(w, exp);
+			
+			//The dropped digits put the real value between w and w + 1; If both round the same way, so does it.
+			if (truncated && bits != NO_RESULT && bits != eiselLemire(w + 1, exp))
+			{
+				bits = NO_RESULT;
+				
+			}
+			
+			if (bits == NO_RESULT)
+			{
+				return Double.parseDouble(new String(b, from, to - from));
+			}
+			
+			ret = Double.longBitsToDouble(bits);
+			
+		}
+		
+		return neg ? -ret : ret;
+	}
+	
+	//The bits of the double closest to w * 10^q, with w treated as unsigned and non-zero, or NO_RESULT if it can't be told.
+	private static long eiselLemire(long w, int q)
+	{
+		if (q < Q_MIN)
+		{
+			return 0L;
+		}
+		
+		if (q > Q_MAX)
+		{
+			return INFINITY;
+		}
+		
+		int lz = Long.numberOfLeadingZeros(w);
+		long x = w << lz;
+		int i = (q - Q_MIN) << 1;
+		long hi = multiplyHigh(x, POW5[i]), lo = x * POW5[i];
+		
+		//Only look at the lower half of the power when the upper half leaves the rounding in doubt.
+		if ((hi & 0x1FF) == 0x1FF)
+		{
+			long hi2 = multiplyHigh(x, POW5[i + 1]);
+			
+			lo += hi2;
+			
+			if (Long.compareUnsigned(hi2, lo) > 0)
+			{
+				hi++;
+				
+			}
+			
+			if (lo == -1L && (q < -27 || q > 55))
+			{
+				return NO_RESULT;
+			}
+			
+		}
+		
+		int upper = (int)(hi >>> 63);
+		long mant = hi >>> (upper + 9);
+		int power2 = (((152170 + 65536) * q) >> 16) + 63 + upper - lz + 1023;
+		
+		if (power2 <= 0)
+		{
+			//Subnormal, unless rounding carries it up to the smallest normal.
+			if (-power2 + 1 >= 64)
+			{
+				return 0L;
+			}
+			
+			mant >>>= -power2 + 1;
+			mant += mant & 1;
+			mant >>>= 1;
+			
+			return mant < (1L << 52) ? mant : mant | (1L << 52);
+		}
+		
+		//Exactly halfway between two doubles: Round to even.
+		if (Long.compareUnsigned(lo, 1L) <= 0 && q >= -4 && q <= 23 && (mant & 3) == 1 && (mant << (upper + 9)) == hi)
+		{
+			mant &= ~1L;
+			
+		}
+		
+		mant += mant & 1;
+		mant >>>= 1;
+		
+		if (mant >= (2L << 52))
+		{
+			mant = 1L << 52;
+			power2++;
+			
+		}
+		
+		if (power2 >= 0x7FF)
+		{
+			return INFINITY;
+		}
+		
+		return ((long)power2 << 52) | (mant & ~(1L << 52));
+	}
+	
+	//Writes the shortest decimal that reads back as d, laid out like Double.toString(d); Returns where it stopped.
+	static int format(double d, char[] out, int off)
+	{
+		assert !Double.isNaN(d) && !Double.isInfinite(d);
+		
+		long bits = Double.doubleToRawLongBits(d);
+		long t = bits & T_MASK;
+		int bq = (int)(bits >>> (P - 1)) & BQ_MASK;
+		int i = off;
+		
+		if (bits < 0L)
+		{
+			out[i++] = '-';
+			
+		}
+		
+		if (bq != 0)
+		{
+			int mq = -BIN_Q_MIN + 1 - bq;
+			long c = C_MIN | t;
+			
+			//Integers below 2^53 don't need any of the real work.
+			if (0 < mq && mq < P)
+			{
+				long f = c >> mq;
+				
+				if (f << mq == c)
+				{
+					return toChars(out, i, f, 0);
+				}
+				
+			}
+			
+			return toDecimal(out, i, -mq, c, 0);
+		}
+		
+		if (t != 0L)
+		{
+			return t < C_TINY ? toDecimal(out, i, BIN_Q_MIN, 10 * t, -1) : toDecimal(out, i, BIN_Q_MIN, t, 0);
+		}
+		
+		out[i] = '0';
+		out[i + 1] = '.';
+		out[i + 2] = '0';
+		
+		return i + 3;
+	}
+	
+	private static int toDecimal(char[] out, int i, int q, long c, int dk)
+	{
+		int odd = (int)c & 1;
+		long cb = c << 2, cbr = cb + 2, cbl;
+		int k;
+		
+		if (c != C_MIN || q == BIN_Q_MIN)
+		{
+			cbl = cb - 2;
+			k = flog10pow2(q);
+			
+		}
+		else
+		{
+			//Powers of two are closer to the double below them than the one above.
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+			
+		}
+		
+		int h = q + flog2pow10(-k) + 2;
+		long g1 = G[(k - K_MIN) << 1], g0 = G[((k - K_MIN) << 1) + 1];
+		long vb = rop(g1, g0, cb << h), vbl = rop(g1, g0, cbl << h), vbr = rop(g1, g0, cbr << h);
+		long s = vb >> 2;
+		
+		if (s >= 100)
+		{
+			//Try dropping a digit first: s / 10 = s * 115292150460684698 / 2^60.
+			long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4), tp10 = sp10 + 10;
+			boolean upin = vbl + odd <= sp10 << 2, wpin = (tp10 << 2) + odd <= vbr;
+			
+			if (upin != wpin)
+			{
+				return toChars(out, i, upin ? sp10 : tp10, k);
+			}
+			
+		}
+		
+		long t = s + 1;
+		boolean uin = vbl + odd <= s << 2, win = (t << 2) + odd <= vbr;
+		
+		if (uin != win)
+		{
+			return toChars(out, i, uin ? s : t, k + dk);
+		}
+		
+		//Both fit, so go with whichever is closer.
+		long cmp = vb - ((s + t) << 1);
+		
+		return toChars(out, i, cmp < 0 || (cmp == 0 && (s & 1) == 0) ? s : t, k + dk);
+	}
+	
+	//Rounds c * g / 2^127 to odd, with g = g1 * 2^63 + g0.
+	private static long rop(long g1, long g0, long cp)
+	{
+		long x1 = multiplyHigh(g0, cp);
+		long y0 = g1 * cp, y1 = multiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> 63);
+		
+		return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+	}
+	
+	//Writes f * 10^e; f's digits are split up into one, eight and eight, so they can be pulled out with ints.
+	private static int toChars(char[] out, int i, long f, int e)
+	{
+		int len = flog10pow2(64 - Long.numberOfLeadingZeros(f));
+		
+		if (f >= POW10L[len])
+		{
+			len++;
+			
+		}
+		
+		long n = f * POW10L[H - len];
+		int exp = e + len;
+		long hm = multiplyHigh(n, 193428131138340668L) >>> 20;
+		int l = (int)(n - 100000000L * hm);
+		int hd = (int)((hm * 1441151881L) >>> 57);
+		int m = (int)(hm - 100000000L * hd);
+		int at = i;
+		
+		if (0 < exp && exp <= 7)
+		{
+			//Plain, without leading zeroes.
+			out[at++] = (char)('0' + hd);
+			
+			int y = y(m), c = 1;
+			
+			for (; c < exp; c++)
+			{
+				int t = 10 * y;
+				
+				out[at++] = (char)('0' + (t >>> 28));
+				y = t & MASK_28;
+				
+			}
+			
+			out[at++] = '.';
+			
+			for (; c <= 8; c++)
+			{
+				int t = 10 * y;
+				
+				out[at++] = (char)('0' + (t >>> 28));
+				y = t & MASK_28;
+				
+			}
+			
+			return lowDigits(out, at, l);
+		}
+		
+		if (-3 < exp && exp <= 0)
+		{
+			//Plain, with leading zeroes.
+			out[at++] = '0';
+			out[at++] = '.';
+			
+			for (int c = exp; c < 0; c++)
+			{
+				out[at++] = '0';
+				
+			}
+			
+			out[at++] = (char)('0' + hd);
+			at = digits8(out, at, m);
+			
+			return lowDigits(out, at, l);
+		}
+		
+		out[at++] = (char)('0' + hd);
+		out[at++] = '.';
+		at = digits8(out, at, m);
+		at = lowDigits(out, at, l);
+		out[at++] = 'E';
+		
+		int x = exp - 1;
+		
+		if (x < 0)
+		{
+			out[at++] = '-';
+			x = -x;
+			
+		}
+		
+		if (x >= 100)
+		{
+			int d = (x * 1311) >>> 17;
+			
+			out[at++] = (char)('0' + d);
+			x -= 100 * d;
+			out[at++] = (char)('0' + x / 10);
+			
+		}
+		else if (x >= 10)
+		{
+			out[at++] = (char)('0' + x / 10);
+			
+		}
+		
+		out[at++] = (char)('0' + x % 10);
+		
+		return at;
+	}
+	
+	private static int lowDigits(char[] out, int i, int l)
+	{
+		int at = i;
+		
+		if (l != 0)
+		{
+			at = digits8(out, at, l);
+			
+		}
+		
+		//Trailing zeroes go, except for the one right after the point.
+		while (out[at - 1] == '0')
+		{
+			at--;
+			
+		}
+		
+		if (out[at - 1] == '.')
+		{
+			at++;
+			
+		}
+		
+		return at;
+	}
+	
+	private static int digits8(char[] out, int i, int m)
+	{
+		int y = y(m);
+		
+		for (int c = 0; c < 8; c++)
+		{
+			int t = 10 * y;
+			
+			out[i + c] = (char)('0' + (t >>> 28));
+			y = t & MASK_28;
+			
+		}
+		
+		return i + 8;
+	}
+	
+	//The 28-bit fixed point fraction m / 10^8, so digits can be pulled out left to right by multiplying by 10.
+	private static int y(int m)
+	{
+		return (int)(multiplyHigh((long)(m + 1) << 28, 193428131138340668L) >>> 20) - 1;
+	}
+	
+	private static int flog10pow2(int e)
+	{
+		return (int)((e * 661971961083L) >> 41);
+	}
+	
+	private static int flog10threeQuartersPow2(int e)
+	{
+		return (int)((e * 661971961083L - 274743187321L) >> 41);
+	}
+	
+	private static int flog2pow10(int e)
+	{
+		return (int)((e * 913124641741L) >> 38);
+	}
+	
+	//The upper half of the unsigned 128-bit product; Math.multiplyHigh() isn't around until Java 9, and it's signed.
+	static long multiplyHigh(long x, long y)
+	{
+		long x0 = x & 0xFFFFFFFFL, x1 = x >>> 32, y0 = y & 0xFFFFFFFFL, y1 = y >>> 32;
+		long t = x1 * y0 + ((x0 * y0) >>> 32);
+		long u = (t & 0xFFFFFFFFL) + x0 * y1;
+		
+		return x1 * y1 + (t >>> 32) + (u >>> 32);
+	}
+	
+}
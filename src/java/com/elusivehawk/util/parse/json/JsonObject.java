@@ -1,9 +1,12 @@
 
 package com.elusivehawk.util.parse.json;
 
+import java.io.StringWriter;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import com.elusivehawk.util.IPopulator;
 import com.elusivehawk.util.Logger;
 
@@ -28,44 +31,28 @@ public class JsonObject implements IJsonSerializer
 	@Override
 	public String toJson(int tabs)
 	{
-		StringBuilder b = new StringBuilder();
+		StringWriter ret = new StringWriter();
+		JsonWriter w = new JsonWriter(ret, "\t").setBaseLevel(tabs);
 		
-		for (int c = 0; c < tabs; c++)
-		{
-			b.append("\t");
-			
-		}
-		
-		tabs++;
-		
-		b.append("{");
+		this.writeJson(w);
+		w.flush();
 		
-		boolean prev = false;
+		return ret.toString();
+	}
+	
+	@Override
+	public void writeJson(JsonWriter w)
+	{
+		w.beginObject();
 		
 		for (Entry<String, Object> entry : this.objs.entrySet())
 		{
-			if (prev)
-			{
-				b.append(", \n");
-				
-			}
-			else prev = true;
-			
-			for (int c = 0; c < tabs; c++)
-			{
-				b.append("\t");
-				
-			}
-			
-			Object obj = entry.getValue();
-			
-			b.append(String.format("\"%s\": %s", entry.getKey(), obj instanceof IJsonSerializer ? ((IJsonSerializer)obj).toJson(tabs) : obj instanceof String ? String.format("\"%s\"", obj) : obj));
+			w.name(entry.getKey()).value(entry.getValue());
 			
 		}
 		
-		b.append("\n}");
+		w.endObject();
 		
-		return b.toString();
 	}
 	
 	public boolean getBool(String name)
@@ -226,4 +213,9 @@ public class JsonObject implements IJsonSerializer
 		return this.objs.containsKey(name);
 	}
 	
+	public Set<String> keys()
+	{
+		return Collections.unmodifiableSet(this.objs.keySet());
+	}
+	
 }
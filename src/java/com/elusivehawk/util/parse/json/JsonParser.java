@@ -2,52 +2,77 @@
 package com.elusivehawk.util.parse.json;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import com.elusivehawk.util.io.IByteReader;
-import com.elusivehawk.util.io.IOHelper;
-import com.elusivehawk.util.parse.ParseHelper;
-import com.elusivehawk.util.parse.Token;
-import com.elusivehawk.util.parse.Tokenizer;
-import com.elusivehawk.util.storage.Buffer;
 
 /**
  * 
- * 
+ * Parses JSON text into {@link JsonObject}s.
+ * <p>
+ * The root value has to be an object, and keys can't be repeated within one; Integers come out as {@link Long}s, anything
+ * with a fraction or exponent (or too big for a long) as {@link Double}s.
+ * <br>Bytes are decoded as UTF-8, and a leading byte order mark is skipped, whatever the input is.
+ * <br>Byte arrays, buffers and files are read straight from their bytes by {@link JsonByteReader}; Everything else streams
+ * through a {@link JsonReader}, so nothing's buffered up front.
  * 
  * @author Elusivehawk
  */
 @SuppressWarnings("boxing")
 public final class JsonParser
 {
-	public static final String[] SEPARATORS = {"\"", ":", ",", "{", "}", "[", "]", "e", "E", "+", "-", "true", "false"};
-	
 	private JsonParser(){}
 	
 	public static JsonObject parse(File file) throws JsonParseException
 	{
-		return parse(IOHelper.readText(file));
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			if (ch.size() > Integer.MAX_VALUE)
+			{
+				return parseDocument(new JsonReader(Channels.newReader(ch, StandardCharsets.UTF_8.newDecoder(), -1)));
+			}
+			
+			return parse(ch.map(MapMode.READ_ONLY, 0, ch.size()));
+		}
+		catch (IOException e)
+		{
+			throw new JsonParseException(e);
+		}
+		
 	}
 	
 	public static JsonObject parse(IByteReader r) throws JsonParseException
 	{
-		return parse(IOHelper.readText(r));
+		return parseDocument(new JsonReader(r));
 	}
 	
 	public static JsonObject parse(InputStream in) throws JsonParseException
 	{
-		return parse(IOHelper.readText(in));
+		return parseDocument(new JsonReader(in));
 	}
 	
 	public static JsonObject parse(Reader r) throws JsonParseException
 	{
-		return parse(IOHelper.readText(r));
+		return parseDocument(new JsonReader(r));
 	}
 	
 	public static JsonObject parse(byte[] bs) throws JsonParseException
 	{
-		return parse(IOHelper.readText(bs));
+		return parse(ByteBuffer.wrap(bs));
+	}
+	
+	//Parses the UTF-8 between the buffer's position and limit, without decoding it up front.
+	public static JsonObject parse(ByteBuffer buf) throws JsonParseException
+	{
+		return parseDocument(new JsonByteReader(buf));
 	}
 	
 	public static JsonObject parse(List<String> strs) throws JsonParseException
@@ -57,294 +82,140 @@ public final class JsonParser
 			return null;
 		}
 		
-		Tokenizer t = new Tokenizer();
-		
-		t.addTokens(SEPARATORS);
-		t.addTokens(ParseHelper.NUMBERS);
-		t.addTokens(ParseHelper.WHITESPACE);
-		
-		Buffer<Token> buf = new Buffer<Token>(t.tokenize(strs));
-		
-		Object ret = parseValue(buf);
-		
-		if (!(ret instanceof JsonObject))
-		{
-			throw new JsonParseException("Was expecting a JSON object, got \"%s\"", ret);
-		}
-		
-		skipWhitespace(buf);
-		
-		if (buf.hasNext())
-		{
-			throw new JsonParseException("");
-		}
-		
-		return (JsonObject)ret;
+		return parse(String.join("\n", strs));
 	}
 	
-	private static void skipWhitespace(Buffer<Token> buf)
+	public static JsonObject parse(String str) throws JsonParseException
 	{
-		Token tkn;
-		
-		while (buf.hasNext())
-		{
-			tkn = buf.next(false);
-			
-			if (ParseHelper.isWhitespace(tkn.str))
-			{
-				buf.skip();
-				
-				continue;
-				
-			}
-			
-			return;
-		}
-		
+		return parseDocument(new JsonReader(str));
 	}
 	
-	private static Object parseValue(Buffer<Token> buf) throws JsonParseException
+	public static JsonObject parse(char[] chars) throws JsonParseException
 	{
-		Token tkn = buf.next(false);
-		
-		if (tkn == null)
-		{
-			throw new JsonParseException(new NullPointerException());
-		}
-		
-		String str = tkn.str.toLowerCase();
-		
-		switch (str)
-		{
-			case "-":
-			case "0":
-			case "1":
-			case "2":
-			case "3":
-			case "4":
-			case "5":
-			case "6":
-			case "7":
-			case "8":
-			case "9": return parseInt(buf);
-			case "\"": return parseString(buf);
-			case "{": return parseObj(buf);
-			case "[": return parseArray(buf);
-			case "null": return null;
-			case "true": return true;
-			case "false": return false;
-			
-		}
-		
-		throw new JsonParseException("Invalid value found at line %s, col %s: \"%s\"", tkn.line, tkn.col, ParseHelper.sanitizeEscapeSequence(str));
+		return parse(chars, 0, chars.length);
 	}
 	
-	private static String parseString(Buffer<Token> buf)
+	public static JsonObject parse(char[] chars, int off, int len) throws JsonParseException
 	{
-		Token tkn = buf.next();
-		
-		if (!"\"".equalsIgnoreCase(tkn.str))
-		{
-			throw new JsonParseException("Found \"%s\" at line %s, col %s; Was expecting quote mark", tkn.str, tkn.line, tkn.col);
-		}
-		
-		StringBuilder b = new StringBuilder();
-		
-		while (!"\"".equalsIgnoreCase((tkn = buf.next()).str))
-		{
-			b.append(ParseHelper.valueOf(tkn.str));
-			
-		}
-		
-		return b.toString();
+		return parseDocument(new JsonReader(chars, off, len));
 	}
 	
-	private static JsonObject parseObj(Buffer<Token> buf) throws JsonParseException
+	//Only indexes the document up front; Values are decoded as they're read. The buffer has to stay as it is while the result's in use.
+	public static LazyJsonObject parseLazy(ByteBuffer buf) throws JsonParseException
 	{
-		Token tkn = buf.next();
+		JsonTape tape = new JsonTape(buf);
 		
-		if (!"{".equalsIgnoreCase(tkn.str))
+		if (tape.type(0) != EnumJsonToken.BEGIN_OBJECT)
 		{
-			throw new JsonParseException("Found \"%s\" at line %s, col %s; Was expecting \"{\"", tkn.str, tkn.line, tkn.col);
+			throw tape.error(0, "Was expecting a JSON object, found %s", tape.type(0));
 		}
 		
-		JsonObject ret = new JsonObject();
-		boolean kill = false;
-		
-		while (!"}".equalsIgnoreCase((tkn = buf.next(false)).str))
+		return new LazyJsonObject(tape, 0);
+	}
+	
+	public static LazyJsonObject parseLazy(byte[] bs) throws JsonParseException
+	{
+		return parseLazy(ByteBuffer.wrap(bs));
+	}
+	
+	//Maps the file, so nothing's read in until it's needed.
+	public static LazyJsonObject parseLazy(File file) throws JsonParseException
+	{
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ))
 		{
-			skipWhitespace(buf);
-			
-			String name = parseString(buf);
-			
-			skipWhitespace(buf);
-			
-			tkn = buf.next();
-			
-			if (!":".equalsIgnoreCase(tkn.str))
-			{
-				throw new JsonParseException("Found \"%s\" for keypair %s at line %s, col %s; Was expecting \":\"", tkn.str, name, tkn.line, tkn.col);
-			}
-			
-			skipWhitespace(buf);
-			
-			Object data = parseValue(buf);
-			
-			if (!ret.add(name, data))
-			{
-				throw new JsonParseException("Duplicate key: %s", name);
-			}
-			
-			skipWhitespace(buf);
-			
-			tkn = buf.next();
-			
-			if (!",".equalsIgnoreCase(tkn.str))
+			if (ch.size() > Integer.MAX_VALUE)
 			{
-				if (kill)
-				{
-					throw new JsonParseException("Found \"%s\" at line %s, col %s; Was expecting a comma", tkn.str, tkn.line, tkn.col);
-				}
-				
-				kill = true;
-				
+				throw new JsonParseException("%s is too big to map", file);
 			}
 			
-			skipWhitespace(buf);
-			
+			return parseLazy(ch.map(MapMode.READ_ONLY, 0, ch.size()));
+		}
+		catch (IOException e)
+		{
+			throw new JsonParseException(e);
 		}
 		
-		return ret;
 	}
 	
-	private static JsonArray parseArray(Buffer<Token> buf) throws JsonParseException
+	//Reads a whole document, which has to be a single object.
+	private static JsonObject parseDocument(IJsonReader r) throws JsonParseException
 	{
-		Token tkn = buf.next();
-		
-		if (!"[".equalsIgnoreCase(tkn.str))
+		try
 		{
-			throw new JsonParseException("Found \"%s\" at line %s, col %s; Was expecting \"[\"", tkn.str, tkn.line, tkn.col);
-		}
-		
-		JsonArray ret = new JsonArray();
-		boolean kill = false;
-		
-		while (!"]".equalsIgnoreCase((tkn = buf.next(false)).str))
-		{
-			skipWhitespace(buf);
+			JsonObject ret = parse(r);
 			
-			ret.add(parseValue(buf));
+			r.next();
 			
-			skipWhitespace(buf);
-			
-			if (!",".equalsIgnoreCase((tkn = buf.next()).str))
-			{
-				if (kill)
-				{
-					throw new JsonParseException("Found \"%s\" at line %s, col %s; Was expecting \",\"!", tkn.str, tkn.line, tkn.col);
-				}
-				
-				kill = true;
-				
-			}
-			
-			skipWhitespace(buf);
+			return ret;
+		}
+		finally
+		{
+			r.close();
 			
 		}
 		
-		return ret;
 	}
 	
-	private static Number parseInt(Buffer<Token> buf) throws JsonParseException
+	//Reads the object starting at the reader's current token, or its next one if nothing's been read yet; Anything after it is left alone.
+	public static JsonObject parse(IJsonReader r) throws JsonParseException
 	{
-		Token tkn = buf.next(false);
-		boolean neg = tkn.str.equalsIgnoreCase("-"), isFloat = false;
-		
-		if (neg)
+		if (r.current() == null)
 		{
-			buf.skip();
+			r.next();
 			
 		}
 		
-		StringBuilder b = new StringBuilder();
-		
-		String i = gatherInts(buf);
-		
-		if (i.equalsIgnoreCase(""))
+		if (r.current() != EnumJsonToken.BEGIN_OBJECT)
 		{
-			throw new JsonParseException("Invalid integer found! what.");
+			throw r.error("Was expecting a JSON object, found %s", r.current());
 		}
 		
-		b.append(gatherInts(buf));
-		
-		tkn = buf.next();
-		
-		if (".".equalsIgnoreCase(tkn.str))
-		{
-			b.append(".");
-			
-			i = gatherInts(buf);
-			
-			if ("".equalsIgnoreCase(i))
-			{
-				throw new JsonParseException("Invalid floating point found on line %s, column %s", tkn.line, tkn.col);
-			}
-			
-			b.append(i);
-			
-			tkn = buf.next();
-			
-			isFloat = true;
-			
-		}
-		
-		if ("e".equalsIgnoreCase(tkn.str))
+		return (JsonObject)readValue(r);
+	}
+	
+	//Builds whatever value the reader's on, leaving it on that value's last token.
+	public static Object readValue(IJsonReader r) throws JsonParseException
+	{
+		switch (r.current())
 		{
-			b.append(tkn.str);
-			
-			tkn = buf.next();
-			
-			if ("+".equalsIgnoreCase(tkn.str) || "-".equalsIgnoreCase(tkn.str))
+			case BEGIN_OBJECT:
 			{
-				b.append(tkn.str);
+				JsonObject ret = new JsonObject();
+				
+				while (r.next() != EnumJsonToken.END_OBJECT)
+				{
+					String name = r.getName();
+					
+					r.next();
+					
+					if (!ret.add(name, readValue(r)))
+					{
+						throw r.error("Duplicate key: %s", name);
+					}
+					
+				}
 				
+				return ret;
 			}
-			else throw new JsonParseException("Expecting + or -, got %s on line %s, column %s", tkn.str, tkn.line, tkn.col);
-			
-			i = gatherInts(buf);
-			
-			if (i.equalsIgnoreCase(""))
+			case BEGIN_ARRAY:
 			{
-				throw new JsonParseException("Invalid integer found after finding E on line %s, column %s", tkn.line, tkn.col);
+				JsonArray ret = new JsonArray();
+				
+				while (r.next() != EnumJsonToken.END_ARRAY)
+				{
+					ret.add(readValue(r));
+					
+				}
+				
+				return ret;
 			}
-			
-			b.append(i);
-			
-		}
-		
-		return isFloat ? Double.parseDouble(b.toString()) : Long.parseLong(b.toString());
-	}
-	
-	private static String gatherInts(Buffer<Token> buf)
-	{
-		Token tkn = buf.next();
-		StringBuilder b = new StringBuilder();
-		boolean empty = true;
-		
-		while (ParseHelper.isInt(tkn.str))
-		{
-			b.append(tkn.str);
-			empty = false;
-			tkn = buf.next();
-			
-		}
-		
-		if (empty)
-		{
-			throw new JsonParseException("Found \"%s\" at line %s, col %s; Was expecting a number literal", tkn.str, tkn.line, tkn.col);
+			case STRING: return r.getString();
+			case NUMBER: return r.getNumber();
+			case BOOLEAN: return r.getBoolean();
+			case NULL: return null;
+			default: throw r.error("Was expecting a value, found %s", r.current());
 		}
 		
-		return b.toString();
 	}
 	
 }
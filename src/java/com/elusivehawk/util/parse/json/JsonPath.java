@@ -0,0 +1,592 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 
+ * Compiled JSONPath query, run straight off an {@link IJsonReader} without building the document.
+ * <p>
+ * Supported: The root ({@code $}), child names ({@code .name}, {@code ['name']}), wildcards ({@code .*}, {@code [*]}),
+ * array indices ({@code [0]}), unions ({@code ['a','b']}, {@code [0,2]}), slices ({@code [1:5]}, {@code [::2]}), and
+ * recursive descent ({@code ..name}, {@code ..*}). Filters, scripts, and negative indices aren't.
+ * <br>Values no step can match are passed over with {@link IJsonReader#skipValue()}, so only the matches ever get built;
+ * Matches inside another match aren't reported, since the outer one's already been read by then.
+ * <br>Paths made only of names and indices can match at most once, and stop reading as soon as they have, leaving the
+ * reader where it stopped.
+ * <br>Compiled paths never change, and can be shared between threads.
+ * 
+ * @author Elusivehawk
+ */
+public final class JsonPath
+{
+	private static final int MAX_STEPS = 63;
+	
+	private final String path;
+	private final Step[] steps;
+	private final long named;
+	private final boolean definite;
+	
+	@SuppressWarnings("unqualified-field-access")
+	private JsonPath(String str, Step[] ss)
+	{
+		path = str;
+		steps = ss;
+		
+		long n = 0L;
+		boolean d = true;
+		
+		for (int i = 0; i < ss.length; i++)
+		{
+			if (ss[i].names != null || ss[i].wildcard)
+			{
+				n |= 1L << i;
+				
+			}
+			
+			d &= !ss[i].descendant && !ss[i].wildcard && ss[i].stride == 0 && (ss[i].names == null ? ss[i].indices.length : ss[i].names.length) == 1;
+			
+		}
+		
+		named = n;
+		definite = d;
+		
+	}
+	
+	public static JsonPath compile(String path) throws JsonParseException
+	{
+		assert path != null;
+		
+		List<Step> ret = new ArrayList<Step>();
+		int i = skipSpace(path, 0);
+		
+		if (i == path.length() || path.charAt(i) != '$')
+		{
+			throw new JsonParseException("Paths have to start with $: %s", path);
+		}
+		
+		i++;
+		
+		while ((i = skipSpace(path, i)) < path.length())
+		{
+			char c = path.charAt(i);
+			boolean desc = false;
+			
+			if (c == '.')
+			{
+				i++;
+				
+				if (i < path.length() && path.charAt(i) == '.')
+				{
+					desc = true;
+					i++;
+					
+				}
+				
+				if (i == path.length())
+				{
+					throw new JsonParseException("Path ends with a dot: %s", path);
+				}
+				
+				c = path.charAt(i);
+				
+				if (c == '*')
+				{
+					ret.add(new Step(desc, true, null, null));
+					i++;
+					
+					continue;
+				}
+				
+				if (c != '[')
+				{
+					int end = i;
+					
+					while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[')
+					{
+						end++;
+						
+					}
+					
+					String name = path.substring(i, end).trim();
+					
+					if (name.isEmpty())
+					{
+						throw new JsonParseException("Empty name at %s in %s", Integer.toString(i), path);
+					}
+					
+					ret.add(new Step(desc, false, new String[]{name}, null));
+					i = end;
+					
+					continue;
+				}
+				
+			}
+			
+			if (c != '[')
+			{
+				throw new JsonParseException("Unexpected '%s' at %s in %s", Character.toString(c), Integer.toString(i), path);
+			}
+			
+			int end = i + 1;
+			
+			//Brackets inside quoted names don't count.
+			while (end != -1 && end < path.length() && path.charAt(end) != ']')
+			{
+				char ch = path.charAt(end);
+				
+				end = ch == '\'' || ch == '"' ? closingQuote(path, end) : end;
+				end = end == -1 ? -1 : end + 1;
+				
+			}
+			
+			if (end == -1 || end == path.length())
+			{
+				throw new JsonParseException("Unclosed bracket at %s in %s", Integer.toString(i), path);
+			}
+			
+			ret.add(bracket(path, i + 1, end, desc));
+			i = end + 1;
+			
+		}
+		
+		if (ret.size() > MAX_STEPS)
+		{
+			throw new JsonParseException("Paths can't have more than %s steps: %s", Integer.toString(MAX_STEPS), path);
+		}
+		
+		return new JsonPath(path, ret.toArray(new Step[ret.size()]));
+	}
+	
+	private static Step bracket(String path, int from, int to, boolean desc)
+	{
+		String body = path.substring(from, to).trim();
+		
+		if (body.equals("*"))
+		{
+			return new Step(desc, true, null, null);
+		}
+		
+		if (body.isEmpty())
+		{
+			throw new JsonParseException("Empty brackets at %s in %s", Integer.toString(from - 1), path);
+		}
+		
+		char first = body.charAt(0);
+		
+		if (first == '\'' || first == '"')
+		{
+			List<String> names = new ArrayList<String>();
+			int i = 0;
+			
+			while (true)
+			{
+				int close = closingQuote(body, i);
+				
+				if (close == -1)
+				{
+					throw new JsonParseException("Unclosed quote at %s in %s", Integer.toString(from + i), path);
+				}
+				
+				names.add(unquote(body, i + 1, close));
+				i = skipSpace(body, close + 1);
+				
+				if (i == body.length())
+				{
+					break;
+				}
+				
+				if (body.charAt(i) != ',' || (i = skipSpace(body, i + 1)) == body.length() || (body.charAt(i) != '\'' && body.charAt(i) != '"'))
+				{
+					throw new JsonParseException("Bad name list at %s in %s", Integer.toString(from), path);
+				}
+				
+			}
+			
+			return new Step(desc, false, names.toArray(new String[names.size()]), null);
+		}
+		
+		if (body.indexOf(':') != -1)
+		{
+			String[] parts = body.split(":", -1);
+			
+			if (parts.length > 3)
+			{
+				throw new JsonParseException("Bad slice at %s in %s", Integer.toString(from), path);
+			}
+			
+			int start = parts[0].trim().isEmpty() ? 0 : index(parts[0], path);
+			int end = parts[1].trim().isEmpty() ? Integer.MAX_VALUE : index(parts[1], path);
+			int stride = parts.length < 3 || parts[2].trim().isEmpty() ? 1 : index(parts[2], path);
+			
+			if (stride == 0)
+			{
+				throw new JsonParseException("Slices can't step by 0: %s", path);
+			}
+			
+			return new Step(desc, start, end, stride);
+		}
+		
+		String[] parts = body.split(",");
+		int[] indices = new int[parts.length];
+		
+		for (int c = 0; c < parts.length; c++)
+		{
+			indices[c] = index(parts[c], path);
+			
+		}
+		
+		return new Step(desc, false, null, indices);
+	}
+	
+	private static int index(String str, String path)
+	{
+		int ret;
+		
+		try
+		{
+			ret = Integer.parseInt(str.trim());
+			
+		}
+		catch (NumberFormatException e)
+		{
+			throw new JsonParseException(String.format("Bad index \"%s\" in %s", str, path), e);
+		}
+		
+		if (ret < 0)
+		{
+			throw new JsonParseException("Negative indices aren't supported: %s", path);
+		}
+		
+		return ret;
+	}
+	
+	//Returns the index of the quote closing the one at i, or -1.
+	private static int closingQuote(String str, int i)
+	{
+		char q = str.charAt(i);
+		
+		for (int c = i + 1; c < str.length(); c++)
+		{
+			char ch = str.charAt(c);
+			
+			if (ch == '\\')
+			{
+				c++;
+				
+			}
+			else if (ch == q)
+			{
+				return c;
+			}
+			
+		}
+		
+		return -1;
+	}
+	
+	private static String unquote(String str, int from, int to)
+	{
+		StringBuilder b = new StringBuilder(to - from);
+		
+		for (int c = from; c < to; c++)
+		{
+			char ch = str.charAt(c);
+			
+			if (ch == '\\' && c + 1 < to)
+			{
+				ch = str.charAt(++c);
+				
+			}
+			
+			b.append(ch);
+			
+		}
+		
+		return b.toString();
+	}
+	
+	private static int skipSpace(String str, int i)
+	{
+		while (i < str.length() && Character.isWhitespace(str.charAt(i)))
+		{
+			i++;
+			
+		}
+		
+		return i;
+	}
+	
+	public boolean isDefinite()
+	{
+		return this.definite;
+	}
+	
+	//Matches are built the same way the parser would, as JsonObjects, JsonArrays, strings, numbers, booleans, and nulls.
+	public List<Object> select(IJsonReader r) throws JsonParseException
+	{
+		List<Object> ret = new ArrayList<Object>();
+		
+		this.select(r, JsonParser::readValue, ret::add);
+		
+		return ret;
+	}
+	
+	public List<Object> select(ByteBuffer buf) throws JsonParseException
+	{
+		try (JsonByteReader r = new JsonByteReader(buf))
+		{
+			return this.select(r);
+		}
+		
+	}
+	
+	public List<Object> select(byte[] bs) throws JsonParseException
+	{
+		return this.select(ByteBuffer.wrap(bs));
+	}
+	
+	//The first match, or null if there wasn't one.
+	public Object selectFirst(IJsonReader r) throws JsonParseException
+	{
+		Object[] ret = new Object[1];
+		
+		this.run(r, JsonParser::readValue, (obj) -> ret[0] = obj, 1L);
+		
+		return ret[0];
+	}
+	
+	/*
+	 * Runs the path over the value starting at the reader's current token, or its next one if nothing's been read yet.
+	 * The reader function's given the reader on a match's first token, and has to leave it on that match's last token;
+	 * JsonParser::readValue and JsonBinder::read both do. Returns how many matches were found.
+	 */
+	public <T> long select(IJsonReader r, Function<? super IJsonReader, ? extends T> reader, Consumer<? super T> out) throws JsonParseException
+	{
+		return this.run(r, reader, out, this.definite ? 1L : Long.MAX_VALUE);
+	}
+	
+	private <T> long run(IJsonReader r, Function<? super IJsonReader, ? extends T> reader, Consumer<? super T> out, long limit)
+	{
+		assert r != null && reader != null && out != null;
+		
+		if (r.current() == null)
+		{
+			r.next();
+			
+		}
+		
+		Run<T> run = new Run<T>(r, reader, out, limit);
+		
+		run.walk(1L);
+		
+		return run.found;
+	}
+	
+	//Which steps are still live for a child, given which ones are live for its parent.
+	private long child(long live, String name, int index)
+	{
+		long ret = 0L;
+		long bits = live & ~(1L << this.steps.length);
+		
+		while (bits != 0L)
+		{
+			int i = Long.numberOfTrailingZeros(bits);
+			Step step = this.steps[i];
+			
+			bits &= bits - 1;
+			
+			if (step.matches(name, index))
+			{
+				ret |= 1L << (i + 1);
+				
+			}
+			
+			if (step.descendant)
+			{
+				ret |= 1L << i;
+				
+			}
+			
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return this.path;
+	}
+	
+	//Bit i of a live set means the first i steps matched on the way down; Bit steps.length means the value's a match.
+	private final class Run<T>
+	{
+		private final IJsonReader r;
+		private final Function<? super IJsonReader, ? extends T> reader;
+		private final Consumer<? super T> out;
+		private final long limit;
+		private long found = 0L;
+		
+		@SuppressWarnings("unqualified-field-access")
+		Run(IJsonReader rdr, Function<? super IJsonReader, ? extends T> func, Consumer<? super T> c, long max)
+		{
+			r = rdr;
+			reader = func;
+			out = c;
+			limit = max;
+			
+		}
+		
+		//Walks the value the reader's on, leaving it on that value's last token; Returns false once nothing more can match.
+		boolean walk(long live)
+		{
+			if ((live & (1L << JsonPath.this.steps.length)) != 0L)
+			{
+				this.out.accept(this.reader.apply(this.r));
+				
+				return ++this.found < this.limit;
+			}
+			
+			EnumJsonToken tkn = this.r.current();
+			
+			if (live == 0L)
+			{
+				if (!tkn.isScalar())
+				{
+					this.r.skipValue();
+					
+				}
+				
+				return true;
+			}
+			
+			if (tkn == EnumJsonToken.BEGIN_OBJECT)
+			{
+				boolean names = (live & JsonPath.this.named) != 0L;
+				
+				while (this.r.next() != EnumJsonToken.END_OBJECT)
+				{
+					long next = JsonPath.this.child(live, names ? this.r.getName() : null, -1);
+					
+					this.r.next();
+					
+					if (!this.walk(next))
+					{
+						return false;
+					}
+					
+				}
+				
+			}
+			else if (tkn == EnumJsonToken.BEGIN_ARRAY)
+			{
+				for (int i = 0; this.r.next() != EnumJsonToken.END_ARRAY; i++)
+				{
+					if (!this.walk(JsonPath.this.child(live, null, i)))
+					{
+						return false;
+					}
+					
+				}
+				
+			}
+			else if (!tkn.isValue())
+			{
+				throw new JsonParseException("Was expecting a value, found %s", tkn);
+			}
+			
+			return true;
+		}
+		
+	}
+	
+	private static final class Step
+	{
+		final boolean descendant, wildcard;
+		final String[] names;
+		final int[] indices;
+		final int start, end, stride;
+		
+		@SuppressWarnings("unqualified-field-access")
+		Step(boolean desc, boolean any, String[] ns, int[] is)
+		{
+			descendant = desc;
+			wildcard = any;
+			names = ns;
+			indices = is;
+			start = 0;
+			end = 0;
+			stride = 0;
+			
+		}
+		
+		@SuppressWarnings("unqualified-field-access")
+		Step(boolean desc, int from, int to, int step)
+		{
+			descendant = desc;
+			wildcard = false;
+			names = null;
+			indices = null;
+			start = from;
+			end = to;
+			stride = step;
+			
+		}
+		
+		//Object members have an index of -1, and array elements have no name.
+		boolean matches(String name, int index)
+		{
+			if (this.wildcard)
+			{
+				return true;
+			}
+			
+			if (index == -1)
+			{
+				if (this.names == null || name == null)
+				{
+					return false;
+				}
+				
+				for (String n : this.names)
+				{
+					if (n.equals(name))
+					{
+						return true;
+					}
+					
+				}
+				
+				return false;
+			}
+			
+			if (this.stride != 0)
+			{
+				return index >= this.start && index < this.end && (index - this.start) % this.stride == 0;
+			}
+			
+			if (this.indices == null)
+			{
+				return false;
+			}
+			
+			for (int i : this.indices)
+			{
+				if (i == index)
+				{
+					return true;
+				}
+				
+			}
+			
+			return false;
+		}
+		
+	}
+	
+}
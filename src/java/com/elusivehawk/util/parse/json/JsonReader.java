@@ -0,0 +1,857 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import com.elusivehawk.util.io.ByteReaderInputStream;
+import com.elusivehawk.util.io.IByteReader;
+
+/**
+ * 
+ * {@link IJsonReader} over characters, from either a {@link Reader} or an array.
+ * <p>
+ * Readers are pulled from through a fixed-size window, so a document of any size can be walked through in constant memory;
+ * The only things that grow are the current string or number, and the stack of open objects and arrays.
+ * <br>The root can be any value, but there can only be one of them.
+ * 
+ * @author Elusivehawk
+ */
+@SuppressWarnings("boxing")
+public class JsonReader implements IJsonReader
+{
+	public static final int BUFFER_SIZE = 8192, MAX_DEPTH = 512;
+	
+	private static final byte ROOT = 0, ROOT_DONE = 1, OBJ_FIRST = 2, OBJ_NAME = 3, OBJ_VALUE = 4, OBJ_NEXT = 5, ARR_FIRST = 6, ARR_NEXT = 7;
+	
+	private final Reader in;
+	private final char[] buf;
+	private int pos, limit;
+	private long base = 0L, lineStart = 0L;
+	private int line = 1;
+	
+	private byte[] stack = new byte[32];
+	private int depth = 1;
+	
+	private EnumJsonToken tkn = null;
+	private String name = null, str = null;
+	private final StringBuilder scratch = new StringBuilder();
+	private char[] numChars = new char[32];
+	private boolean skipping = false, bool = false, isFloat = false;
+	private long longValue = 0L;
+	private double doubleValue = 0d;
+	
+	public JsonReader(Reader r)
+	{
+		this(r, new char[BUFFER_SIZE], 0, 0);
+		
+	}
+	
+	public JsonReader(InputStream is)
+	{
+		this(new InputStreamReader(is, StandardCharsets.UTF_8));
+		
+	}
+	
+	public JsonReader(IByteReader r)
+	{
+		this(new ByteReaderInputStream(r, true));
+		
+	}
+	
+	public JsonReader(String json)
+	{
+		this(json.toCharArray());
+		
+	}
+	
+	public JsonReader(char[] chars)
+	{
+		this(chars, 0, chars.length);
+		
+	}
+	
+	public JsonReader(char[] chars, int off, int len)
+	{
+		this(null, chars, off, off + len);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	private JsonReader(Reader r, char[] chars, int off, int end)
+	{
+		assert off >= 0 && off <= end && end <= chars.length;
+		
+		in = r;
+		buf = chars;
+		pos = off;
+		limit = end;
+		base = -off;
+		lineStart = 0L;
+		stack[0] = ROOT;
+		
+	}
+	
+	@Override
+	public EnumJsonToken next() throws JsonParseException
+	{
+		int c;
+		
+		switch (this.stack[this.depth - 1])
+		{
+			case ROOT:
+			{
+				//Byte order marks aren't allowed by the spec, but they're out there; Columns are counted from after it, like JsonByteReader does.
+				if (this.peek() == 0xFEFF)
+				{
+					this.pos++;
+					this.lineStart++;
+					
+				}
+				
+				c = this.skipWhitespace();
+				
+				if (c == -1)
+				{
+					throw this.error("Empty document");
+				}
+				
+				this.stack[0] = ROOT_DONE;
+				
+				return this.readValue(c);
+			}
+			case ROOT_DONE:
+			{
+				if (this.skipWhitespace() != -1)
+				{
+					throw this.error("Unexpected data after the root value");
+				}
+				
+				return this.tkn = EnumJsonToken.END_DOCUMENT;
+			}
+			case OBJ_FIRST:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == '}')
+				{
+					return this.pop(EnumJsonToken.END_OBJECT);
+				}
+				
+				return this.readName(c);
+			}
+			case OBJ_NAME: return this.readName(this.skipWhitespace());
+			case OBJ_VALUE:
+			{
+				if (this.skipWhitespace() != ':')
+				{
+					throw this.error("Was expecting ':' after \"%s\"", this.name);
+				}
+				
+				this.pos++;
+				this.stack[this.depth - 1] = OBJ_NEXT;
+				
+				return this.readValue(this.skipWhitespace());
+			}
+			case OBJ_NEXT:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == '}')
+				{
+					return this.pop(EnumJsonToken.END_OBJECT);
+				}
+				
+				if (c != ',')
+				{
+					throw this.error("Was expecting ',' or '}'");
+				}
+				
+				this.pos++;
+				
+				return this.readName(this.skipWhitespace());
+			}
+			case ARR_FIRST:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == ']')
+				{
+					return this.pop(EnumJsonToken.END_ARRAY);
+				}
+				
+				this.stack[this.depth - 1] = ARR_NEXT;
+				
+				return this.readValue(c);
+			}
+			case ARR_NEXT:
+			{
+				c = this.skipWhitespace();
+				
+				if (c == ']')
+				{
+					return this.pop(EnumJsonToken.END_ARRAY);
+				}
+				
+				if (c != ',')
+				{
+					throw this.error("Was expecting ',' or ']'");
+				}
+				
+				this.pos++;
+				
+				return this.readValue(this.skipWhitespace());
+			}
+			default: throw new IllegalStateException();
+		}
+		
+	}
+	
+	@Override
+	public EnumJsonToken current()
+	{
+		return this.tkn;
+	}
+	
+	@Override
+	public int getDepth()
+	{
+		return this.depth - 1;
+	}
+	
+	@Override
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	@Override
+	public String getString() throws JsonParseException
+	{
+		if (this.tkn == EnumJsonToken.NAME)
+		{
+			return this.name;
+		}
+		
+		if (this.tkn == EnumJsonToken.STRING || this.tkn == EnumJsonToken.NUMBER)
+		{
+			//Numbers are left in the scratch buffer until they're asked for as strings.
+			if (this.str == null)
+			{
+				this.str = this.scratch.toString();
+				
+			}
+			
+			return this.str;
+		}
+		
+		throw this.error("Was expecting a string, found %s", this.tkn);
+	}
+	
+	@Override
+	public Number getNumber() throws JsonParseException
+	{
+		this.checkNumber();
+		
+		return this.isFloat ? (Number)this.doubleValue : (Number)this.longValue;
+	}
+	
+	@Override
+	public long getLong() throws JsonParseException
+	{
+		this.checkNumber();
+		
+		return this.isFloat ? (long)this.doubleValue : this.longValue;
+	}
+	
+	@Override
+	public double getDouble() throws JsonParseException
+	{
+		this.checkNumber();
+		
+		return this.isFloat ? this.doubleValue : this.longValue;
+	}
+	
+	@Override
+	public boolean getBoolean() throws JsonParseException
+	{
+		if (this.tkn != EnumJsonToken.BOOLEAN)
+		{
+			throw this.error("Was expecting a boolean, found %s", this.tkn);
+		}
+		
+		return this.bool;
+	}
+	
+	//Whether the current number had a fraction or exponent, or was too big for a long.
+	public boolean isFloatingPoint()
+	{
+		return this.isFloat;
+	}
+	
+	@Override
+	public void skipValue() throws JsonParseException
+	{
+		this.skipping = true;
+		
+		try
+		{
+			if (this.tkn == EnumJsonToken.NAME)
+			{
+				this.next();
+				
+			}
+			
+			if (this.tkn == EnumJsonToken.BEGIN_OBJECT || this.tkn == EnumJsonToken.BEGIN_ARRAY)
+			{
+				int target = this.depth - 1;
+				
+				while (this.depth > target)
+				{
+					this.next();
+					
+				}
+				
+			}
+			
+		}
+		finally
+		{
+			this.skipping = false;
+			
+		}
+		
+	}
+	
+	@Override
+	public void close()
+	{
+		if (this.in != null)
+		{
+			try
+			{
+				this.in.close();
+				
+			}
+			catch (IOException e)
+			{
+				throw new JsonParseException(e);
+			}
+			
+		}
+		
+	}
+	
+	private void checkNumber() throws JsonParseException
+	{
+		if (this.tkn != EnumJsonToken.NUMBER)
+		{
+			throw this.error("Was expecting a number, found %s", this.tkn);
+		}
+		
+	}
+	
+	private EnumJsonToken pop(EnumJsonToken end)
+	{
+		this.pos++;
+		this.depth--;
+		
+		return this.tkn = end;
+	}
+	
+	private void push(byte state) throws JsonParseException
+	{
+		if (this.depth > MAX_DEPTH)
+		{
+			throw this.error("Nested deeper than %s levels", MAX_DEPTH);
+		}
+		
+		if (this.depth == this.stack.length)
+		{
+			this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+			
+		}
+		
+		this.stack[this.depth++] = state;
+		
+	}
+	
+	private EnumJsonToken readName(int c) throws JsonParseException
+	{
+		if (c != '"')
+		{
+			throw this.error("Was expecting a key");
+		}
+		
+		this.pos++;
+		
+		String key = this.readString();
+		
+		if (!this.skipping)
+		{
+			this.name = key;
+			
+		}
+		
+		this.stack[this.depth - 1] = OBJ_VALUE;
+		
+		return this.tkn = EnumJsonToken.NAME;
+	}
+	
+	private EnumJsonToken readValue(int c) throws JsonParseException
+	{
+		switch (c)
+		{
+			case '{': this.pos++; this.push(OBJ_FIRST); return this.tkn = EnumJsonToken.BEGIN_OBJECT;
+			case '[': this.pos++; this.push(ARR_FIRST); return this.tkn = EnumJsonToken.BEGIN_ARRAY;
+			case '"': this.pos++; this.str = this.readString(); return this.tkn = EnumJsonToken.STRING;
+			case 't': this.expectWord("true"); this.bool = true; return this.tkn = EnumJsonToken.BOOLEAN;
+			case 'f': this.expectWord("false"); this.bool = false; return this.tkn = EnumJsonToken.BOOLEAN;
+			case 'n': this.expectWord("null"); return this.tkn = EnumJsonToken.NULL;
+			case -1: throw this.error("Unexpected end of input");
+			default: break;
+		}
+		
+		if (c == '-' || (c >= '0' && c <= '9'))
+		{
+			this.readNumber();
+			
+			return this.tkn = EnumJsonToken.NUMBER;
+		}
+		
+		throw this.error("Invalid value: '%s'", (char)c);
+	}
+	
+	//Starts just past the opening quote; Returns null when skipping.
+	private String readString() throws JsonParseException
+	{
+		StringBuilder b = this.scratch;
+		boolean skip = this.skipping, useBuilder = false;
+		int from = this.pos;
+		
+		b.setLength(0);
+		
+		while (true)
+		{
+			if (this.pos == this.limit)
+			{
+				if (!skip)
+				{
+					b.append(this.buf, from, this.pos - from);
+					useBuilder = true;
+					
+				}
+				
+				if (!this.fill())
+				{
+					throw this.error("Unterminated string");
+				}
+				
+				from = this.pos;
+				
+				continue;
+			}
+			
+			char c = this.buf[this.pos];
+			
+			if (c == '"')
+			{
+				String ret = null;
+				
+				if (!skip)
+				{
+					if (useBuilder)
+					{
+						b.append(this.buf, from, this.pos - from);
+						ret = b.toString();
+						
+					}
+					else
+					{
+						ret = new String(this.buf, from, this.pos - from);
+						
+					}
+					
+				}
+				
+				this.pos++;
+				
+				return ret;
+			}
+			
+			if (c < 0x20)
+			{
+				throw this.error("Unescaped control character in string");
+			}
+			
+			if (c != '\\')
+			{
+				this.pos++;
+				
+				continue;
+			}
+			
+			if (!skip)
+			{
+				b.append(this.buf, from, this.pos - from);
+				useBuilder = true;
+				
+			}
+			
+			this.pos++;
+			
+			if (!this.ensure(1))
+			{
+				throw this.error("Unterminated string");
+			}
+			
+			char e = this.buf[this.pos++];
+			
+			switch (e)
+			{
+				case '"':
+				case '\\':
+				case '/': break;
+				case 'b': e = '\b'; break;
+				case 'f': e = '\f'; break;
+				case 'n': e = '\n'; break;
+				case 'r': e = '\r'; break;
+				case 't': e = '\t'; break;
+				case 'u': e = this.readHex(); break;
+				default: this.pos -= 2; throw this.error("Invalid escape sequence: \\%s", e);
+			}
+			
+			if (!skip)
+			{
+				b.append(e);
+				
+			}
+			
+			from = this.pos;
+			
+		}
+		
+	}
+	
+	private char readHex() throws JsonParseException
+	{
+		if (!this.ensure(4))
+		{
+			throw this.error("Unterminated unicode escape");
+		}
+		
+		int ret = 0;
+		
+		for (int c = 0; c < 4; c++)
+		{
+			int d = hexDigit(this.buf[this.pos]);
+			
+			if (d == -1)
+			{
+				throw this.error("Invalid hex digit in unicode escape");
+			}
+			
+			ret = (ret << 4) | d;
+			this.pos++;
+			
+		}
+		
+		return (char)ret;
+	}
+	
+	//Only ASCII hex digits count; Character.digit() would let fullwidth and other Unicode digits through.
+	static int hexDigit(int c)
+	{
+		if (c >= '0' && c <= '9')
+		{
+			return c - '0';
+		}
+		
+		if (c >= 'a' && c <= 'f')
+		{
+			return c - 'a' + 10;
+		}
+		
+		if (c >= 'A' && c <= 'F')
+		{
+			return c - 'A' + 10;
+		}
+		
+		return -1;
+	}
+	
+	private void readNumber() throws JsonParseException
+	{
+		StringBuilder b = this.scratch;
+		
+		b.setLength(0);
+		
+		int c = this.peek();
+		long at = this.base + this.pos;
+		
+		if (c == '-')
+		{
+			b.append('-');
+			this.pos++;
+			
+		}
+		
+		int intStart = b.length();
+		
+		this.readDigits(b);
+		
+		if (b.length() - intStart > 1 && b.charAt(intStart) == '0')
+		{
+			throw this.error("Leading zeroes aren't allowed");
+		}
+		
+		boolean frac = false;
+		
+		if (this.peek() == '.')
+		{
+			frac = true;
+			b.append('.');
+			this.pos++;
+			this.readDigits(b);
+			
+		}
+		
+		c = this.peek();
+		
+		if (c == 'e' || c == 'E')
+		{
+			frac = true;
+			b.append('e');
+			this.pos++;
+			c = this.peek();
+			
+			if (c == '+' || c == '-')
+			{
+				b.append((char)c);
+				this.pos++;
+				
+			}
+			
+			this.readDigits(b);
+			
+		}
+		
+		this.str = null;
+		
+		if (this.skipping)
+		{
+			return;
+		}
+		
+		int len = b.length();
+		
+		this.isFloat = frac;
+		
+		if (!frac)
+		{
+			//18 digits always fit; Anything longer has to be checked. Accumulated as a negative number, so Long.MIN_VALUE fits.
+			boolean check = len - intStart > 18, fits = true;
+			long v = 0L;
+			
+			for (int i = intStart; i < len; i++)
+			{
+				int d = b.charAt(i) - '0';
+				
+				if (check && v < (Long.MIN_VALUE + d) / 10)
+				{
+					fits = false;
+					break;
+				}
+				
+				v = v * 10 - d;
+				
+			}
+			
+			if (fits && (intStart != 0 || v != Long.MIN_VALUE))
+			{
+				this.longValue = intStart == 0 ? -v : v;
+				
+				return;
+			}
+			
+			this.isFloat = true;
+			
+		}
+		
+		if (this.numChars.length < len)
+		{
+			this.numChars = new char[len];
+			
+		}
+		
+		b.getChars(0, len, this.numChars, 0);
+		this.doubleValue = JsonNumbers.parseDouble(this.numChars, 0, len);
+		
+		//Infinity can't be written back out, so it's not let in either.
+		if (Double.isInfinite(this.doubleValue))
+		{
+			throw this.errorAt(at, "Number is too big to fit in a double");
+		}
+		
+	}
+	
+	private void readDigits(StringBuilder b) throws JsonParseException
+	{
+		int count = 0;
+		
+		while (true)
+		{
+			if (this.pos == this.limit && !this.fill())
+			{
+				break;
+			}
+			
+			char c = this.buf[this.pos];
+			
+			if (c < '0' || c > '9')
+			{
+				break;
+			}
+			
+			b.append(c);
+			this.pos++;
+			count++;
+			
+		}
+		
+		if (count == 0)
+		{
+			throw this.error("Was expecting a digit");
+		}
+		
+	}
+	
+	private void expectWord(String word) throws JsonParseException
+	{
+		int len = word.length();
+		
+		if (!this.ensure(len))
+		{
+			throw this.error("Was expecting \"%s\"", word);
+		}
+		
+		for (int c = 0; c < len; c++)
+		{
+			if (this.buf[this.pos + c] != word.charAt(c))
+			{
+				throw this.error("Was expecting \"%s\"", word);
+			}
+			
+		}
+		
+		this.pos += len;
+		
+	}
+	
+	//Next character without consuming it, or -1 at the end.
+	private int peek() throws JsonParseException
+	{
+		if (this.pos == this.limit && !this.fill())
+		{
+			return -1;
+		}
+		
+		return this.buf[this.pos];
+	}
+	
+	private int skipWhitespace() throws JsonParseException
+	{
+		while (true)
+		{
+			if (this.pos == this.limit && !this.fill())
+			{
+				return -1;
+			}
+			
+			char c = this.buf[this.pos];
+			
+			if (c == '\n')
+			{
+				this.line++;
+				this.lineStart = this.base + this.pos + 1;
+				
+			}
+			else if (c != ' ' && c != '\r' && c != '\t')
+			{
+				return c;
+			}
+			
+			this.pos++;
+			
+		}
+		
+	}
+	
+	private boolean ensure(int count) throws JsonParseException
+	{
+		while (this.limit - this.pos < count)
+		{
+			if (!this.fill())
+			{
+				return false;
+			}
+			
+		}
+		
+		return true;
+	}
+	
+	//Moves whatever's left to the front of the window, and reads in more; False if there wasn't anything left to read.
+	private boolean fill() throws JsonParseException
+	{
+		if (this.in == null)
+		{
+			return false;
+		}
+		
+		int left = this.limit - this.pos;
+		
+		if (this.pos > 0)
+		{
+			System.arraycopy(this.buf, this.pos, this.buf, 0, left);
+			this.base += this.pos;
+			this.pos = 0;
+			this.limit = left;
+			
+		}
+		
+		try
+		{
+			int count = this.in.read(this.buf, this.limit, this.buf.length - this.limit);
+			
+			if (count <= 0)
+			{
+				return false;
+			}
+			
+			this.limit += count;
+			
+		}
+		catch (IOException e)
+		{
+			throw new JsonParseException(e);
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public JsonParseException error(String msg, Object... args)
+	{
+		return this.errorAt(this.base + this.pos, msg, args);
+	}
+	
+	private JsonParseException errorAt(long at, String msg, Object... args)
+	{
+		return new JsonParseException("%s at line %s, col %s", String.format(msg, args), this.line, at - this.lineStart + 1);
+	}
+	
+}
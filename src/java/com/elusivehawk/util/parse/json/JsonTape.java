@@ -0,0 +1,186 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 
+ * Structural index of a UTF-8 JSON document, built in one pass without decoding anything.
+ * <p>
+ * Every token gets an entry on the tape: Its type, and where it sits in the buffer. Objects and arrays also point to the entry
+ * where they end, so whole subtrees can be stepped over without looking inside them.
+ * <br>Values are decoded one at a time, as {@link LazyJsonObject}s and {@link LazyJsonArray}s ask for them; Decoding is
+ * synchronized on the tape, since every value shares the same reader.
+ * <br>Building the tape checks everything about the syntax, escapes included, so a bad document is turned away up front.
+ * What's left for later are numbers too big for a double, duplicate keys, and bytes that aren't valid UTF-8 (which become
+ * U+FFFD, same as {@link JsonByteReader} does); Errors point at where they are in the whole document either way.
+ * 
+ * @author Elusivehawk
+ */
+final class JsonTape
+{
+	private static final EnumJsonToken[] TOKENS = EnumJsonToken.values();
+	
+	private final JsonByteReader reader;
+	private final int origin, limit;
+	private byte[] types;
+	private int[] starts, ends;
+	private int size = 0;
+	
+	@SuppressWarnings("unqualified-field-access")
+	JsonTape(ByteBuffer buf) throws JsonParseException
+	{
+		reader = new JsonByteReader(buf);
+		origin = reader.position();
+		limit = buf.limit();
+		
+		int cap = Math.max(16, buf.remaining() / 8);
+		
+		types = new byte[cap];
+		starts = new int[cap];
+		ends = new int[cap];
+		
+		this.build();
+		
+	}
+	
+	private void build() throws JsonParseException
+	{
+		JsonByteReader r = this.reader;
+		int[] open = new int[32];
+		int depth = 0;
+		
+		r.reset(this.origin, this.origin, this.limit, true);
+		
+		EnumJsonToken tkn;
+		
+		while ((tkn = r.next()) != EnumJsonToken.END_DOCUMENT)
+		{
+			int i = this.add(tkn);
+			
+			switch (tkn)
+			{
+				case BEGIN_OBJECT:
+				case BEGIN_ARRAY:
+				{
+					if (depth == open.length)
+					{
+						open = Arrays.copyOf(open, depth * 2);
+						
+					}
+					
+					open[depth++] = i;
+					this.starts[i] = r.position() - 1;
+					
+					break;
+				}
+				case END_OBJECT:
+				case END_ARRAY:
+				{
+					this.ends[open[--depth]] = i;
+					this.starts[i] = r.position() - 1;
+					
+					break;
+				}
+				case BOOLEAN: this.ends[i] = r.getBoolean() ? 1 : 0; break;
+				case NULL: break;
+				default:
+				{
+					this.starts[i] = r.tokenStart();
+					this.ends[i] = r.tokenEnd();
+					
+				}
+			}
+			
+		}
+		
+	}
+	
+	private int add(EnumJsonToken tkn)
+	{
+		if (this.size == this.types.length)
+		{
+			int cap = this.size * 2;
+			
+			this.types = Arrays.copyOf(this.types, cap);
+			this.starts = Arrays.copyOf(this.starts, cap);
+			this.ends = Arrays.copyOf(this.ends, cap);
+			
+		}
+		
+		this.types[this.size] = (byte)tkn.ordinal();
+		
+		return this.size++;
+	}
+	
+	EnumJsonToken type(int i)
+	{
+		return TOKENS[this.types[i]];
+	}
+	
+	int size()
+	{
+		return this.size;
+	}
+	
+	//The entry right after the value at i, skipping over everything inside it.
+	int next(int i)
+	{
+		EnumJsonToken tkn = this.type(i);
+		
+		return (tkn == EnumJsonToken.BEGIN_OBJECT || tkn == EnumJsonToken.BEGIN_ARRAY) ? this.ends[i] + 1 : i + 1;
+	}
+	
+	synchronized String key(int i) throws JsonParseException
+	{
+		assert this.type(i) == EnumJsonToken.NAME;
+		
+		//Read as a string value, quotes and all.
+		this.reader.reset(this.origin, this.starts[i] - 1, this.ends[i] + 1, false);
+		this.reader.next();
+		
+		return this.reader.getString();
+	}
+	
+	Object value(int i) throws JsonParseException
+	{
+		switch (this.type(i))
+		{
+			case BEGIN_OBJECT: return new LazyJsonObject(this, i);
+			case BEGIN_ARRAY: return new LazyJsonArray(this, i);
+			case NULL: return null;
+			default: return this.scalar(i);
+		}
+		
+	}
+	
+	private synchronized Object scalar(int i) throws JsonParseException
+	{
+		EnumJsonToken tkn = this.type(i);
+		JsonByteReader r = this.reader;
+		
+		switch (tkn)
+		{
+			case STRING: r.reset(this.origin, this.starts[i] - 1, this.ends[i] + 1, false); break;
+			case NUMBER: r.reset(this.origin, this.starts[i], this.ends[i], false); break;
+			case BOOLEAN: return Boolean.valueOf(this.ends[i] != 0);
+			default: throw new JsonParseException("Was expecting a value, found %s", tkn);
+		}
+		
+		r.next();
+		
+		return tkn == EnumJsonToken.STRING ? r.getString() : r.getNumber();
+	}
+	
+	//Points at the start of the entry at i; Names and strings start at their opening quote.
+	synchronized JsonParseException error(int i, String msg, Object... args)
+	{
+		EnumJsonToken tkn = this.type(i);
+		
+		this.reader.reset(this.origin, this.origin, this.limit, false);
+		
+		return this.reader.errorAt(tkn == EnumJsonToken.NAME || tkn == EnumJsonToken.STRING ? this.starts[i] - 1 : this.starts[i], msg, args);
+	}
+	
+}
@@ -0,0 +1,667 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import com.elusivehawk.util.io.IByteWriter;
+
+/**
+ * 
+ * Streaming JSON generator, writing to a {@link Writer}, {@link IByteWriter} or {@link ByteBuffer} as it goes.
+ * <p>
+ * Output goes through a small character buffer, and is encoded as UTF-8 for byte targets; Past that, nothing is allocated
+ * except the text of numbers and objects that aren't primitives (like {@link java.math.BigDecimal}), and more stack for nesting
+ * deeper than 32 levels.
+ * <br>Strings are escaped the same way for every target, including surrogates that are missing their other half.
+ * <br>Pass an indent string (like a tab) to pretty-print, or null for compact output.
+ * <br>Writing out of order (a value where a name should be, closing the wrong thing, etc.) throws an {@link IllegalStateException}.
+ * <br>Buffers don't grow; Writing past the end of one throws a {@link java.nio.BufferOverflowException}.
+ * 
+ * @author Elusivehawk
+ */
+public class JsonWriter implements Closeable, Flushable
+{
+	private static final byte DOC_EMPTY = 0, DOC_DONE = 1, OBJ_EMPTY = 2, OBJ_NEXT = 3, OBJ_VALUE = 4, ARR_EMPTY = 5, ARR_NEXT = 6;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private final Writer out;
+	private final IByteWriter bytes;
+	private final ByteBuffer bb;
+	private final String indent;
+	
+	private final char[] buf = new char[4096];
+	private int count = 0;
+	private byte[] encoded = null;
+	
+	private byte[] stack = new byte[32];
+	private int depth = 1, baseLevel = 0;
+	
+	public JsonWriter(Writer w)
+	{
+		this(w, null);
+		
+	}
+	
+	public JsonWriter(Writer w, String ind)
+	{
+		this(w, null, null, ind);
+		
+	}
+	
+	public JsonWriter(IByteWriter w)
+	{
+		this(w, null);
+		
+	}
+	
+	public JsonWriter(IByteWriter w, String ind)
+	{
+		this(null, w, null, ind);
+		
+	}
+	
+	public JsonWriter(ByteBuffer buffer)
+	{
+		this(buffer, null);
+		
+	}
+	
+	public JsonWriter(ByteBuffer buffer, String ind)
+	{
+		this(null, null, buffer, ind);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	private JsonWriter(Writer w, IByteWriter bw, ByteBuffer buffer, String ind)
+	{
+		assert w != null || bw != null || buffer != null;
+		
+		out = w;
+		bytes = bw;
+		bb = buffer;
+		indent = ind;
+		stack[0] = DOC_EMPTY;
+		
+		if (out == null)
+		{
+			encoded = new byte[this.buf.length * 3];
+			
+		}
+		
+	}
+	
+	//Pretends the output starts this many levels in, for pretty-printing values inside of something else.
+	JsonWriter setBaseLevel(int level)
+	{
+		this.baseLevel = level;
+		
+		return this;
+	}
+	
+	public JsonWriter beginObject()
+	{
+		this.beforeValue();
+		this.push(OBJ_EMPTY);
+		this.write('{');
+		
+		return this;
+	}
+	
+	public JsonWriter endObject()
+	{
+		return this.end(OBJ_EMPTY, OBJ_NEXT, '}');
+	}
+	
+	public JsonWriter beginArray()
+	{
+		this.beforeValue();
+		this.push(ARR_EMPTY);
+		this.write('[');
+		
+		return this;
+	}
+	
+	public JsonWriter endArray()
+	{
+		return this.end(ARR_EMPTY, ARR_NEXT, ']');
+	}
+	
+	public JsonWriter name(String name)
+	{
+		assert name != null;
+		
+		byte state = this.stack[this.depth - 1];
+		
+		if (state == OBJ_NEXT)
+		{
+			this.write(',');
+			
+		}
+		else if (state != OBJ_EMPTY)
+		{
+			throw new IllegalStateException("Names can only go in objects, before each value");
+		}
+		
+		this.newline();
+		this.writeString(name);
+		this.write(':');
+		
+		if (this.indent != null)
+		{
+			this.write(' ');
+			
+		}
+		
+		this.stack[this.depth - 1] = OBJ_VALUE;
+		
+		return this;
+	}
+	
+	public JsonWriter value(String str)
+	{
+		if (str == null)
+		{
+			return this.nullValue();
+		}
+		
+		this.beforeValue();
+		this.writeString(str);
+		
+		return this;
+	}
+	
+	public JsonWriter value(boolean b)
+	{
+		this.beforeValue();
+		this.writeRaw(b ? "true" : "false");
+		
+		return this;
+	}
+	
+	public JsonWriter value(long l)
+	{
+		this.beforeValue();
+		
+		if (this.buf.length - this.count < 20)
+		{
+			this.flushBuffer(false);
+			
+		}
+		
+		if (l == Long.MIN_VALUE)
+		{
+			this.writeRaw("-9223372036854775808");
+			
+			return this;
+		}
+		
+		long v = l;
+		
+		if (v < 0)
+		{
+			this.buf[this.count++] = '-';
+			v = -v;
+			
+		}
+		
+		int digits = 1;
+		
+		for (long n = v; n >= 10; n /= 10)
+		{
+			digits++;
+			
+		}
+		
+		int i = this.count + digits;
+		
+		this.count = i;
+		
+		do
+		{
+			this.buf[--i] = (char)('0' + (v % 10));
+			v /= 10;
+			
+		}
+		while (v != 0);
+		
+		return this;
+	}
+	
+	@SuppressWarnings("boxing")
+	public JsonWriter value(double d)
+	{
+		if (Double.isNaN(d) || Double.isInfinite(d))
+		{
+			throw new IllegalArgumentException(String.format("JSON can't hold %s", d));
+		}
+		
+		this.beforeValue();
+		
+		if (this.buf.length - this.count < JsonNumbers.MAX_CHARS)
+		{
+			this.flushBuffer(false);
+			
+		}
+		
+		this.count = JsonNumbers.format(d, this.buf, this.count);
+		
+		return this;
+	}
+	
+	//Floats get their own shortest form; Widened to a double, 0.1f would come out as 0.10000000149011612.
+	@SuppressWarnings("boxing")
+	public JsonWriter value(float f)
+	{
+		if (Float.isNaN(f) || Float.isInfinite(f))
+		{
+			throw new IllegalArgumentException(String.format("JSON can't hold %s", f));
+		}
+		
+		return this.rawValue(Float.toString(f));
+	}
+	
+	public JsonWriter value(Number n)
+	{
+		if (n == null)
+		{
+			return this.nullValue();
+		}
+		
+		if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte)
+		{
+			return this.value(n.longValue());
+		}
+		
+		if (n instanceof Double)
+		{
+			return this.value(n.doubleValue());
+		}
+		
+		if (n instanceof Float)
+		{
+			return this.value(n.floatValue());
+		}
+		
+		//BigDecimal and friends already print as valid JSON numbers.
+		return this.rawValue(n.toString());
+	}
+	
+	//Anything that isn't a JSON type gets written as its string form.
+	public JsonWriter value(Object obj)
+	{
+		if (obj == null)
+		{
+			return this.nullValue();
+		}
+		
+		if (obj instanceof String)
+		{
+			return this.value((String)obj);
+		}
+		
+		if (obj instanceof Number)
+		{
+			return this.value((Number)obj);
+		}
+		
+		if (obj instanceof Boolean)
+		{
+			return this.value(((Boolean)obj).booleanValue());
+		}
+		
+		if (obj instanceof IJsonSerializer)
+		{
+			((IJsonSerializer)obj).writeJson(this);
+			
+			return this;
+		}
+		
+		return this.value(obj.toString());
+	}
+	
+	public JsonWriter nullValue()
+	{
+		this.beforeValue();
+		this.writeRaw("null");
+		
+		return this;
+	}
+	
+	//Writes already-encoded JSON as a value; It's trusted to be valid.
+	public JsonWriter rawValue(String json)
+	{
+		this.beforeValue();
+		this.writeRaw(json);
+		
+		return this;
+	}
+	
+	public int getDepth()
+	{
+		return this.depth - 1;
+	}
+	
+	@Override
+	public void flush()
+	{
+		this.flushBuffer(false);
+		
+		try
+		{
+			if (this.out != null)
+			{
+				this.out.flush();
+				
+			}
+			else if (this.bytes != null)
+			{
+				this.bytes.flush();
+				
+			}
+			
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		this.flushBuffer(true);
+		
+		if (this.out != null)
+		{
+			this.out.close();
+			
+		}
+		else if (this.bytes instanceof Closeable)
+		{
+			((Closeable)this.bytes).close();
+			
+		}
+		
+	}
+	
+	private void beforeValue()
+	{
+		switch (this.stack[this.depth - 1])
+		{
+			case DOC_EMPTY: this.stack[0] = DOC_DONE; break;
+			case OBJ_VALUE: this.stack[this.depth - 1] = OBJ_NEXT; break;
+			case ARR_EMPTY: this.stack[this.depth - 1] = ARR_NEXT; this.newline(); break;
+			case ARR_NEXT: this.write(','); this.newline(); break;
+			case DOC_DONE: throw new IllegalStateException("There can only be one root value");
+			default: throw new IllegalStateException("Values in objects need names");
+		}
+		
+	}
+	
+	private JsonWriter end(byte empty, byte full, char c)
+	{
+		byte state = this.stack[this.depth - 1];
+		
+		if (state != empty && state != full)
+		{
+			throw new IllegalStateException(String.format("Nothing to close with '%s'", c));
+		}
+		
+		this.depth--;
+		
+		if (state == full)
+		{
+			this.newline();
+			
+		}
+		
+		this.write(c);
+		
+		return this;
+	}
+	
+	private void push(byte state)
+	{
+		if (this.depth == this.stack.length)
+		{
+			byte[] s = new byte[this.stack.length * 2];
+			
+			System.arraycopy(this.stack, 0, s, 0, this.depth);
+			this.stack = s;
+			
+		}
+		
+		this.stack[this.depth++] = state;
+		
+	}
+	
+	private void newline()
+	{
+		if (this.indent == null)
+		{
+			return;
+		}
+		
+		this.write('\n');
+		
+		for (int c = 1 - this.baseLevel; c < this.depth; c++)
+		{
+			this.writeRaw(this.indent);
+			
+		}
+		
+	}
+	
+	private void writeString(String str)
+	{
+		this.write('"');
+		
+		int len = str.length(), from = 0;
+		
+		for (int i = 0; i < len; i++)
+		{
+			char c = str.charAt(i);
+			
+			if (c >= 0x20 && c != '"' && c != '\\' && c != 0x2028 && c != 0x2029 && !Character.isSurrogate(c))
+			{
+				continue;
+			}
+			
+			//Pairs go through as they are; Lone halves can't be encoded, so they're escaped instead.
+			if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1)))
+			{
+				i++;
+				continue;
+			}
+			
+			this.writeRaw(str, from, i);
+			from = i + 1;
+			this.write('\\');
+			
+			switch (c)
+			{
+				case '"': this.write('"'); break;
+				case '\\': this.write('\\'); break;
+				case '\n': this.write('n'); break;
+				case '\r': this.write('r'); break;
+				case '\t': this.write('t'); break;
+				case '\b': this.write('b'); break;
+				case '\f': this.write('f'); break;
+				default:
+				{
+					this.write('u');
+					this.write(HEX[c >>> 12]);
+					this.write(HEX[(c >>> 8) & 0xF]);
+					this.write(HEX[(c >>> 4) & 0xF]);
+					this.write(HEX[c & 0xF]);
+					
+				}
+			}
+			
+		}
+		
+		this.writeRaw(str, from, len);
+		this.write('"');
+		
+	}
+	
+	private void writeRaw(String str)
+	{
+		this.writeRaw(str, 0, str.length());
+		
+	}
+	
+	private void writeRaw(String str, int from, int to)
+	{
+		int i = from;
+		
+		while (i < to)
+		{
+			if (this.count == this.buf.length)
+			{
+				this.flushBuffer(false);
+				
+			}
+			
+			int n = Math.min(to - i, this.buf.length - this.count);
+			
+			str.getChars(i, i + n, this.buf, this.count);
+			this.count += n;
+			i += n;
+			
+		}
+		
+	}
+	
+	private void write(char c)
+	{
+		if (this.count == this.buf.length)
+		{
+			this.flushBuffer(false);
+			
+		}
+		
+		this.buf[this.count++] = c;
+		
+	}
+	
+	//Byte targets hold back a trailing high surrogate until its other half shows up, unless this is the last flush.
+	@SuppressWarnings("boxing")
+	private void flushBuffer(boolean last)
+	{
+		int n = this.count;
+		
+		if (n == 0)
+		{
+			return;
+		}
+		
+		if (this.out != null)
+		{
+			try
+			{
+				this.out.write(this.buf, 0, n);
+				
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			
+			this.count = 0;
+			
+			return;
+		}
+		
+		int keep = !last && Character.isHighSurrogate(this.buf[n - 1]) ? 1 : 0;
+		int len = this.encode(n - keep);
+		
+		if (this.bytes != null)
+		{
+			for (int off = 0; off < len;)
+			{
+				int written = this.bytes.write(this.encoded, off, len - off);
+				
+				if (written <= 0)
+				{
+					throw new UncheckedIOException(new IOException(String.format("Only %s of %s bytes could be written", off, len)));
+				}
+				
+				off += written;
+				
+			}
+			
+		}
+		else
+		{
+			this.bb.put(this.encoded, 0, len);
+			
+		}
+		
+		if (keep == 1)
+		{
+			this.buf[0] = this.buf[n - 1];
+			
+		}
+		
+		this.count = keep;
+		
+	}
+	
+	private int encode(int n)
+	{
+		char[] src = this.buf;
+		byte[] dest = this.encoded;
+		int ret = 0;
+		
+		for (int i = 0; i < n; i++)
+		{
+			char c = src[i];
+			
+			if (c < 0x80)
+			{
+				dest[ret++] = (byte)c;
+				
+			}
+			else if (c < 0x800)
+			{
+				dest[ret++] = (byte)(0xC0 | (c >>> 6));
+				dest[ret++] = (byte)(0x80 | (c & 0x3F));
+				
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(src[i + 1]))
+			{
+				int cp = Character.toCodePoint(c, src[++i]);
+				
+				dest[ret++] = (byte)(0xF0 | (cp >>> 18));
+				dest[ret++] = (byte)(0x80 | ((cp >>> 12) & 0x3F));
+				dest[ret++] = (byte)(0x80 | ((cp >>> 6) & 0x3F));
+				dest[ret++] = (byte)(0x80 | (cp & 0x3F));
+				
+			}
+			else if (Character.isSurrogate(c))
+			{
+				//Only raw text gets here; Strings have their lone surrogates escaped.
+				dest[ret++] = '?';
+				
+			}
+			else
+			{
+				dest[ret++] = (byte)(0xE0 | (c >>> 12));
+				dest[ret++] = (byte)(0x80 | ((c >>> 6) & 0x3F));
+				dest[ret++] = (byte)(0x80 | (c & 0x3F));
+				
+			}
+			
+		}
+		
+		return ret;
+	}
+	
+}
@@ -0,0 +1,212 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * 
+ * {@link JsonArray} backed by a {@link JsonTape}, only decoding the elements that are read.
+ * <p>
+ * Where each element sits is worked out the first time the array's used; Each element is then decoded the first time it's read.
+ * <br>Adding to or removing from one decodes the rest of it, after which it works like any other {@link JsonArray}.
+ * <br>So does asking whether it's numeric, so numeric arrays end up unboxed just like parsed ones.
+ * 
+ * @author Elusivehawk
+ */
+public class LazyJsonArray extends JsonArray
+{
+	private static final Object UNREAD = new Object();
+	
+	private final JsonTape tape;
+	private final int index;
+	private int[] positions = null;
+	private Object[] values = null;
+	private int length = -1;
+	private boolean materialized = false;
+	
+	@SuppressWarnings("unqualified-field-access")
+	LazyJsonArray(JsonTape t, int i)
+	{
+		assert t.type(i) == EnumJsonToken.BEGIN_ARRAY;
+		
+		tape = t;
+		index = i;
+		
+	}
+	
+	@Override
+	public int length()
+	{
+		if (this.materialized)
+		{
+			return super.length();
+		}
+		
+		this.index();
+		
+		return this.length;
+	}
+	
+	@Override
+	public Object getValue(int i)
+	{
+		if (this.materialized)
+		{
+			return super.getValue(i);
+		}
+		
+		this.index();
+		
+		if (i < 0 || i >= this.length)
+		{
+			throw new IndexOutOfBoundsException(Integer.toString(i));
+		}
+		
+		Object ret = this.values[i];
+		
+		if (ret == UNREAD)
+		{
+			ret = this.tape.value(this.positions[i]);
+			this.values[i] = ret;
+			
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public Iterator<Object> iterator()
+	{
+		if (this.materialized)
+		{
+			return super.iterator();
+		}
+		
+		return new Cursor();
+	}
+	
+	@Override
+	public void writeJson(JsonWriter w)
+	{
+		if (this.materialized)
+		{
+			super.writeJson(w);
+			
+			return;
+		}
+		
+		w.beginArray();
+		
+		for (int c = 0; c < this.length(); c++)
+		{
+			w.value(this.getValue(c));
+			
+		}
+		
+		w.endArray();
+		
+	}
+	
+	@Override
+	public void add(Object obj)
+	{
+		this.materialize();
+		super.add(obj);
+		
+	}
+	
+	@Override
+	public void addAll(Object... objs)
+	{
+		this.materialize();
+		super.addAll(objs);
+		
+	}
+	
+	@Override
+	void remove(int i)
+	{
+		this.materialize();
+		super.remove(i);
+		
+	}
+	
+	@Override
+	public boolean isNumeric()
+	{
+		this.materialize();
+		
+		return super.isNumeric();
+	}
+	
+	@Override
+	public LongBuffer longView()
+	{
+		this.materialize();
+		
+		return super.longView();
+	}
+	
+	@Override
+	public DoubleBuffer doubleView()
+	{
+		this.materialize();
+		
+		return super.doubleView();
+	}
+	
+	private void index()
+	{
+		if (this.positions != null)
+		{
+			return;
+		}
+		
+		int[] pos = new int[8];
+		int count = 0;
+		
+		for (int i = this.index + 1; this.tape.type(i) != EnumJsonToken.END_ARRAY; i = this.tape.next(i))
+		{
+			if (count == pos.length)
+			{
+				pos = Arrays.copyOf(pos, count * 2);
+				
+			}
+			
+			pos[count++] = i;
+			
+		}
+		
+		this.values = new Object[count];
+		this.length = count;
+		this.positions = pos;
+		
+		Arrays.fill(this.values, UNREAD);
+		
+	}
+	
+	private void materialize()
+	{
+		if (this.materialized)
+		{
+			return;
+		}
+		
+		int len = this.length();
+		
+		for (int c = 0; c < len; c++)
+		{
+			super.add(this.getValue(c));
+			
+		}
+		
+		this.materialized = true;
+		this.positions = null;
+		this.values = null;
+		
+	}
+	
+}
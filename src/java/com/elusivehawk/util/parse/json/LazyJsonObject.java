@@ -0,0 +1,174 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 
+ * {@link JsonObject} backed by a {@link JsonTape}, only decoding what's asked for.
+ * <p>
+ * Keys are decoded the first time any of them is looked up, and each value the first time it's read; Nested objects and
+ * arrays are lazy as well. Duplicate keys are only caught when an object's keys are decoded.
+ * <br>Adding to one decodes the rest of it, after which it works like any other {@link JsonObject}.
+ * 
+ * @author Elusivehawk
+ */
+@SuppressWarnings("boxing")
+public class LazyJsonObject extends JsonObject
+{
+	private static final Object UNREAD = new Object();
+	
+	private final JsonTape tape;
+	private final int index;
+	private Map<String, Integer> keys = null;
+	private Object[] values = null;
+	private int[] positions = null;
+	private boolean materialized = false;
+	
+	@SuppressWarnings("unqualified-field-access")
+	LazyJsonObject(JsonTape t, int i)
+	{
+		assert t.type(i) == EnumJsonToken.BEGIN_OBJECT;
+		
+		tape = t;
+		index = i;
+		
+	}
+	
+	@Override
+	public Object getValue(String name)
+	{
+		if (this.materialized)
+		{
+			return super.getValue(name);
+		}
+		
+		Integer slot = this.index().get(name);
+		
+		if (slot == null)
+		{
+			return null;
+		}
+		
+		Object ret = this.values[slot];
+		
+		if (ret == UNREAD)
+		{
+			ret = this.tape.value(this.positions[slot]);
+			this.values[slot] = ret;
+			
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public boolean hasKey(String name)
+	{
+		return this.materialized ? super.hasKey(name) : this.index().containsKey(name);
+	}
+	
+	@Override
+	public Set<String> keys()
+	{
+		return this.materialized ? super.keys() : Collections.unmodifiableSet(this.index().keySet());
+	}
+	
+	@Override
+	public boolean add(String name, Object data)
+	{
+		this.materialize();
+		
+		return super.add(name, data);
+	}
+	
+	@Override
+	public void writeJson(JsonWriter w)
+	{
+		if (this.materialized)
+		{
+			super.writeJson(w);
+			
+			return;
+		}
+		
+		Map<String, Integer> idx = this.index();
+		
+		w.beginObject();
+		
+		for (Map.Entry<String, Integer> entry : idx.entrySet())
+		{
+			w.name(entry.getKey()).value(this.getValue(entry.getKey()));
+			
+		}
+		
+		w.endObject();
+		
+	}
+	
+	private Map<String, Integer> index()
+	{
+		if (this.keys != null)
+		{
+			return this.keys;
+		}
+		
+		Map<String, Integer> ret = new HashMap<String, Integer>();
+		int[] pos = new int[8];
+		int slot = 0;
+		
+		//Keys and values take turns on the tape.
+		for (int i = this.index + 1; this.tape.type(i) != EnumJsonToken.END_OBJECT; i = this.tape.next(i + 1))
+		{
+			String name = this.tape.key(i);
+			
+			if (ret.put(name, slot) != null)
+			{
+				throw this.tape.error(i, "Duplicate key: %s", name);
+			}
+			
+			if (slot == pos.length)
+			{
+				pos = Arrays.copyOf(pos, slot * 2);
+				
+			}
+			
+			pos[slot++] = i + 1;
+			
+		}
+		
+		this.values = new Object[slot];
+		this.positions = pos;
+		
+		Arrays.fill(this.values, UNREAD);
+		
+		this.keys = ret;
+		
+		return ret;
+	}
+	
+	private void materialize()
+	{
+		if (this.materialized)
+		{
+			return;
+		}
+		
+		for (String name : this.index().keySet())
+		{
+			super.add(name, this.getValue(name));
+			
+		}
+		
+		this.materialized = true;
+		this.keys = null;
+		this.values = null;
+		this.positions = null;
+		
+	}
+	
+}
@@ -0,0 +1,292 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import com.elusivehawk.util.io.MappedFile;
+import com.elusivehawk.util.io.SegmentedBuffer;
+import com.elusivehawk.util.parse.json.JsonByteReader.KeyCache;
+
+/**
+ * 
+ * Parallel reader for newline-delimited JSON, where every line holds one value.
+ * <p>
+ * Input is split into chunks that end on a line break, which are parsed on a {@link ForkJoinPool}; Raw line breaks can't
+ * show up inside JSON strings, so no chunk ever starts in the middle of a value.
+ * <br>Files are memory-mapped, and chunks inside a single mapping are read in place. Every worker thread keeps its own
+ * {@link KeyCache}, so repeated keys are only ever decoded once per thread.
+ * <br>Results can be handed over in file order, from the calling thread, or as soon as they're parsed, from the worker
+ * threads. Only a few chunks are in flight at a time either way, so memory use doesn't grow with the size of the input.
+ * <br>Blank lines are skipped; Errors say which byte the offending line starts at.
+ * 
+ * @author Elusivehawk
+ */
+public class NdjsonReader
+{
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+	
+	private final ForkJoinPool pool;
+	private final int chunkSize, window;
+	private final ThreadLocal<KeyCache> keys = ThreadLocal.withInitial(KeyCache::new);
+	
+	public NdjsonReader()
+	{
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+		
+	}
+	
+	@SuppressWarnings("unqualified-field-access")
+	public NdjsonReader(ForkJoinPool p, int size)
+	{
+		assert p != null && size > 0;
+		
+		pool = p;
+		chunkSize = size;
+		window = p.getParallelism() * 2 + 1;
+		
+	}
+	
+	public long read(File file, Consumer<? super JsonObject> out, boolean ordered) throws IOException
+	{
+		return this.read(file, JsonParser::parse, out, ordered);
+	}
+	
+	//The parser's given a fresh reader for each line, and has to read exactly one value off it.
+	public <T> long read(File file, Function<? super IJsonReader, ? extends T> parser, Consumer<? super T> out, boolean ordered) throws IOException
+	{
+		if (file.length() == 0L)
+		{
+			return 0L;
+		}
+		
+		try (MappedFile mf = new MappedFile(file))
+		{
+			return this.read(mf, parser, out, ordered);
+		}
+		
+	}
+	
+	//Reads everything between the buffer's read and write positions, without moving either; Returns how many values were read.
+	public <T> long read(SegmentedBuffer buf, Function<? super IJsonReader, ? extends T> parser, Consumer<? super T> out, boolean ordered)
+	{
+		long pos = buf.readPosition(), end = buf.writePosition(), ret = 0L;
+		
+		if (end - pos >= 3 && buf.getByte(pos) == (byte)0xEF && buf.getByte(pos + 1) == (byte)0xBB && buf.getByte(pos + 2) == (byte)0xBF)
+		{
+			pos += 3;
+			
+		}
+		
+		ArrayDeque<Chunk<T>> pending = new ArrayDeque<Chunk<T>>();
+		
+		try
+		{
+			while (pos < end || !pending.isEmpty())
+			{
+				while (pos < end && pending.size() < this.window)
+				{
+					long to = this.chunkEnd(buf, pos, end);
+					Chunk<T> next = new Chunk<T>(buf, pos, to, parser, ordered ? null : out);
+					
+					this.pool.execute(next);
+					pending.add(next);
+					pos = to;
+					
+				}
+				
+				Chunk<T> done = pending.remove();
+				List<T> objs = done.join();
+				
+				if (ordered)
+				{
+					for (T obj : objs)
+					{
+						out.accept(obj);
+						
+					}
+					
+				}
+				
+				ret += done.count;
+				
+			}
+			
+		}
+		catch (RuntimeException | Error e)
+		{
+			for (ForkJoinTask<?> t : pending)
+			{
+				t.cancel(false);
+				
+			}
+			
+			throw e;
+		}
+		
+		return ret;
+	}
+	
+	//Where the chunk starting at pos ends: Just past the first line break after it's big enough.
+	private long chunkEnd(SegmentedBuffer buf, long pos, long end)
+	{
+		long ret = Math.min(pos + this.chunkSize, end);
+		
+		while (ret < end && buf.getByte(ret - 1) != '\n')
+		{
+			ret++;
+			
+		}
+		
+		if (ret - pos > Integer.MAX_VALUE)
+		{
+			throw new JsonParseException("Line at byte %s is too long", Long.toString(pos));
+		}
+		
+		return ret;
+	}
+	
+	private static int lineEnd(ByteBuffer buf, byte[] array, int off, int from, int to)
+	{
+		int i = from;
+		
+		if (array != null)
+		{
+			while (i < to && array[off + i] != '\n')
+			{
+				i++;
+				
+			}
+			
+			return i;
+		}
+		
+		while (i < to && buf.get(i) != '\n')
+		{
+			i++;
+			
+		}
+		
+		return i;
+	}
+	
+	private static boolean isBlank(ByteBuffer buf, byte[] array, int off, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+		{
+			byte b = array != null ? array[off + i] : buf.get(i);
+			
+			if (b != ' ' && b != '\t' && b != '\r')
+			{
+				return false;
+			}
+			
+		}
+		
+		return true;
+	}
+	
+	@SuppressWarnings("serial")
+	private final class Chunk<T> extends RecursiveTask<List<T>>
+	{
+		private final SegmentedBuffer buf;
+		private final long from, to;
+		private final Function<? super IJsonReader, ? extends T> parser;
+		private final Consumer<? super T> out;
+		private int count = 0;
+		
+		@SuppressWarnings("unqualified-field-access")
+		Chunk(SegmentedBuffer b, long start, long end, Function<? super IJsonReader, ? extends T> p, Consumer<? super T> c)
+		{
+			buf = b;
+			from = start;
+			to = end;
+			parser = p;
+			out = c;
+			
+		}
+		
+		@Override
+		protected List<T> compute()
+		{
+			int len = (int)(this.to - this.from);
+			ByteBuffer bytes;
+			
+			if (this.from / this.buf.segmentSize() == (this.to - 1) / this.buf.segmentSize())
+			{
+				bytes = this.buf.asByteBuffer(this.from, len);
+				
+			}
+			else
+			{
+				//Chunks crossing from one mapping into the next get copied.
+				byte[] tmp = new byte[len];
+				
+				this.buf.get(this.from, tmp, 0, len);
+				bytes = ByteBuffer.wrap(tmp);
+				
+			}
+			
+			byte[] array = bytes.hasArray() ? bytes.array() : null;
+			int off = bytes.hasArray() ? bytes.arrayOffset() : 0;
+			List<T> ret = this.out == null ? new ArrayList<T>() : null;
+			JsonByteReader r = new JsonByteReader(bytes, NdjsonReader.this.keys.get());
+			
+			for (int start = 0; start < len;)
+			{
+				int end = lineEnd(bytes, array, off, start, len);
+				
+				if (isBlank(bytes, array, off, start, end))
+				{
+					start = end + 1;
+					continue;
+				}
+				
+				r.reset(start, end, false);
+				
+				try
+				{
+					T obj = this.parser.apply(r);
+					
+					if (r.next() != EnumJsonToken.END_DOCUMENT)
+					{
+						throw new JsonParseException("Found more than one value on the line");
+					}
+					
+					if (ret == null)
+					{
+						this.out.accept(obj);
+						
+					}
+					else
+					{
+						ret.add(obj);
+						
+					}
+					
+					this.count++;
+					
+				}
+				catch (JsonParseException e)
+				{
+					throw new JsonParseException(String.format("On the line at byte %s: %s", Long.toString(this.from + start), e.getMessage()), e);
+				}
+				
+				start = end + 1;
+				
+			}
+			
+			return ret;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,271 @@
+
+package com.elusivehawk.util.parse.json;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 
+ * Unboxed storage for {@link JsonArray}s holding nothing but the longs and doubles the parsers make.
+ * <p>
+ * Elements are kept in a long[] until the first double shows up, after which everything's kept in a double[], with a bit set
+ * for each element that was added as a long; Longs too big to be exact as doubles can't be mixed with doubles.
+ * <br>Anything that can't be stored is refused, and the array goes back to boxing everything.
+ * <br>Elements are only boxed when they're asked for as objects, and come back the same type they went in as.
+ * 
+ * @author Elusivehawk
+ */
+final class PackedNumbers implements Iterable<Object>
+{
+	private static final long EXACT = 1L << 53;
+	
+	private long[] longs = new long[8];
+	private double[] doubles = null;
+	private long[] integral = null;
+	private int size = 0;
+	
+	//Returns false if the object can't be stored, in which case nothing's changed.
+	boolean add(Object obj)
+	{
+		if (obj instanceof Long)
+		{
+			return this.add(((Long)obj).longValue());
+		}
+		
+		if (obj instanceof Double)
+		{
+			return this.add(((Double)obj).doubleValue());
+		}
+		
+		return false;
+	}
+	
+	boolean add(long l)
+	{
+		if (this.doubles == null)
+		{
+			if (this.size == this.longs.length)
+			{
+				this.longs = Arrays.copyOf(this.longs, this.size * 2);
+				
+			}
+			
+			this.longs[this.size++] = l;
+			
+			return true;
+		}
+		
+		if (l > EXACT || l < -EXACT)
+		{
+			return false;
+		}
+		
+		this.ensureDoubles();
+		
+		this.integral[this.size >>> 6] |= 1L << this.size;
+		this.doubles[this.size++] = l;
+		
+		return true;
+	}
+	
+	boolean add(double d)
+	{
+		if (this.doubles == null)
+		{
+			for (int c = 0; c < this.size; c++)
+			{
+				if (this.longs[c] > EXACT || this.longs[c] < -EXACT)
+				{
+					return false;
+				}
+				
+			}
+			
+			double[] ds = new double[this.longs.length];
+			long[] bits = new long[(ds.length + 63) >>> 6];
+			
+			for (int c = 0; c < this.size; c++)
+			{
+				ds[c] = this.longs[c];
+				bits[c >>> 6] |= 1L << c;
+				
+			}
+			
+			this.doubles = ds;
+			this.integral = bits;
+			this.longs = null;
+			
+		}
+		
+		this.ensureDoubles();
+		
+		this.doubles[this.size++] = d;
+		
+		return true;
+	}
+	
+	private void ensureDoubles()
+	{
+		if (this.size == this.doubles.length)
+		{
+			this.doubles = Arrays.copyOf(this.doubles, this.size * 2);
+			this.integral = Arrays.copyOf(this.integral, (this.doubles.length + 63) >>> 6);
+			
+		}
+		
+	}
+	
+	int size()
+	{
+		return this.size;
+	}
+	
+	boolean isIntegral(int i)
+	{
+		this.check(i);
+		
+		return this.doubles == null || (this.integral[i >>> 6] & (1L << i)) != 0L;
+	}
+	
+	Object get(int i)
+	{
+		if (this.doubles == null)
+		{
+			this.check(i);
+			
+			return Long.valueOf(this.longs[i]);
+		}
+		
+		return this.isIntegral(i) ? (Object)Long.valueOf((long)this.doubles[i]) : (Object)Double.valueOf(this.doubles[i]);
+	}
+	
+	long getLong(int i)
+	{
+		this.check(i);
+		
+		return this.doubles == null ? this.longs[i] : (long)this.doubles[i];
+	}
+	
+	double getDouble(int i)
+	{
+		this.check(i);
+		
+		return this.doubles == null ? this.longs[i] : this.doubles[i];
+	}
+	
+	//Narrowed the same way Long.intValue() and Double.intValue() would.
+	int getInt(int i)
+	{
+		return this.isIntegral(i) ? (int)this.getLong(i) : (int)this.doubles[i];
+	}
+	
+	//Read-only, and null unless everything's being kept as longs.
+	LongBuffer longView()
+	{
+		return this.doubles == null ? LongBuffer.wrap(this.longs, 0, this.size).asReadOnlyBuffer() : null;
+	}
+	
+	//Read-only, and null unless everything's being kept as doubles.
+	DoubleBuffer doubleView()
+	{
+		return this.doubles == null ? null : DoubleBuffer.wrap(this.doubles, 0, this.size).asReadOnlyBuffer();
+	}
+	
+	void copyTo(LongBuffer buf)
+	{
+		if (this.doubles == null)
+		{
+			buf.put(this.longs, 0, this.size);
+			
+			return;
+		}
+		
+		for (int c = 0; c < this.size; c++)
+		{
+			buf.put((long)this.doubles[c]);
+			
+		}
+		
+	}
+	
+	void copyTo(DoubleBuffer buf)
+	{
+		if (this.doubles != null)
+		{
+			buf.put(this.doubles, 0, this.size);
+			
+			return;
+		}
+		
+		for (int c = 0; c < this.size; c++)
+		{
+			buf.put(this.longs[c]);
+			
+		}
+		
+	}
+	
+	void write(JsonWriter w)
+	{
+		w.beginArray();
+		
+		for (int c = 0; c < this.size; c++)
+		{
+			if (this.isIntegral(c))
+			{
+				w.value(this.getLong(c));
+				
+			}
+			else
+			{
+				w.value(this.doubles[c]);
+				
+			}
+			
+		}
+		
+		w.endArray();
+		
+	}
+	
+	@Override
+	public Iterator<Object> iterator()
+	{
+		return new Iterator<Object>()
+		{
+			private int next = 0;
+			
+			@Override
+			public boolean hasNext()
+			{
+				return this.next < PackedNumbers.this.size;
+			}
+			
+			@Override
+			public Object next()
+			{
+				if (!this.hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				
+				return PackedNumbers.this.get(this.next++);
+			}
+			
+		};
+	}
+	
+	@SuppressWarnings("boxing")
+	private void check(int i)
+	{
+		if (i < 0 || i >= this.size)
+		{
+			throw new IndexOutOfBoundsException(String.format("Index: %s, Size: %s", i, this.size));
+		}
+		
+	}
+	
+}
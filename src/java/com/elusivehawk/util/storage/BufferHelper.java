@@ -1,6 +1,10 @@
 
 package com.elusivehawk.util.storage;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
@@ -20,16 +24,46 @@ import com.elusivehawk.util.math.VectorF;
  * Helper class for creating NIO buffers.
  * <p>
  * If you just need something that emulates a buffer without the finite size, consider {@link Buffer} instead.
+ * <p>
+ * Once a {@link DirectBufferPool} is set, every byte buffer is drawn from it; Hand the ones you're finished with back using {@link #release(ByteBuffer)}.
+ * <br>Views (char buffers, float buffers, etc.) can't be released, so they're left to the GC as usual.
+ * <br>{@link #free(ByteBuffer)} gives a direct buffer's memory back right away, without waiting on the GC.
  * 
  * @author Elusivehawk
  */
 @SuppressWarnings("boxing")
 public final class BufferHelper
 {
+	private static final MethodHandle FREE = findFree();
+	private static volatile DirectBufferPool pool = null;
+	
 	private BufferHelper(){}
 	
+	public static DirectBufferPool getPool()
+	{
+		return pool;
+	}
+	
+	public static synchronized void setPool(DirectBufferPool p)
+	{
+		pool = p;
+		
+	}
+	
 	public static ByteBuffer createByteBuffer(int size)
 	{
+		return createByteBuffer(size, true);
+	}
+	
+	private static ByteBuffer createByteBuffer(int size, boolean releasable)
+	{
+		DirectBufferPool p = pool;
+		
+		if (p != null)
+		{
+			return p.take(size, releasable);
+		}
+		
 		if (size <= 0)
 		{
 			throw new RuntimeException(String.format("Cannot make a ByteBuffer with a size of %s", size));
@@ -38,34 +72,95 @@ public final class BufferHelper
 		return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
 	}
 	
+	public static boolean release(ByteBuffer buf)
+	{
+		DirectBufferPool p = pool;
+		
+		return p != null && p.release(buf);
+	}
+	
+	//Only works on buffers made by ByteBuffer.allocateDirect() (not slices or duplicates); Touching one after it's been freed can crash the JVM.
+	public static boolean free(ByteBuffer buf)
+	{
+		if (FREE == null || buf == null || !buf.isDirect())
+		{
+			return false;
+		}
+		
+		try
+		{
+			FREE.invokeExact(buf);
+			
+			return true;
+		}
+		catch (Throwable e)
+		{
+			return false;
+		}
+		
+	}
+	
+	//Java 9 and up go through Unsafe.invokeCleaner(); Java 8 has to call the buffer's Cleaner itself.
+	private static MethodHandle findFree()
+	{
+		try
+		{
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+			
+			try
+			{
+				Field f = unsafe.getDeclaredField("theUnsafe");
+				
+				f.setAccessible(true);
+				
+				return lookup.findVirtual(unsafe, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class)).bindTo(f.get(null));
+			}
+			catch (NoSuchMethodException e)
+			{
+				Class<?> cleaner = Class.forName("sun.misc.Cleaner");
+				MethodHandle get = lookup.findVirtual(Class.forName("sun.nio.ch.DirectBuffer"), "cleaner", MethodType.methodType(cleaner));
+				MethodHandle clean = lookup.findVirtual(cleaner, "clean", MethodType.methodType(void.class));
+				
+				return MethodHandles.filterReturnValue(get, clean).asType(MethodType.methodType(void.class, ByteBuffer.class));
+			}
+			
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			return null;
+		}
+		
+	}
+	
 	public static CharBuffer createCharBuffer(int size)
 	{
-		return createByteBuffer(size << 1).asCharBuffer();
+		return createByteBuffer(size << 1, false).asCharBuffer();
 	}
 	
 	public static DoubleBuffer createDoubleBuffer(int size)
 	{
-		return createByteBuffer(size << 3).asDoubleBuffer();
+		return createByteBuffer(size << 3, false).asDoubleBuffer();
 	}
 	
 	public static FloatBuffer createFloatBuffer(int size)
 	{
-		return createByteBuffer(size << 2).asFloatBuffer();
+		return createByteBuffer(size << 2, false).asFloatBuffer();
 	}
 	
 	public static IntBuffer createIntBuffer(int size)
 	{
-		return createByteBuffer(size << 2).asIntBuffer();
+		return createByteBuffer(size << 2, false).asIntBuffer();
 	}
 	
 	public static LongBuffer createLongBuffer(int size)
 	{
-		return createByteBuffer(size << 3).asLongBuffer();
+		return createByteBuffer(size << 3, false).asLongBuffer();
 	}
 	
 	public static ShortBuffer createShortBuffer(int size)
 	{
-		return createByteBuffer(size << 1).asShortBuffer();
+		return createByteBuffer(size << 1, false).asShortBuffer();
 	}
 	
 	public static ByteBuffer createWrapper(byte[] bs)
@@ -103,9 +198,19 @@ public final class BufferHelper
 		return ShortBuffer.wrap(bs);
 	}
 	
+	//If the pool handed out the old buffer, it's released once it's been copied, so don't touch it afterwards.
 	public static ByteBuffer expand(ByteBuffer buf, int count)
 	{
-		return (ByteBuffer)createByteBuffer(buf.capacity() + count).put(((ByteBuffer)buf.rewind())).rewind();
+		ByteBuffer ret = (ByteBuffer)createByteBuffer(buf.capacity() + count).put(((ByteBuffer)buf.rewind())).rewind();
+		DirectBufferPool p = pool;
+		
+		if (p != null)
+		{
+			p.release(buf, false);
+			
+		}
+		
+		return ret;
 	}
 	
 	public static CharBuffer expand(CharBuffer buf, int count)
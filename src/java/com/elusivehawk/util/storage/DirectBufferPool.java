@@ -0,0 +1,339 @@
+
+package com.elusivehawk.util.storage;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.elusivehawk.util.Logger;
+
+/**
+ * 
+ * Size-classed pool of direct {@link ByteBuffer}s.
+ * <p>
+ * Requests are rounded up to the next power of two, and released buffers are kept around for the next request of that size class.
+ * <br>What's handed out is a slice exactly as big as what was asked for, and is zeroed just like a fresh buffer would be.
+ * <br>Only buffers this pool handed out, and hasn't gotten back yet, are accepted; Duplicates, slices, and anything released twice are refused.
+ * <br>Requests bigger than the largest size class are allocated normally. Released buffers the pool doesn't keep (because
+ * they're too big, or their size class is full) are freed on the spot, so don't touch a buffer once it's been released.
+ * <br>The pool forgets about buffers that are never released, so the GC still frees them.
+ * <br>Leak detection records where every buffer was taken from, and reports each one that gets collected without being released.
+ * <br>It's costly, so it's off by default.
+ * 
+ * @author Elusivehawk
+ */
+public class DirectBufferPool
+{
+	private static final byte[] ZEROES = new byte[4096];
+	
+	private final int minShift, maxShift, maxPerClass;
+	private final ArrayDeque<ByteBuffer>[] classes;
+	private final ReferenceQueue<ByteBuffer> queue = new ReferenceQueue<ByteBuffer>();
+	private final Map<Integer, List<Lease>> leases = new HashMap<Integer, List<Lease>>();
+	private volatile boolean leakDetection = false;
+	private long pooledBytes = 0;
+	
+	public DirectBufferPool()
+	{
+		this(64, 1 << 20, 32);
+		
+	}
+	
+	@SuppressWarnings({"unqualified-field-access", "unchecked", "rawtypes"})
+	public DirectBufferPool(int minSize, int maxSize, int perClass)
+	{
+		assert minSize > 0 && minSize <= maxSize;
+		assert perClass >= 0;
+		
+		minShift = 32 - Integer.numberOfLeadingZeros(minSize - 1);
+		maxShift = 32 - Integer.numberOfLeadingZeros(maxSize - 1);
+		maxPerClass = perClass;
+		classes = new ArrayDeque[maxShift - minShift + 1];
+		
+		for (int c = 0; c < classes.length; c++)
+		{
+			classes[c] = new ArrayDeque<ByteBuffer>();
+			
+		}
+		
+	}
+	
+	public ByteBuffer take(int size)
+	{
+		return this.take(size, true);
+	}
+	
+	//Buffers that are never going to be released (like the ones views are made from) skip leak detection.
+	@SuppressWarnings("boxing")
+	ByteBuffer take(int size, boolean releasable)
+	{
+		if (size <= 0)
+		{
+			throw new RuntimeException(String.format("Cannot make a ByteBuffer with a size of %s", size));
+		}
+		
+		int shift = Math.max(this.minShift, 32 - Integer.numberOfLeadingZeros(size - 1));
+		ByteBuffer backing = null, ret;
+		
+		synchronized (this)
+		{
+			this.pollLeaks();
+			
+			if (shift <= this.maxShift)
+			{
+				backing = this.classes[shift - this.minShift].pollFirst();
+				
+				if (backing != null)
+				{
+					this.pooledBytes -= backing.capacity();
+					
+				}
+				
+			}
+			
+		}
+		
+		if (backing == null)
+		{
+			backing = ByteBuffer.allocateDirect(shift <= this.maxShift ? 1 << shift : size);
+			
+		}
+		else
+		{
+			zero(backing, size);
+			
+		}
+		
+		backing.clear().limit(size);
+		ret = backing.slice().order(ByteOrder.nativeOrder());
+		
+		this.track(ret, backing, size, releasable && this.leakDetection);
+		
+		return ret;
+	}
+	
+	public boolean release(ByteBuffer buf)
+	{
+		return this.release(buf, true);
+	}
+	
+	//Quiet releases are for buffers that may or may not have come from here, so refusing one isn't worth a warning.
+	boolean release(ByteBuffer buf, boolean warn)
+	{
+		if (buf == null)
+		{
+			return false;
+		}
+		
+		Lease lease;
+		
+		synchronized (this)
+		{
+			this.pollLeaks();
+			
+			lease = this.untrack(buf);
+			
+			if (lease == null)
+			{
+				if (warn)
+				{
+					Logger.warn("Released a buffer this pool didn't hand out, or that's already been released: %s", buf);
+					
+				}
+				
+				return false;
+			}
+			
+			if (this.pool(lease.backing))
+			{
+				return true;
+			}
+			
+		}
+		
+		BufferHelper.free(lease.backing);
+		
+		return false;
+		
+	}
+	
+	public synchronized boolean isLeakDetectionEnabled()
+	{
+		return this.leakDetection;
+	}
+	
+	//Only affects buffers taken from here on out.
+	public synchronized void setLeakDetection(boolean detect)
+	{
+		this.leakDetection = detect;
+		
+	}
+	
+	public synchronized int checkLeaks()
+	{
+		return this.pollLeaks();
+	}
+	
+	public synchronized long getPooledBytes()
+	{
+		return this.pooledBytes;
+	}
+	
+	public synchronized void trim()
+	{
+		for (ArrayDeque<ByteBuffer> pooled : this.classes)
+		{
+			pooled.forEach(BufferHelper::free);
+			pooled.clear();
+			
+		}
+		
+		this.pooledBytes = 0;
+		
+	}
+	
+	private boolean pool(ByteBuffer backing)
+	{
+		int cap = backing.capacity(), shift = Integer.numberOfTrailingZeros(cap);
+		
+		if (Integer.bitCount(cap) != 1 || shift < this.minShift || shift > this.maxShift)
+		{
+			return false;
+		}
+		
+		ArrayDeque<ByteBuffer> pooled = this.classes[shift - this.minShift];
+		
+		if (pooled.size() >= this.maxPerClass)
+		{
+			return false;
+		}
+		
+		pooled.addFirst(backing);
+		this.pooledBytes += cap;
+		
+		return true;
+	}
+	
+	private static void zero(ByteBuffer buf, int size)
+	{
+		buf.clear();
+		
+		while (buf.position() < size)
+		{
+			buf.put(ZEROES, 0, Math.min(ZEROES.length, size - buf.position()));
+			
+		}
+		
+	}
+	
+	private synchronized void track(ByteBuffer buf, ByteBuffer backing, int size, boolean trace)
+	{
+		Integer id = System.identityHashCode(buf);
+		List<Lease> bucket = this.leases.get(id);
+		
+		if (bucket == null)
+		{
+			bucket = new ArrayList<Lease>(1);
+			this.leases.put(id, bucket);
+			
+		}
+		
+		bucket.add(new Lease(buf, this.queue, id, backing, size, trace));
+		
+	}
+	
+	private Lease untrack(ByteBuffer buf)
+	{
+		Integer id = System.identityHashCode(buf);
+		List<Lease> bucket = this.leases.get(id);
+		
+		if (bucket == null)
+		{
+			return null;
+		}
+		
+		for (int c = 0; c < bucket.size(); c++)
+		{
+			Lease lease = bucket.get(c);
+			
+			if (lease.get() == buf)
+			{
+				lease.clear();
+				bucket.remove(c);
+				
+				if (bucket.isEmpty())
+				{
+					this.leases.remove(id);
+					
+				}
+				
+				return lease;
+			}
+			
+		}
+		
+		return null;
+	}
+	
+	//Forgets everything that got collected without being released, and reports the ones being traced.
+	@SuppressWarnings("boxing")
+	private int pollLeaks()
+	{
+		int ret = 0;
+		Lease lease;
+		
+		while ((lease = (Lease)this.queue.poll()) != null)
+		{
+			List<Lease> bucket = this.leases.get(lease.id);
+			
+			if (bucket == null || !bucket.remove(lease))
+			{
+				continue;
+			}
+			
+			if (bucket.isEmpty())
+			{
+				this.leases.remove(lease.id);
+				
+			}
+			
+			if (lease.trace != null)
+			{
+				ret++;
+				
+				Logger.err("Leaked a pooled direct buffer (%s bytes) taken at:", lease.trace, lease.size);
+				
+			}
+			
+		}
+		
+		return ret;
+	}
+	
+	private static final class Lease extends WeakReference<ByteBuffer>
+	{
+		final Integer id;
+		final ByteBuffer backing;
+		final int size;
+		final Throwable trace;
+		
+		@SuppressWarnings("unqualified-field-access")
+		Lease(ByteBuffer buf, ReferenceQueue<ByteBuffer> q, Integer identity, ByteBuffer b, int s, boolean traced)
+		{
+			super(buf, q);
+			
+			id = identity;
+			backing = b;
+			size = s;
+			trace = traced ? new Throwable("Buffer taken here") : null;
+			
+		}
+		
+	}
+	
+}